@@ -5,93 +5,627 @@ import java.util.*;
 import model.JavaCodeMetrics;
 import model.AdvancedMetrics;
 import model.ChurnMetrics;
-import utils.FileUtils;
+import model.MethodTable;
+import model.ScanStats;
 import utils.CodeAnalysisUtils;
 import utils.LanguageDetector;
 import utils.LanguageHeuristic;
 import utils.SecretsDetector;
+import utils.SourceBuffer;
+import utils.LineMemo;
+import utils.MetricsPass;
+import utils.ContentSniffer;
 import utils.HalsteadCalculator;
 import utils.CognitiveComplexityCalculator;
 import utils.ChurnAnalyzer;
+import utils.DirectoryWalker;
+import utils.FileEntry;
+import utils.ArchiveScanner;
+import utils.TarStreamReader;
+import utils.FingerprintTree;
+import utils.MetricsCache;
+import utils.SharedResultCache;
+import utils.SourceCache;
+import utils.DuplicateFinder;
+import utils.ResultSnapshot;
 import reports.HtmlReportGenerator;
-import java.nio.file.FileSystems;
-import java.nio.file.PathMatcher;
 
 /**
  * Core analyzer class - uses ONLY java.util Collections and java.io
  */
 public class CodeAnalyzer {
 
+    /** Bump when analysis results change, so cached results are not reused. */
+    public static final String ANALYZER_VERSION = "2.9";
+
+    /** Where incremental scans keep their fingerprint trees. */
+    private static final String CACHE_DIR = "output/cache";
+
+    /** Bytes of tar entries read but not yet analyzed, in parallel tar mode. */
+    private static final int TAR_IN_FLIGHT_BYTES = 32 * 1024 * 1024;
+
+    /** Duplicate clusters printed to the console, and written to the reports. */
+    private static final int DUPLICATES_SHOWN = 5;
+    private static final int DUPLICATES_REPORTED = 20;
+
     private List<JavaCodeMetrics> allMetrics;
     private Map<String, Integer> codePatterns;
     private List<String> duplicateBlocks;
+    private boolean useGitIndex;
+    private boolean useGitignore;
+    private boolean scanArchives;
+    private boolean incremental;
+    private boolean useMetricsCache;
+    private volatile MetricsCache cache; // open while a cached directory scan runs
+    private SharedResultCache sharedCache;
+    private SourceCache sourceCache;
+    private boolean findDuplicates;
+    private volatile DuplicateFinder duplicateFinder; // fed by the latest directory scan
+    private List<DuplicateFinder.Block> loadedDuplicates; // from a snapshot
+    // Results and skip counts of the latest scan of each root
+    private final Map<String, ScanRun> runs = new LinkedHashMap<>();
+
+    private static class ScanRun {
+        final List<JavaCodeMetrics> results;
+        final Map<String, Integer> skips;
+
+        ScanRun(List<JavaCodeMetrics> results, Map<String, Integer> skips) {
+            this.results = results;
+            this.skips = skips;
+        }
+    }
+    private ContentSniffer sniffer;
+    private GeneratedPolicy generatedPolicy = GeneratedPolicy.STATS;
+    private final ScanStats scanStats;
+    // Content-derived results by heuristic + content hash, shared by identical files
+    private final Map<String, java.util.concurrent.FutureTask<JavaCodeMetrics>> contentResults =
+        new java.util.concurrent.ConcurrentHashMap<>();
 
     public CodeAnalyzer() {
         this.allMetrics = new ArrayList<>();
+        this.sniffer = new ContentSniffer();
+        this.scanStats = new ScanStats();
         this.codePatterns = new HashMap<>();
         this.duplicateBlocks = new ArrayList<>();
     }
 
+    /**
+     * When enabled, directory scans inside a git checkout enumerate the tracked files
+     * from .git/index instead of walking the file system.
+     */
+    public void setUseGitIndex(boolean useGitIndex) {
+        this.useGitIndex = useGitIndex;
+    }
+
+    /**
+     * When enabled, directory scans also honor .gitignore files (.analyzerignore files
+     * are always honored).
+     */
+    public void setUseGitignore(boolean useGitignore) {
+        this.useGitignore = useGitignore;
+    }
+
+    /**
+     * When enabled, .zip/.jar files found during directory scans are opened and their
+     * entries analyzed in place, keyed as "archive!/path".
+     */
+    public void setScanArchives(boolean scanArchives) {
+        this.scanArchives = scanArchives;
+    }
+
+    /**
+     * When enabled, directory scans compare a fingerprint tree of the directory
+     * against the one saved by the previous run and only analyze changed files.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * When enabled, directory scans keep a per-file result cache under output/cache
+     * and skip files whose size and mtime are unchanged since the last scan.
+     */
+    public void setUseMetricsCache(boolean useMetricsCache) {
+        this.useMetricsCache = useMetricsCache;
+    }
+
+    /**
+     * Content-addressed cache shared with other checkouts and processes (null to
+     * disable). Consulted for every analyzed file, archive and tar entries included.
+     */
+    public void setSharedCache(SharedResultCache sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
+    /**
+     * Keep file contents between scans (interactive sessions), or null to read
+     * every file from disk each time.
+     */
+    public void setSourceCache(SourceCache sourceCache) {
+        this.sourceCache = sourceCache;
+    }
+
+    /**
+     * When enabled, directory scans also count repeated code blocks, from the
+     * sources they read anyway; the result is part of every report.
+     */
+    public void setFindDuplicates(boolean findDuplicates) {
+        this.findDuplicates = findDuplicates;
+    }
+
+    /**
+     * What to do with minified bundles and generated sources.
+     */
+    public enum GeneratedPolicy {
+        FULL,  // analyze like any other file
+        STATS, // size/line stats only
+        SKIP   // leave out of the results (still counted)
+    }
+
+    /**
+     * Files larger than this many bytes only get size/line stats.
+     */
+    public void setMaxFileSize(long maxBytes) {
+        this.sniffer = new ContentSniffer(maxBytes, sniffer.detectsGenerated());
+    }
+
+    public void setGeneratedPolicy(GeneratedPolicy policy) {
+        this.generatedPolicy = policy;
+        this.sniffer = new ContentSniffer(sniffer.getMaxBytes(), policy != GeneratedPolicy.FULL);
+    }
+
+    public ScanStats getScanStats() {
+        return scanStats;
+    }
+
+    public List<JavaCodeMetrics> getAllMetrics() {
+        return allMetrics;
+    }
+
+    /**
+     * Paths of files with identical content, in report order. Only groups of two
+     * or more are returned; each group was analyzed once.
+     */
+    public List<List<String>> getIdenticalGroups() {
+        Map<Long, List<String>> byHash = new LinkedHashMap<>();
+        synchronized (allMetrics) {
+            for (JavaCodeMetrics m : allMetrics) {
+                if (m.getContentHash() == 0) continue;
+                byHash.computeIfAbsent(m.getContentHash(), h -> new ArrayList<>()).add(m.getPath());
+            }
+        }
+        List<List<String>> groups = new ArrayList<>();
+        for (List<String> g : byHash.values()) {
+            if (g.size() > 1) groups.add(g);
+        }
+        return groups;
+    }
+
     // Analyze any file type (not limited to .java)
     public void analyzeFile(File file) {
+        removeFile(file.getPath()); // analyzing a file again replaces its result
+        analyzeFile(file, file.length());
+    }
+
+    private void analyzeFile(File file, long size) {
         System.out.println("\n📝 Analyzing: " + file.getName());
 
         try {
-            List<String> lines = FileUtils.readFileLines(file);
-            JavaCodeMetrics metrics = new JavaCodeMetrics(file.getName());
+            JavaCodeMetrics metrics = computeMetrics(file, size);
+            if (metrics == null) {
+                System.out.println("⏭ Skipped");
+                return;
+            }
+            allMetrics.add(metrics);
+            System.out.println("\n✓ Analysis complete!");
 
-            // Choose language-specific heuristic (falls back to generic)
-            LanguageHeuristic heuristic = LanguageDetector.getHeuristicForFile(file);
-            heuristic.analyze(lines, metrics);
+        } catch (IOException e) {
+            System.out.println("✗ Error reading file: " + e.getMessage());
+        }
+    }
 
-            // Compute advanced metrics
-            AdvancedMetrics advancedMetrics = new AdvancedMetrics();
-            
-            // Halstead metrics
-            HalsteadCalculator.computeHalstead(lines, advancedMetrics);
-            
-            // Cognitive Complexity
-            int cognitiveComplexity = CognitiveComplexityCalculator.computeCognitiveComplexity(lines);
-            advancedMetrics.setCognitiveComplexity(cognitiveComplexity);
-            
-            // Maintainability Index: MI = MAX(0, (171 - 5.2*ln(V) - 0.23*CC - 16.2*ln(LOC)) * 100 / 171)
-            advancedMetrics.computeMaintainabilityIndex(metrics.getCyclomaticComplexity(), metrics.getCodeLines());
-            
-            // Per-method/class metrics (simplified - track max complexity)
-            advancedMetrics.setMaxMethodComplexity(metrics.getCyclomaticComplexity());
-            advancedMetrics.setAvgMethodComplexity(metrics.getMethodCount() > 0 ? 
-                metrics.getCyclomaticComplexity() / metrics.getMethodCount() : 0);
-            
-            metrics.setAdvancedMetrics(advancedMetrics);
-            
-            // Code churn analysis (if git repo)
-            File gitRoot = ChurnAnalyzer.findGitRoot(file);
-            if (gitRoot != null) {
-                ChurnMetrics churnMetrics = ChurnAnalyzer.analyzeChurn(file, gitRoot);
-                if (churnMetrics != null) {
-                    metrics.setChurnMetrics(churnMetrics);
-                    
-                    // Compute risk score: complexity + churn correlation
-                    double riskScore = computeRiskScore(metrics);
-                    advancedMetrics.setRiskScore(riskScore);
+    /**
+     * Re-run the pipeline for one file and replace its previous result (matched
+     * by path). Returns the new result, or null if the file is now skipped or gone.
+     */
+    public JavaCodeMetrics reanalyzeFile(File file) {
+        removeFile(file.getPath());
+        if (!file.isFile()) return null;
+        try {
+            JavaCodeMetrics metrics = computeMetrics(file, file.length());
+            if (metrics != null) {
+                synchronized (allMetrics) {
+                    allMetrics.add(metrics);
                 }
             }
+            return metrics;
+        } catch (IOException e) {
+            System.out.println("✗ Error reading file: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // Run secrets detection (heuristic)
-            try {
-                SecretsDetector.detectSecrets(lines, metrics);
-            } catch (Throwable t) {
-                // non-fatal
+    /**
+     * Re-run the pipeline for every entry of an archive accepted by nameFilter and
+     * replace the results of its previous entries. Returns the new results (none
+     * if the archive is gone or unreadable).
+     */
+    public List<JavaCodeMetrics> reanalyzeArchive(File archive, java.util.function.Predicate<String> nameFilter) {
+        String prefix = archive.getPath() + ArchiveScanner.SEPARATOR;
+        synchronized (allMetrics) {
+            allMetrics.removeIf(m -> m.getPath().startsWith(prefix));
+        }
+        List<JavaCodeMetrics> results = new ArrayList<>();
+        if (!archive.isFile()) return results;
+        analyzeArchive(archive, nameFilter, results::add, scanStats);
+        synchronized (allMetrics) {
+            allMetrics.addAll(results);
+        }
+        return results;
+    }
+
+    /**
+     * Forget the results shared between files with identical content. A directory
+     * scan does this itself; callers that re-analyze file by file (watch mode) call
+     * it after each batch, or the map would keep every version of every saved file.
+     */
+    public void forgetSharedResults() {
+        contentResults.clear();
+    }
+
+    /**
+     * Drop the result recorded for this path. Returns it, or null if there was none.
+     */
+    public JavaCodeMetrics removeFile(String path) {
+        synchronized (allMetrics) {
+            for (Iterator<JavaCodeMetrics> it = allMetrics.iterator(); it.hasNext(); ) {
+                JavaCodeMetrics m = it.next();
+                if (m.getPath().equals(path)) {
+                    it.remove();
+                    return m;
+                }
             }
+        }
+        return null;
+    }
 
-            allMetrics.add(metrics);
-            System.out.println("\n✓ Analysis complete!");
+    /**
+     * Runs the full per-file pipeline (heuristics, advanced metrics, churn, secrets)
+     * without recording the result. Safe to call from worker threads.
+     * The file is sniffed first: binaries return null, oversized files and files in
+     * an unknown encoding only get stats, and minified/generated files follow the
+     * generated policy. All of them are counted in scanStats.
+     */
+    private JavaCodeMetrics computeMetrics(File file, long size) throws IOException {
+        return computeMetrics(file, size, scanStats);
+    }
+
+    /**
+     * stats receives the skip reasons (a per-file ScanStats in incremental scans).
+     */
+    private JavaCodeMetrics computeMetrics(File file, long size, ScanStats stats) throws IOException {
+        MetricsCache cache = this.cache;
+        long lastModified = cache != null ? file.lastModified() : 0;
+        if (cache != null && duplicateFinder == null) { // duplicates need the content itself
+            MetricsCache.Entry hit = cache.lookup(file.getPath(), size, lastModified);
+            if (hit != null) {
+                if (hit.getSkipReason() != null) stats.recordSkip(hit.getSkipReason());
+                JavaCodeMetrics metrics = hit.getMetrics();
+                if (metrics != null && !metrics.isStatsOnly()) attachChurn(metrics, file);
+                return metrics;
+            }
+        }
+
+        // A file in the session cache was sniffed as source when it was read
+        SourceBuffer cachedSource = sourceCache != null ? sourceCache.get(file) : null;
+        String skip = cachedSource != null ? null : skipReason(sniffer.sniff(file.toPath(), size), stats);
+        JavaCodeMetrics metrics = null;
+        if (!isDropped(skip)) {
+            metrics = skip != null
+                ? statsOnly(file.getName(), ContentSniffer.countLines(file.toPath()), skip)
+                : analyzeSource(file.getName(), cachedSource != null ? cachedSource : readSource(file), file);
+            metrics.setPath(file.getPath());
+        }
+        if (cache != null) {
+            long contentKey = metrics != null && skip == null
+                ? MetricsCache.contentKey(LanguageDetector.getHeuristicForName(file.getName()).name(), metrics.getContentHash())
+                : 0;
+            cache.put(file.getPath(), size, lastModified, contentKey, skip, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Contents of a file the sniffer accepted as source, through the session cache.
+     */
+    private SourceBuffer readSource(File file) throws IOException {
+        return sourceCache != null ? sourceCache.read(file) : SourceBuffer.read(file);
+    }
+
+    /**
+     * Same as computeMetrics for an archive entry. Oversized entries are counted
+     * from a stream and never loaded.
+     */
+    private JavaCodeMetrics computeMetrics(ArchiveScanner.Entry entry, ScanStats stats) throws IOException {
+        if (entry.getSize() > sniffer.getMaxBytes()) {
+            try (java.nio.channels.SeekableByteChannel ch = entry.openChannel()) {
+                return oversized(entry.getKey(), ch, stats);
+            }
+        }
+        return computeMetrics(entry.getKey(), entry.readAllBytes(), stats);
+    }
+
+    /**
+     * Pipeline for content that is already in memory (archive and stream entries).
+     */
+    private JavaCodeMetrics computeMetrics(String key, byte[] data, ScanStats stats) {
+        String skip = skipReason(sniffer.sniff(data), stats);
+        if (isDropped(skip)) return null;
+        if (skip != null) return statsOnly(key, SourceBuffer.wrap(data).lineCount(), skip);
+
+        return analyzeSource(key, SourceBuffer.wrap(data), null);
+    }
+
+    private JavaCodeMetrics oversized(String key, java.nio.channels.ReadableByteChannel content, ScanStats stats) throws IOException {
+        stats.recordSkip(ScanStats.OVERSIZED);
+        return statsOnly(key, ContentSniffer.countLines(content), ScanStats.OVERSIZED);
+    }
+
+    /**
+     * Records and returns the ScanStats reason for a sniffed kind, or null for source.
+     */
+    private String skipReason(ContentSniffer.Kind kind, ScanStats stats) {
+        String reason;
+        switch (kind) {
+            case BINARY: reason = ScanStats.BINARY; break;
+            case OVERSIZED: reason = ScanStats.OVERSIZED; break;
+            case UNKNOWN_ENCODING: reason = ScanStats.UNKNOWN_ENCODING; break;
+            case MINIFIED: reason = ScanStats.MINIFIED; break;
+            case GENERATED: reason = ScanStats.GENERATED; break;
+            default: return null;
+        }
+        stats.recordSkip(reason);
+        return reason;
+    }
+
+    /**
+     * True if a file with this skip reason gets no result at all.
+     */
+    private boolean isDropped(String reason) {
+        if (ScanStats.BINARY.equals(reason)) return true;
+        boolean generated = ScanStats.MINIFIED.equals(reason) || ScanStats.GENERATED.equals(reason);
+        return generated && generatedPolicy == GeneratedPolicy.SKIP;
+    }
+
+    /**
+     * Analyzers shared by files and archive entries. file is used for churn and
+     * may be null when the content does not live in the working tree.
+     */
+    private JavaCodeMetrics analyzeSource(String name, SourceBuffer lines, File file) {
+        // Duplicate blocks are counted per file, identical copies included
+        DuplicateFinder finder = duplicateFinder;
+        if (finder != null) finder.add(lines);
+
+        // Choose language-specific heuristic (falls back to generic)
+        LanguageHeuristic heuristic = LanguageDetector.getHeuristicForName(name);
+        JavaCodeMetrics metrics = sharedResult(heuristic, lines).copyAs(name);
+        if (file != null) attachChurn(metrics, file);
+        return metrics;
+    }
+
+    /**
+     * Code churn analysis (if git repo) and the risk score derived from it. Churn
+     * changes with new commits rather than with the file, so results taken from a
+     * cache get it again on every run.
+     */
+    private void attachChurn(JavaCodeMetrics metrics, File file) {
+        AdvancedMetrics advancedMetrics = metrics.getAdvancedMetrics();
+        metrics.setChurnMetrics(new ChurnMetrics());
+        if (advancedMetrics != null) advancedMetrics.setRiskScore(0);
+
+        File gitRoot = ChurnAnalyzer.findGitRoot(file);
+        if (gitRoot == null) return;
+        ChurnMetrics churnMetrics = ChurnAnalyzer.analyzeChurn(file, gitRoot);
+        if (churnMetrics == null) return;
+        metrics.setChurnMetrics(churnMetrics);
+
+        // Compute risk score: complexity + churn correlation
+        if (advancedMetrics != null) advancedMetrics.setRiskScore(computeRiskScore(metrics));
+    }
+
+    /**
+     * The content-derived results for lines. Only the first file with this content
+     * (and heuristic) is analyzed; identical copies get the same result, waiting for
+     * it if another thread is still computing it. Callers copy the result.
+     */
+    private JavaCodeMetrics sharedResult(LanguageHeuristic heuristic, SourceBuffer lines) {
+        String key = heuristic.name() + ":" + Long.toHexString(lines.contentHash()) + ":" + lines.length();
+        java.util.concurrent.FutureTask<JavaCodeMetrics> task =
+            new java.util.concurrent.FutureTask<>(() -> cachedOrAnalyzed(heuristic, lines));
+        java.util.concurrent.FutureTask<JavaCodeMetrics> first = contentResults.putIfAbsent(key, task);
+        if (first == null) {
+            task.run();
+        } else {
+            task = first;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return analyzeContent(heuristic, lines);
+        } catch (java.util.concurrent.ExecutionException e) {
+            contentResults.remove(key, task);
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Content results from the metrics cache (a copy of the same content seen in an
+     * earlier run, under any path) or the shared cache, or a fresh analysis that is
+     * then added to the shared cache.
+     */
+    private JavaCodeMetrics cachedOrAnalyzed(LanguageHeuristic heuristic, SourceBuffer lines) {
+        long contentKey = MetricsCache.contentKey(heuristic.name(), lines.contentHash());
+        MetricsCache cache = this.cache;
+        if (cache != null) {
+            JavaCodeMetrics cached = cache.lookupContent(contentKey);
+            if (cached != null) {
+                JavaCodeMetrics shared = cached.copyAs("");
+                shared.getAdvancedMetrics().setRiskScore(0); // churn-based, recomputed per file
+                return shared;
+            }
+        }
+        SharedResultCache shared = sharedCache;
+        if (shared != null) {
+            JavaCodeMetrics cached = shared.get(contentKey);
+            if (cached != null) return cached;
+        }
+        JavaCodeMetrics result = analyzeContent(heuristic, lines);
+        if (shared != null) shared.put(contentKey, result);
+        return result;
+    }
 
+    /**
+     * Analyzers that depend only on the content: heuristics, Halstead, cognitive
+     * complexity, maintainability index and secrets.
+     */
+    private JavaCodeMetrics analyzeContent(LanguageHeuristic heuristic, SourceBuffer lines) {
+        JavaCodeMetrics metrics = new JavaCodeMetrics("");
+        metrics.setContentHash(lines.contentHash());
+        AdvancedMetrics advancedMetrics = new AdvancedMetrics();
+        metrics.setAdvancedMetrics(advancedMetrics);
+
+        // One pass over the lines feeds the heuristic, Halstead, cognitive complexity
+        // and secrets detection; each line is classified once (mostly from the memo table).
+        // The heuristic finishes first, so Halstead and cognitive complexity can fill
+        // in the per-method columns of its method table
+        MetricsPass.Accumulator counts = heuristic.accumulator(metrics);
+        if (counts == null) heuristic.analyze(lines, metrics);
+        MetricsPass.run(lines, counts,
+            HalsteadCalculator.accumulator(advancedMetrics),
+            heuristic.measuresCognitiveComplexity() ? null : CognitiveComplexityCalculator.accumulator(advancedMetrics),
+            SecretsDetector.accumulator(metrics));
+        
+        // Maintainability Index: MI = MAX(0, (171 - 5.2*ln(V) - 0.23*CC - 16.2*ln(LOC)) * 100 / 171)
+        advancedMetrics.computeMaintainabilityIndex(metrics.getCyclomaticComplexity(), metrics.getCodeLines());
+
+        // Per-method/class metrics and the method table were filled in the pass by
+        // heuristics that find methods; plain-text files have none
+        return metrics;
+    }
+
+    /**
+     * Cheap path for files that should not go through the analyzers: line count only.
+     */
+    private JavaCodeMetrics statsOnly(String name, int totalLines, String reason) {
+        JavaCodeMetrics metrics = new JavaCodeMetrics(name);
+        metrics.setTotalLines(totalLines);
+        metrics.setStatsOnlyReason(reason);
+        metrics.setAdvancedMetrics(null);
+        return metrics;
+    }
+
+    /**
+     * Analyze every entry of a .zip/.jar without extracting it.
+     */
+    public void analyzeArchive(File archive) {
+        analyzeArchive(archive, name -> true, allMetrics::add, scanStats);
+    }
+
+    /**
+     * Runs each accepted entry through the pipeline and hands non-null results to
+     * the sink, printing progress like analyzeFile.
+     */
+    private void analyzeArchive(File archive, java.util.function.Predicate<String> nameFilter,
+                                java.util.function.Consumer<JavaCodeMetrics> sink, ScanStats stats) {
+        System.out.println("\n📦 Scanning archive: " + archive.getName());
+        try {
+            ArchiveScanner.scan(archive.toPath(), nameFilter, entry -> {
+                try {
+                    JavaCodeMetrics metrics = computeMetrics(entry, stats);
+                    if (metrics == null) return;
+                    sink.accept(metrics);
+                    System.out.println("✓ Analysis complete: " + entry.getKey());
+                } catch (IOException e) {
+                    System.out.println("✗ Error reading entry: " + entry.getKey() + " -> " + e.getMessage());
+                }
+            });
         } catch (IOException e) {
-            System.out.println("✗ Error reading file: " + e.getMessage());
+            System.out.println("✗ Error reading archive: " + archive.getAbsolutePath() + " -> " + e.getMessage());
         }
     }
 
+    /**
+     * Analyze a tar stream (for example `git archive HEAD`) entry by entry as it is
+     * read, without a checkout. Entries are keyed by their path inside the tar.
+     * In parallel mode the entries waiting for a worker are held in memory, bounded
+     * by TAR_IN_FLIGHT_BYTES; the reader blocks until workers free up budget.
+     */
+    public void analyzeTar(InputStream in, List<String> extensions, boolean parallel) {
+        System.out.println("\n📦 Reading tar stream");
+        DirectoryWalker filter = new DirectoryWalker(null, extensions, null, false);
+        TarStreamReader tar = new TarStreamReader(in);
+        List<JavaCodeMetrics> results = Collections.synchronizedList(new ArrayList<>());
+        java.util.concurrent.ExecutorService exec = parallel
+            ? java.util.concurrent.Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()))
+            : null;
+        java.util.concurrent.Semaphore budget = new java.util.concurrent.Semaphore(TAR_IN_FLIGHT_BYTES);
+        int found = 0;
+
+        try {
+            TarStreamReader.Entry entry;
+            while ((entry = tar.next()) != null) {
+                if (!entry.isFile() || !filter.matchesExtension(entry.getName())) continue;
+                found++;
+                final String key = entry.getName();
+                if (entry.getSize() > sniffer.getMaxBytes()) {
+                    // Counted while streaming, never buffered
+                    results.add(oversized(key, java.nio.channels.Channels.newChannel(tar.content()), scanStats));
+                    continue;
+                }
+                final byte[] data = tar.readContent();
+                if (exec == null) {
+                    addEntryResult(key, computeMetrics(key, data, scanStats), results);
+                    continue;
+                }
+                final int permits = Math.min(data.length, TAR_IN_FLIGHT_BYTES);
+                budget.acquire(permits);
+                exec.submit(() -> {
+                    try {
+                        addEntryResult(key, computeMetrics(key, data, scanStats), results);
+                    } finally {
+                        budget.release(permits);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            System.out.println("✗ Error reading tar stream: " + e.getMessage());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (exec != null) {
+                exec.shutdown();
+                try {
+                    exec.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        reportFound(found);
+
+        synchronized (allMetrics) {
+            allMetrics.addAll(results);
+        }
+    }
+
+    private void addEntryResult(String key, JavaCodeMetrics metrics, List<JavaCodeMetrics> results) {
+        if (metrics == null) return;
+        results.add(metrics);
+        System.out.println("✓ Analysis complete: " + key);
+    }
+
     public void analyzeDirectory(File dir) {
         // default: no excludes, single-threaded, no ext filter, no glob excludes
         analyzeDirectory(dir, Collections.<String>emptyList(), false, Collections.<String>emptyList(), Collections.<String>emptyList());
@@ -110,147 +644,117 @@ public class CodeAnalyzer {
      * - excludes: path prefixes to skip (canonicalized)
      * - extensions: list like ".java", ".py" to include only those extensions (empty = all)
      * - globExcludes: glob patterns (for example, node_modules folders) to skip
+     *
+     * Filters are applied by DirectoryWalker while it descends, and accepted files are
+     * streamed straight into analysis (or onto the worker pool when parallel).
      */
     public void analyzeDirectory(File dir, List<String> excludes, boolean parallel, List<String> extensions, List<String> globExcludes) {
-        System.out.println("\n📂 Scanning directory: " + dir.getAbsolutePath());
-        List<File> files = FileUtils.getAllFiles(dir);
-
-        if (files == null || files.isEmpty()) {
-            System.out.println("✗ No files found");
-            return;
+        // A new scan of a root replaces the results of its previous scan
+        String root = rootKey(dir);
+        ScanRun previous = runs.remove(root);
+        if (previous != null) {
+            Set<JavaCodeMetrics> old = new HashSet<>(previous.results);
+            synchronized (allMetrics) {
+                allMetrics.removeIf(old::contains);
+            }
+            scanStats.forgetSkips(previous.skips);
         }
+        contentResults.clear();
+        duplicateFinder = findDuplicates ? new DuplicateFinder() : null;
+        loadedDuplicates = null;
+        int before = allMetrics.size();
+        Map<String, Integer> skipsBefore = scanStats.getSkipCounts();
 
-        // Normalize excludes
-        List<String> normExcludes = new ArrayList<>();
-        for (String e : excludes) {
-            if (e == null || e.isEmpty()) continue;
-            String p = e.replaceAll("/","\\\\");
-            try {
-                p = new File(p).getCanonicalPath();
-            } catch (IOException ioe) {
-                // fallback to raw
-            }
-            normExcludes.add(p.toLowerCase(Locale.ROOT));
+        if (useMetricsCache) {
+            scanWithCache(dir, excludes, parallel, extensions, globExcludes);
+        } else {
+            scanDirectory(dir, excludes, parallel, extensions, globExcludes);
         }
 
-        // Normalize extensions (lowercase, ensure leading dot)
-        List<String> normExt = new ArrayList<>();
-        if (extensions != null) {
-            for (String ex : extensions) {
-                if (ex == null || ex.trim().isEmpty()) continue;
-                String e = ex.trim().toLowerCase(Locale.ROOT);
-                if (!e.startsWith(".")) e = "." + e;
-                normExt.add(e);
-            }
+        Map<String, Integer> skips = scanStats.getSkipCounts();
+        for (Map.Entry<String, Integer> e : skipsBefore.entrySet()) skips.merge(e.getKey(), -e.getValue(), Integer::sum);
+        synchronized (allMetrics) {
+            runs.put(root, new ScanRun(new ArrayList<>(allMetrics.subList(before, allMetrics.size())), skips));
         }
+    }
 
-        // Prepare glob matchers
-        List<PathMatcher> globMatchers = new ArrayList<>();
-        if (globExcludes != null) {
-            for (String g : globExcludes) {
-                if (g == null || g.trim().isEmpty()) continue;
-                try {
-                    PathMatcher pm = FileSystems.getDefault().getPathMatcher("glob:" + g);
-                    globMatchers.add(pm);
-                } catch (Exception ignore) {
-                }
-            }
+    private static String rootKey(File dir) {
+        try {
+            return dir.getCanonicalPath();
+        } catch (IOException e) {
+            return dir.getAbsolutePath();
         }
+    }
 
-        // Filter files by excludes
-        List<File> toAnalyze = new ArrayList<>();
-        for (File f : files) {
+    private void scanWithCache(File dir, List<String> excludes, boolean parallel, List<String> extensions, List<String> globExcludes) {
+        File cacheFile = new File(CACHE_DIR, "metrics-" + Integer.toHexString(dir.getAbsolutePath().hashCode()) + ".bin");
+        String cacheKey = ANALYZER_VERSION + "|" + generatedPolicy + "|" + sniffer.getMaxBytes();
+        cache = MetricsCache.open(cacheFile, cacheKey);
+        try {
+            scanDirectory(dir, excludes, parallel, extensions, globExcludes);
+        } finally {
+            MetricsCache used = cache;
+            cache = null;
+            System.out.println("💾 Metrics cache: " + used.getPathHits() + " unchanged files, "
+                + used.getContentHits() + " reused by content");
             try {
-                String fp = f.getCanonicalPath();
-                boolean skip = false;
-                for (String ex : normExcludes) {
-                    if (ex.length() == 0) continue;
-                    if (fp.toLowerCase(Locale.ROOT).startsWith(ex)) { skip = true; break; }
-                }
-                if (skip) continue;
-
-                // Glob excludes
-                java.nio.file.Path p = f.toPath();
-                for (PathMatcher pm : globMatchers) {
-                    if (pm.matches(p)) { skip = true; break; }
-                }
-                if (skip) continue;
-
-                // Extension filter
-                if (!normExt.isEmpty()) {
-                    String name = f.getName().toLowerCase(Locale.ROOT);
-                    boolean matched = false;
-                    for (String e : normExt) if (name.endsWith(e)) { matched = true; break; }
-                    if (!matched) continue;
-                }
-                if (!skip) toAnalyze.add(f);
-            } catch (IOException ioe) {
-                // If canonicalize fails, include the file
-                toAnalyze.add(f);
+                used.save(cacheFile, cacheKey);
+            } catch (IOException e) {
+                System.out.println("⚠ Could not save metrics cache: " + e.getMessage());
             }
         }
+    }
 
-        System.out.println("✓ Found " + toAnalyze.size() + " files to analyze\n");
-
-        if (toAnalyze.isEmpty()) return;
+    private void scanDirectory(File dir, List<String> excludes, boolean parallel, List<String> extensions, List<String> globExcludes) {
+        System.out.println("\n📂 Scanning directory: " + dir.getAbsolutePath());
+        DirectoryWalker walker = new DirectoryWalker(excludes, extensions, globExcludes, parallel);
+        walker.setUseGitignore(useGitignore);
+        walker.setIncludeArchives(scanArchives);
+        if (incremental) {
+            analyzeIncremental(dir, walker, parallel, configKey(dir, excludes, extensions, globExcludes));
+            return;
+        }
+        final int[] found = {0};
 
         if (!parallel) {
-            for (File file : toAnalyze) {
-                analyzeFile(file);
-            }
+            discover(walker, dir, entry -> {
+                found[0]++;
+                if (isArchive(entry)) {
+                    analyzeArchive(entry.toFile(), walker::matchesExtension, allMetrics::add, scanStats);
+                } else {
+                    analyzeFile(entry.toFile(), entry.getSize());
+                }
+            });
+            reportFound(found[0]);
+            applyAliases(walker);
             return;
         }
 
-        // Parallel processing
+        // Parallel processing: the walker feeds the pool while it is still descending
         int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
         java.util.concurrent.ExecutorService exec = java.util.concurrent.Executors.newFixedThreadPool(threads);
         List<JavaCodeMetrics> results = Collections.synchronizedList(new ArrayList<>());
 
-        for (final File file : toAnalyze) {
+        discover(walker, dir, entry -> {
+            synchronized (found) { found[0]++; }
+            final File file = entry.toFile();
+            final long size = entry.getSize();
+            if (isArchive(entry)) {
+                // One task per archive: entries are read from its zip file system in order
+                exec.submit(() -> analyzeArchive(file, walker::matchesExtension, results::add, scanStats));
+                return;
+            }
             exec.submit(() -> {
                 try {
-                    List<String> lines = FileUtils.readFileLines(file);
-                    JavaCodeMetrics metrics = new JavaCodeMetrics(file.getName());
-                    
-                    // Language-specific analysis
-                    utils.LanguageDetector.getHeuristicForFile(file).analyze(lines, metrics);
-                    
-                    // Compute advanced metrics
-                    AdvancedMetrics advancedMetrics = new AdvancedMetrics();
-                    HalsteadCalculator.computeHalstead(lines, advancedMetrics);
-                    int cognitiveComplexity = CognitiveComplexityCalculator.computeCognitiveComplexity(lines);
-                    advancedMetrics.setCognitiveComplexity(cognitiveComplexity);
-                    advancedMetrics.computeMaintainabilityIndex(metrics.getCyclomaticComplexity(), metrics.getCodeLines());
-                    advancedMetrics.setMaxMethodComplexity(metrics.getCyclomaticComplexity());
-                    advancedMetrics.setAvgMethodComplexity(metrics.getMethodCount() > 0 ? 
-                        metrics.getCyclomaticComplexity() / metrics.getMethodCount() : 0);
-                    metrics.setAdvancedMetrics(advancedMetrics);
-                    
-                    // Code churn analysis (if git repo)
-                    File gitRoot = ChurnAnalyzer.findGitRoot(file);
-                    if (gitRoot != null) {
-                        ChurnMetrics churnMetrics = ChurnAnalyzer.analyzeChurn(file, gitRoot);
-                        if (churnMetrics != null) {
-                            metrics.setChurnMetrics(churnMetrics);
-                            double riskScore = computeRiskScore(metrics);
-                            advancedMetrics.setRiskScore(riskScore);
-                        }
-                    }
-                    
-                    // Secrets detection
-                    try {
-                        SecretsDetector.detectSecrets(lines, metrics);
-                    } catch (Throwable t) {
-                        // non-fatal
-                    }
-                    
+                    JavaCodeMetrics metrics = computeMetrics(file, size);
+                    if (metrics == null) return;
                     results.add(metrics);
                     System.out.println("\n✓ Analysis complete: " + file.getName());
                 } catch (IOException e) {
                     System.out.println("✗ Error reading file: " + file.getAbsolutePath() + " -> " + e.getMessage());
                 }
             });
-        }
+        });
 
         exec.shutdown();
         try {
@@ -258,11 +762,171 @@ public class CodeAnalyzer {
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
         }
+        reportFound(found[0]);
 
         // Merge results into allMetrics
         synchronized (allMetrics) {
             allMetrics.addAll(results);
         }
+        applyAliases(walker);
+    }
+
+    /**
+     * Incremental scan: walk (stat only), build the fingerprint tree, take over the
+     * results of unchanged files and directories from the saved tree, analyze the
+     * rest and save the updated tree for the next run. With --git-index the files
+     * come from the index but are still stat'ed, so unstaged edits are seen.
+     */
+    private void analyzeIncremental(File dir, DirectoryWalker walker, boolean parallel, String configKey) {
+        List<FileEntry> entries = Collections.synchronizedList(new ArrayList<>());
+        discover(walker, dir, entries::add);
+        reportFound(entries.size());
+
+        File cacheFile = new File(CACHE_DIR, "tree-" + Integer.toHexString(configKey.hashCode()) + ".bin");
+        FingerprintTree previous = FingerprintTree.load(cacheFile, configKey);
+        FingerprintTree tree = FingerprintTree.build(dir.toPath(), entries);
+        List<FingerprintTree.Change> changes = tree.adopt(previous, dir.toPath());
+        System.out.println("♻ Reused " + tree.getReusedFiles() + " unchanged files (" + tree.getReusedDirs()
+            + " unchanged directories), analyzing " + changes.size());
+
+        java.util.function.Consumer<FingerprintTree.Change> work = change -> {
+            File file = change.path.toFile();
+            ScanStats stats = new ScanStats();
+            List<JavaCodeMetrics> results = new ArrayList<>();
+            try {
+                if (scanArchives && ArchiveScanner.isArchiveName(file.getName())) {
+                    analyzeArchive(file, walker::matchesExtension, results::add, stats);
+                } else {
+                    JavaCodeMetrics metrics = computeMetrics(file, change.node.getSize(), stats);
+                    if (metrics != null) {
+                        results.add(metrics);
+                        System.out.println("✓ Analysis complete: " + file.getName());
+                    }
+                }
+                change.node.setResults(results, stats.getSkipCounts());
+            } catch (IOException e) {
+                System.out.println("✗ Error reading file: " + file.getAbsolutePath() + " -> " + e.getMessage());
+            }
+        };
+        // Reused results keep their content metrics; churn is recomputed for this run
+        java.util.function.Consumer<FingerprintTree.Change> refresh = change -> {
+            File file = change.path.toFile();
+            if (scanArchives && ArchiveScanner.isArchiveName(file.getName())) return; // entries have no churn
+            for (JavaCodeMetrics m : change.node.getResults()) {
+                if (!m.isStatsOnly()) attachChurn(m, file);
+            }
+        };
+        if (!parallel) {
+            changes.forEach(work);
+            tree.getReused().forEach(refresh);
+        } else {
+            java.util.concurrent.ExecutorService exec = java.util.concurrent.Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors()));
+            for (FingerprintTree.Change c : changes) exec.submit(() -> work.accept(c));
+            for (FingerprintTree.Change c : tree.getReused()) exec.submit(() -> refresh.accept(c));
+            exec.shutdown();
+            try {
+                exec.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Map<String, Integer> skips : tree.skips()) scanStats.recordSkips(skips);
+        synchronized (allMetrics) {
+            allMetrics.addAll(tree.results());
+        }
+        // Saved before aliases are attached: they come from this walk, not the file
+        try {
+            tree.save(cacheFile, configKey);
+        } catch (IOException e) {
+            System.out.println("⚠ Could not save scan cache: " + e.getMessage());
+        }
+        applyAliases(walker);
+    }
+
+    /**
+     * Everything that changes which files are scanned or what their results are.
+     */
+    private String configKey(File dir, List<String> excludes, List<String> extensions, List<String> globExcludes) {
+        return ANALYZER_VERSION + "|" + dir.getPath()
+            + "|" + sorted(excludes) + "|" + sorted(extensions) + "|" + sorted(globExcludes)
+            + "|" + useGitIndex + "|" + useGitignore + "|" + scanArchives
+            + "|" + generatedPolicy + "|" + sniffer.getMaxBytes();
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<>(list != null ? list : Collections.<String>emptyList());
+        Collections.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Attach the alias paths found by the walker to the metrics of the file they
+     * point to, and count them as skipped. A directory alias adds one alias to
+     * every analyzed file below its target.
+     */
+    private void applyAliases(DirectoryWalker walker) {
+        Map<java.nio.file.Path, List<java.nio.file.Path>> files = walker.getAliases();
+        Map<java.nio.file.Path, List<java.nio.file.Path>> dirs = walker.getDirectoryAliases();
+        if (files.isEmpty() && dirs.isEmpty()) return;
+
+        Map<String, JavaCodeMetrics> byPath = new HashMap<>();
+        synchronized (allMetrics) {
+            for (JavaCodeMetrics m : allMetrics) byPath.put(m.getPath(), m);
+        }
+        int count = 0;
+        for (Map.Entry<java.nio.file.Path, List<java.nio.file.Path>> e : files.entrySet()) {
+            JavaCodeMetrics m = byPath.get(e.getKey().toString());
+            for (java.nio.file.Path alias : e.getValue()) {
+                scanStats.recordSkip(ScanStats.ALIAS);
+                if (m != null) m.addAlias(alias.toString());
+                count++;
+            }
+        }
+        // Paths known so far (including the file aliases above) per metrics
+        List<Object[]> known = new ArrayList<>();
+        for (JavaCodeMetrics m : byPath.values()) {
+            known.add(new Object[] {m, m.getPath()});
+            for (String a : m.getAliases()) known.add(new Object[] {m, a});
+        }
+        for (Map.Entry<java.nio.file.Path, List<java.nio.file.Path>> e : dirs.entrySet()) {
+            String target = e.getKey().toString() + File.separator;
+            for (Object[] k : known) {
+                String path = (String) k[1];
+                if (!path.startsWith(target)) continue;
+                String rest = path.substring(target.length());
+                for (java.nio.file.Path alias : e.getValue()) {
+                    scanStats.recordSkip(ScanStats.ALIAS);
+                    ((JavaCodeMetrics) k[0]).addAlias(alias.resolve(rest).toString());
+                    count++;
+                }
+            }
+        }
+        System.out.println("🔗 " + count + " path(s) lead to files already analyzed");
+    }
+
+    private void discover(DirectoryWalker walker, File dir, java.util.function.Consumer<FileEntry> sink) {
+        if (useGitIndex) {
+            if (walker.walkGitIndex(dir, sink)) {
+                System.out.println("📇 Using tracked files from git index");
+                return;
+            }
+            System.out.println("⚠ No git index found, falling back to directory walk");
+        }
+        walker.walk(dir, sink);
+    }
+
+    private boolean isArchive(FileEntry entry) {
+        return scanArchives && ArchiveScanner.isArchiveName(entry.getPath().getFileName().toString());
+    }
+
+    private void reportFound(int count) {
+        if (count == 0) {
+            System.out.println("✗ No files found");
+        } else {
+            System.out.println("\n✓ Found " + count + " files to analyze");
+        }
     }
     
     /**
@@ -308,42 +972,30 @@ public class CodeAnalyzer {
     public void findDuplicateCode(File dir) {
         System.out.println("\n🔍 Searching for duplicate code blocks...");
 
-        Map<String, Integer> codeBlockFrequency = new HashMap<>();
-        List<File> files = FileUtils.getAllFiles(dir);
+        List<FileEntry> files = new DirectoryWalker(null, null, null, false).collect(dir);
 
-        if (files == null || files.isEmpty()) return;
+        if (files.isEmpty()) return;
 
-        for (File file : files) {
+        DuplicateFinder finder = new DuplicateFinder();
+        for (FileEntry entry : files) {
             try {
-                List<String> lines = FileUtils.readFileLines(file);
-
-                // Find 3+ line blocks
-                for (int i = 0; i < lines.size() - 2; i++) {
-                    String block = lines.get(i) + "\n" + 
-                                 lines.get(i+1) + "\n" + 
-                                 lines.get(i+2);
-
-                    codeBlockFrequency.put(block, 
-                        codeBlockFrequency.getOrDefault(block, 0) + 1);
-                }
+                // Only files sniffed as source go into the session cache; binaries are skipped
+                ContentSniffer.Kind kind = sniffer.sniff(entry.getPath(), entry.getSize());
+                if (kind == ContentSniffer.Kind.BINARY) continue;
+                finder.add(kind == ContentSniffer.Kind.SOURCE ? readSource(entry.toFile()) : SourceBuffer.read(entry.toFile()));
             } catch (IOException e) {
                 System.out.println("Error: " + e.getMessage());
             }
         }
+        printDuplicates(finder.top(DUPLICATES_SHOWN));
+    }
 
-        // Find duplicates
-        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(codeBlockFrequency.entrySet());
-        sorted.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-
+    private void printDuplicates(List<DuplicateFinder.Block> blocks) {
         System.out.println("\n📊 Duplicate Code Blocks Found:\n");
-        int count = 0;
-        for (Map.Entry<String, Integer> entry : sorted) {
-            if (entry.getValue() > 1 && count < 5) {
-                System.out.println("Found " + entry.getValue() + " times:");
-                System.out.println(entry.getKey());
-                System.out.println("---");
-                count++;
-            }
+        for (DuplicateFinder.Block block : blocks) {
+            System.out.println("Found " + block.getCount() + " times:");
+            System.out.println(block.getText());
+            System.out.println("---");
         }
     }
 
@@ -365,6 +1017,9 @@ public class CodeAnalyzer {
             System.out.printf("│   Lines of Code: %-51d │\n", metric.getCodeLines());
             System.out.printf("│   Cyclomatic Complexity: %-43d │\n", metric.getCyclomaticComplexity());
             System.out.printf("│   Documentation: %-50.1f%% │\n", metric.getCommentRatio());
+            if (metric.isStatsOnly()) {
+                System.out.printf("│   Stats only: %-54s │\n", metric.getStatsOnlyReason());
+            }
             
             // Advanced Metrics
             if (metric.getAdvancedMetrics() != null) {
@@ -429,6 +1084,41 @@ public class CodeAnalyzer {
             System.out.printf("║  Total Files Analyzed: %-45d ║\n", allMetrics.size());
             System.out.println("╚══════════════════════════════════════════════════════════════════════╝");
         }
+
+        Map<String, Integer> skipped = scanStats.getSkipCounts();
+        if (!skipped.isEmpty()) {
+            System.out.println("\n⏭ Skipped / stats-only files:");
+            for (Map.Entry<String, Integer> e : skipped.entrySet()) {
+                System.out.println("   • " + e.getKey() + ": " + e.getValue());
+            }
+        }
+
+        List<DuplicateFinder.Block> duplicates = reportedDuplicates();
+        if (duplicates != null) printDuplicates(duplicates.subList(0, Math.min(DUPLICATES_SHOWN, duplicates.size())));
+
+        LineMemo memo = LineMemo.shared();
+        if (memo.getSlots() > 0 && memo.getHits() + memo.getMisses() > 0) {
+            System.out.printf("\n🧠 Line memo: %.1f%% hits (%d of %d lines, %d slots)\n", memo.getHitRate(),
+                memo.getHits(), memo.getHits() + memo.getMisses(), memo.getSlots());
+        }
+
+        if (sourceCache != null) {
+            System.out.printf("\n📚 Session cache: %d files (%.1f MB), %d reads saved\n", sourceCache.getFileCount(),
+                sourceCache.getUsedBytes() / (1024.0 * 1024.0), sourceCache.getHits());
+        }
+
+        if (sharedCache != null) {
+            System.out.println("\n🗄 Shared cache: " + sharedCache.getHits() + " results reused, "
+                + sharedCache.getStores() + " added");
+        }
+
+        List<List<String>> identical = getIdenticalGroups();
+        if (!identical.isEmpty()) {
+            System.out.println("\n🧬 Identical files (analyzed once per group):");
+            for (List<String> g : identical) {
+                System.out.println("   • " + g.get(0) + " (+" + (g.size() - 1) + " identical)");
+            }
+        }
     }
     
     /**
@@ -471,7 +1161,7 @@ public class CodeAnalyzer {
         format = format.toLowerCase(Locale.ROOT);
         
         if ("html".equals(format)) {
-            HtmlReportGenerator.generateHtmlReport(allMetrics, "output/dashboard.html");
+            HtmlReportGenerator.generateHtmlReport(allMetrics, "output/dashboard.html", scanStats);
             return;
         }
 
@@ -483,12 +1173,37 @@ public class CodeAnalyzer {
 
                     ps.println("{");
                     ps.println("  \"generated\": \"" + new java.util.Date() + "\",");
+                    ps.print("  \"skipped\": {");
+                    int k = 0;
+                    for (Map.Entry<String, Integer> e : scanStats.getSkipCounts().entrySet()) {
+                        ps.print((k++ > 0 ? ", " : "") + "\"" + e.getKey() + "\": " + e.getValue());
+                    }
+                    ps.println("},");
+                    ps.println("  \"identical\": [");
+                    List<List<String>> identical = getIdenticalGroups();
+                    for (int g = 0; g < identical.size(); g++) {
+                        ps.print("    [");
+                        for (int p = 0; p < identical.get(g).size(); p++) {
+                            ps.print((p > 0 ? ", " : "") + jsonString(identical.get(g).get(p)));
+                        }
+                        ps.println(g < identical.size() - 1 ? "]," : "]");
+                    }
+                    ps.println("  ],");
+                    List<DuplicateFinder.Block> blocks = reportedDuplicates();
+                    if (blocks != null) {
+                        ps.println("  \"duplicateBlocks\": [");
+                        for (int b = 0; b < blocks.size(); b++) {
+                            ps.print("    {\"count\": " + blocks.get(b).getCount() + ", \"text\": " + jsonString(blocks.get(b).getText()) + "}");
+                            ps.println(b < blocks.size() - 1 ? "," : "");
+                        }
+                        ps.println("  ],");
+                    }
                     ps.println("  \"files\": [");
 
                     for (int i = 0; i < allMetrics.size(); i++) {
                         JavaCodeMetrics m = allMetrics.get(i);
                         ps.println("    {");
-                        ps.println("      \"file\": \"" + m.getFileName() + "\",");
+                        ps.println("      \"file\": " + jsonString(m.getFileName()) + ",");
                         ps.println("      \"totalLines\": " + m.getTotalLines() + ",");
                         ps.println("      \"codeLines\": " + m.getCodeLines() + ",");
                         ps.println("      \"commentLines\": " + m.getCommentLines() + ",");
@@ -497,6 +1212,16 @@ public class CodeAnalyzer {
                         ps.println("      \"documentation\": \"" + String.format("%.1f%%", m.getCommentRatio()) + "\",");
                         ps.println("      \"methods\": " + m.getMethodCount() + ",");
                         ps.println("      \"classes\": " + m.getClassCount() + ",");
+                        if (m.isStatsOnly()) {
+                            ps.println("      \"statsOnly\": \"" + m.getStatsOnlyReason() + "\",");
+                        }
+                        if (!m.getAliases().isEmpty()) {
+                            ps.print("      \"aliases\": [");
+                            for (int a = 0; a < m.getAliases().size(); a++) {
+                                ps.print((a > 0 ? ", " : "") + jsonString(m.getAliases().get(a)));
+                            }
+                            ps.println("],");
+                        }
                         
                         // Advanced metrics
                         if (m.getAdvancedMetrics() != null) {
@@ -507,6 +1232,21 @@ public class CodeAnalyzer {
                             ps.println("      \"halsteadDifficulty\": " + String.format("%.1f", am.getDifficulty()) + ",");
                             ps.println("      \"halsteadEffort\": " + String.format("%.1f", am.getEffort()) + ",");
                             ps.println("      \"riskScore\": " + String.format("%.1f", am.getRiskScore()) + ",");
+                            MethodTable methods = am.getMethods();
+                            if (methods != null) {
+                                ps.println("      \"methodMetrics\": [");
+                                for (int r = 0; r < methods.size(); r++) {
+                                    ps.print("        {\"name\": " + jsonString(methods.getName(r))
+                                        + ", \"startLine\": " + methods.getStartLine(r)
+                                        + ", \"endLine\": " + methods.getEndLine(r)
+                                        + ", \"codeLines\": " + methods.getCodeLines(r)
+                                        + ", \"complexity\": " + methods.getComplexity(r)
+                                        + ", \"cognitiveComplexity\": " + methods.getCognitiveComplexity(r)
+                                        + ", \"approxHalsteadVolume\": " + String.format("%.1f", methods.getVolume(r)) + "}");
+                                    ps.println(r < methods.size() - 1 ? "," : "");
+                                }
+                                ps.println("      ],");
+                            }
                         }
                         
                         // Churn metrics
@@ -557,11 +1297,45 @@ public class CodeAnalyzer {
                 ps.println("════════════════════════════════════════════\n");
                 ps.println("Generated: " + new java.util.Date() + "\n");
 
+                Map<String, Integer> skipped = scanStats.getSkipCounts();
+                if (!skipped.isEmpty()) {
+                    ps.println("Skipped / stats-only files:");
+                    for (Map.Entry<String, Integer> e : skipped.entrySet()) {
+                        ps.println("  " + e.getKey() + ": " + e.getValue());
+                    }
+                    ps.println();
+                }
+
+                List<List<String>> identical = getIdenticalGroups();
+                if (!identical.isEmpty()) {
+                    ps.println("Identical files (analyzed once per group):");
+                    for (List<String> g : identical) {
+                        ps.println("  " + String.join(" = ", g));
+                    }
+                    ps.println();
+                }
+
+                List<DuplicateFinder.Block> duplicates = reportedDuplicates();
+                if (duplicates != null) {
+                    ps.println("Duplicate code blocks (" + DuplicateFinder.BLOCK_LINES + " lines):");
+                    for (DuplicateFinder.Block block : duplicates) {
+                        ps.println("  Found " + block.getCount() + " times:");
+                        for (String line : block.getText().split("\n", -1)) ps.println("    | " + line);
+                    }
+                    ps.println();
+                }
+
                 for (JavaCodeMetrics metric : allMetrics) {
                     ps.println("File: " + metric.getFileName());
                     ps.println("  Lines of Code: " + metric.getCodeLines());
                     ps.println("  Cyclomatic Complexity: " + metric.getCyclomaticComplexity());
                     ps.println("  Documentation: " + String.format("%.1f%%", metric.getCommentRatio()));
+                    if (metric.isStatsOnly()) {
+                        ps.println("  Stats only: " + metric.getStatsOnlyReason() + " (" + metric.getTotalLines() + " lines)");
+                    }
+                    for (String alias : metric.getAliases()) {
+                        ps.println("  Also at: " + alias);
+                    }
                     
                     // Advanced Metrics
                     if (metric.getAdvancedMetrics() != null) {
@@ -605,7 +1379,67 @@ public class CodeAnalyzer {
         }
     }
 
-    // CSV export
+    /**
+     * Duplicate blocks for the reports: from the latest scan or a loaded snapshot,
+     * null if the run did not look for them.
+     */
+    private List<DuplicateFinder.Block> reportedDuplicates() {
+        DuplicateFinder finder = duplicateFinder;
+        if (finder != null) return finder.top(DUPLICATES_REPORTED);
+        return loadedDuplicates;
+    }
+
+    /**
+     * Persist the results of this run so that reports can be rendered from them
+     * later (see loadSnapshot).
+     */
+    public void saveSnapshot(File file) {
+        try {
+            new ResultSnapshot(ANALYZER_VERSION, System.currentTimeMillis(), new ArrayList<>(allMetrics),
+                scanStats.getSkipCounts(), reportedDuplicates()).write(file);
+            System.out.println("✓ Snapshot saved to: " + file.getPath());
+        } catch (IOException e) {
+            System.out.println("⚠ Could not save snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the results with those of a snapshot, for generateDetailedReport.
+     */
+    public void loadSnapshot(File file) throws IOException {
+        ResultSnapshot snapshot = ResultSnapshot.read(file);
+        synchronized (allMetrics) {
+            allMetrics.clear();
+            allMetrics.addAll(snapshot.getMetrics());
+        }
+        runs.clear();
+        scanStats.clear();
+        scanStats.recordSkips(snapshot.getSkipCounts());
+        duplicateFinder = null;
+        loadedDuplicates = snapshot.getDuplicateBlocks();
+        System.out.println("📂 Loaded " + snapshot.getMetrics().size() + " results from " + file.getPath()
+            + " (" + new java.util.Date(snapshot.getCreated()) + ", analyzer " + snapshot.getAnalyzerVersion() + ")");
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // CSV export; the methods of all files go to a second file next to it (see generateMethodsCsv)
     public void generateCsvReport(String path) {
         try (FileOutputStream fos = new FileOutputStream(path);
              PrintStream ps = new PrintStream(fos)) {
@@ -632,5 +1466,29 @@ public class CodeAnalyzer {
         } catch (IOException e) {
             System.out.println("Error writing CSV: " + e.getMessage());
         }
+        generateMethodsCsv(path.replaceFirst("(\\.csv)?$", "_methods.csv"));
+    }
+
+    /**
+     * One row per method of every file's method table, in source order.
+     */
+    public void generateMethodsCsv(String path) {
+        try (FileOutputStream fos = new FileOutputStream(path);
+             PrintStream ps = new PrintStream(fos)) {
+            ps.println("file,method,startLine,endLine,codeLines,complexity,cognitiveComplexity,approxHalsteadVolume");
+            for (JavaCodeMetrics m : allMetrics) {
+                MethodTable methods = m.getAdvancedMetrics() != null ? m.getAdvancedMetrics().getMethods() : null;
+                if (methods == null) continue;
+                for (int r = 0; r < methods.size(); r++) {
+                    ps.printf("\"%s\",\"%s\",%d,%d,%d,%d,%d,%.1f\n",
+                        m.getFileName(), methods.getName(r), methods.getStartLine(r), methods.getEndLine(r),
+                        methods.getCodeLines(r), methods.getComplexity(r), methods.getCognitiveComplexity(r),
+                        methods.getVolume(r));
+                }
+            }
+            System.out.println("✓ Method CSV saved to: " + path);
+        } catch (IOException e) {
+            System.out.println("Error writing method CSV: " + e.getMessage());
+        }
     }
 }
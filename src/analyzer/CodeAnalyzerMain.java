@@ -1,6 +1,6 @@
 package analyzer;
 
-import java.io.File;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -12,6 +12,9 @@ import java.util.*;
  */
 public class CodeAnalyzerMain {
 
+    private static final long SESSION_CACHE_BYTES = 256L * 1024 * 1024;
+    private static final String DEFAULT_SNAPSHOT = "output/code_analysis.snapshot";
+
     public static void main(String[] args) {
         System.out.println("╔════════════════════════════════════════╗");
         System.out.println("║   CodeAnalyzer Pro - Pure Java Core   ║");
@@ -21,18 +24,122 @@ public class CodeAnalyzerMain {
         CodeAnalyzer analyzer = new CodeAnalyzer();
 
         // If args provided, run non-interactively: first arg is directory
+        if (args != null && args.length > 0 && "report".equalsIgnoreCase(args[0])) {
+            // report --from=<snapshot> --format=<fmt>: render a saved run, no analysis
+            String from = DEFAULT_SNAPSHOT;
+            String format = "text";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("--from=")) from = args[i].substring(args[i].indexOf('=') + 1);
+                else if (args[i].startsWith("--format=")) format = args[i].substring(args[i].indexOf('=') + 1);
+            }
+            try {
+                analyzer.loadSnapshot(new File(from));
+            } catch (IOException e) {
+                System.out.println("✗ Cannot read snapshot: " + e.getMessage());
+                return;
+            }
+            analyzer.generateDetailedReport(format);
+            return;
+        }
+
         if (args != null && args.length > 0) {
             String dirPath = args[0];
+            String tarSource = null; // "-" = stdin
+            int first = 1;
+            if ("--tar".equalsIgnoreCase(args[0])) {
+                // the source may be left out: --tar --format=json reads stdin
+                if (args.length > 1 && !args[1].startsWith("--")) {
+                    tarSource = args[1];
+                    first = 2;
+                } else {
+                    tarSource = "-";
+                }
+            }
             boolean parallel = false;
+            boolean gitIndex = false;
+            boolean gitignore = false;
+            boolean archives = false;
+            boolean watch = false;
+            boolean incremental = false;
+            boolean cache = false;
+            boolean duplicates = false;
+            long maxFileSize = -1;
+            String sharedCacheDir = null;
+            long sharedCacheSize = 1024L * 1024 * 1024;
             String format = "text";
+            String snapshot = DEFAULT_SNAPSHOT;
             List<String> excludes = new ArrayList<>();
             List<String> extensions = new ArrayList<>();
             List<String> globExcludes = new ArrayList<>();
 
-            for (int i = 1; i < args.length; i++) {
+            for (int i = first; i < args.length; i++) {
                 String a = args[i];
                 if ("--parallel".equalsIgnoreCase(a) || "-p".equalsIgnoreCase(a)) {
                     parallel = true;
+                } else if ("--git-index".equalsIgnoreCase(a)) {
+                    gitIndex = true;
+                } else if ("--gitignore".equalsIgnoreCase(a)) {
+                    gitignore = true;
+                } else if ("--incremental".equalsIgnoreCase(a)) {
+                    incremental = true;
+                } else if ("--duplicates".equalsIgnoreCase(a)) {
+                    duplicates = true;
+                } else if ("--cache".equalsIgnoreCase(a)) {
+                    cache = true;
+                } else if ("--watch".equalsIgnoreCase(a)) {
+                    watch = true;
+                } else if ("--archives".equalsIgnoreCase(a)) {
+                    archives = true;
+                } else if (a.startsWith("--generated=")) {
+                    String policy = a.substring(a.indexOf('=') + 1).trim().toUpperCase(Locale.ROOT);
+                    try {
+                        analyzer.setGeneratedPolicy(CodeAnalyzer.GeneratedPolicy.valueOf(policy));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("✗ Unknown --generated policy (use full, stats or skip): " + policy.toLowerCase(Locale.ROOT));
+                        return;
+                    }
+                } else if (a.startsWith("--shared-cache=")) {
+                    sharedCacheDir = a.substring(a.indexOf('=') + 1).trim();
+                } else if (a.startsWith("--shared-cache-size=")) {
+                    // in MB
+                    String mb = a.substring(a.indexOf('=') + 1).trim();
+                    try {
+                        sharedCacheSize = Long.parseLong(mb) * 1024 * 1024;
+                    } catch (NumberFormatException e) {
+                        sharedCacheSize = -1;
+                    }
+                    if (sharedCacheSize < 0) {
+                        System.out.println("✗ Invalid --shared-cache-size (use a size in MB): " + mb);
+                        return;
+                    }
+                } else if (a.startsWith("--line-memo=")) {
+                    // slots of the line classification memo, 0 = off
+                    String slots = a.substring(a.indexOf('=') + 1).trim();
+                    int n;
+                    try {
+                        n = Integer.parseInt(slots);
+                    } catch (NumberFormatException e) {
+                        n = -1;
+                    }
+                    if (n < 0 || n > 1 << 30) {
+                        System.out.println("✗ Invalid --line-memo (use a slot count, 0 = off): " + slots);
+                        return;
+                    }
+                    utils.LineMemo.configure(n);
+                } else if (a.startsWith("--max-file-size=")) {
+                    // in KB
+                    String kb = a.substring(a.indexOf('=') + 1).trim();
+                    try {
+                        maxFileSize = Long.parseLong(kb) * 1024;
+                    } catch (NumberFormatException e) {
+                        maxFileSize = -1;
+                    }
+                    if (maxFileSize < 0) {
+                        System.out.println("✗ Invalid --max-file-size (use a size in KB): " + kb);
+                        return;
+                    }
+                } else if (a.startsWith("--snapshot=")) {
+                    snapshot = a.substring(a.indexOf('=') + 1);
                 } else if (a.startsWith("--format=")) {
                     format = a.substring(a.indexOf('=') + 1);
                 } else if (a.startsWith("--ext=")) {
@@ -51,17 +158,71 @@ public class CodeAnalyzerMain {
                 }
             }
 
+            if (maxFileSize > 0) analyzer.setMaxFileSize(maxFileSize);
+            if (sharedCacheDir != null) {
+                analyzer.setSharedCache(new utils.SharedResultCache(new File(sharedCacheDir),
+                    CodeAnalyzer.ANALYZER_VERSION, sharedCacheSize));
+            }
+            if (tarSource != null) {
+                // e.g. git archive HEAD | java analyzer.CodeAnalyzerMain --tar -
+                try (InputStream in = "-".equals(tarSource)
+                        ? new BufferedInputStream(System.in, 64 * 1024)
+                        : new BufferedInputStream(new FileInputStream(tarSource), 64 * 1024)) {
+                    analyzer.analyzeTar(in, extensions, parallel);
+                } catch (IOException e) {
+                    System.out.println("✗ Cannot read tar input: " + e.getMessage());
+                    return;
+                }
+                analyzer.printAnalysis();
+                analyzer.generateDetailedReport(format);
+                analyzer.saveSnapshot(new File(snapshot));
+                return;
+            }
+
             File dir = new File(dirPath);
+            if (dir.isFile() && utils.ArchiveScanner.isArchiveName(dir.getName())) {
+                analyzer.analyzeArchive(dir);
+                analyzer.printAnalysis();
+                analyzer.generateDetailedReport(format);
+                analyzer.saveSnapshot(new File(snapshot));
+                return;
+            }
             if (!dir.isDirectory()) {
                 System.out.println("✗ Directory not found: " + dirPath);
                 return;
             }
+            analyzer.setUseGitIndex(gitIndex);
+            analyzer.setUseGitignore(gitignore);
+            analyzer.setScanArchives(archives);
+            if (duplicates && incremental) {
+                // Unchanged subtrees are never read, so their blocks could not be counted
+                System.out.println("⚠ --duplicates reads every file: --incremental is ignored");
+                incremental = false;
+            }
+            analyzer.setIncremental(incremental);
+            analyzer.setFindDuplicates(duplicates);
+            analyzer.setUseMetricsCache(cache);
             analyzer.analyzeDirectory(dir, excludes, parallel, extensions, globExcludes);
             analyzer.printAnalysis();
             analyzer.generateDetailedReport(format);
+            analyzer.saveSnapshot(new File(snapshot));
+            if (watch) {
+                utils.DirectoryWalker filter = new utils.DirectoryWalker(excludes, extensions, globExcludes, false);
+                filter.setUseGitignore(gitignore);
+                filter.setIncludeArchives(archives);
+                try {
+                    new WatchSession(analyzer, dir, filter).run();
+                } catch (IOException e) {
+                    System.out.println("✗ Watch failed: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             return;
         }
 
+        // Menu actions share file contents: a directory is read from disk once per session
+        analyzer.setSourceCache(new utils.SourceCache(Math.min(SESSION_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 4)));
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
         while (running) {
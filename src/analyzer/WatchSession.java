@@ -0,0 +1,273 @@
+package analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import model.JavaCodeMetrics;
+import model.MetricsSummary;
+import utils.ArchiveScanner;
+import utils.DirectoryWalker;
+import utils.IgnoreContext;
+
+/**
+ * Watch mode: after an initial scan, re-analyze only the files that the
+ * WatchService reports as created, modified or deleted. With --archives a
+ * changed .zip/.jar is opened again and replaces the results of its entries.
+ *
+ * Events are debounced: once one arrives, the session keeps collecting until
+ * the tree has been quiet for DEBOUNCE_MS (or MAX_BATCH_MS has passed), so a
+ * branch switch touching thousands of files is handled as one batch and each
+ * file is analyzed once. The summary is kept up to date by applying per-file
+ * deltas to a MetricsSummary.
+ */
+public class WatchSession {
+
+    private static final long DEBOUNCE_MS = 300;
+    private static final long MAX_BATCH_MS = 5000;
+    private static final int WORST_FILES = 5;
+
+    private final CodeAnalyzer analyzer;
+    private final File root;
+    private final DirectoryWalker filter;
+    private final Map<String, JavaCodeMetrics> byPath = new HashMap<>();
+    private final MetricsSummary summary = new MetricsSummary();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, IgnoreContext> contexts = new HashMap<>(); // per registered directory
+    private WatchService watcher;
+
+    /**
+     * filter must be configured like the walker used for the initial scan.
+     */
+    public WatchSession(CodeAnalyzer analyzer, File root, DirectoryWalker filter) {
+        this.analyzer = analyzer;
+        this.root = root;
+        this.filter = filter;
+    }
+
+    /**
+     * Blocks until interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (JavaCodeMetrics m : analyzer.getAllMetrics()) {
+            byPath.put(m.getPath(), m);
+            summary.add(m);
+        }
+        analyzer.forgetSharedResults();
+        watcher = FileSystems.getDefault().newWatchService();
+        try {
+            register(root.toPath(), filter.rootContext(root), false, null);
+            System.out.println("\n👀 Watching " + keys.size() + " directories under " + root.getAbsolutePath() + " (Ctrl+C to stop)");
+            printSummary();
+
+            while (true) {
+                WatchKey key = watcher.take();
+                Map<Path, WatchEvent.Kind<?>> batch = new LinkedHashMap<>();
+                boolean rescan = drain(key, batch);
+                long deadline = System.currentTimeMillis() + MAX_BATCH_MS;
+                while (System.currentTimeMillis() < deadline
+                        && (key = watcher.poll(DEBOUNCE_MS, java.util.concurrent.TimeUnit.MILLISECONDS)) != null) {
+                    rescan |= drain(key, batch);
+                }
+
+                if (rescan) {
+                    System.out.println("\n🔁 Re-scanning " + root.getAbsolutePath());
+                    rescan();
+                } else {
+                    apply(batch);
+                }
+                // Identical files share a result within one batch only
+                analyzer.forgetSharedResults();
+                printSummary();
+            }
+        } finally {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Collect a key's events into the batch (the last event per path wins).
+     * Returns true if the batch can no longer be applied file by file.
+     */
+    private boolean drain(WatchKey key, Map<Path, WatchEvent.Kind<?>> batch) {
+        boolean rescan = false;
+        Path dir = keys.get(key);
+        if (dir == null) return false; // cancelled by a rescan
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan = true;
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            // Changed ignore rules affect files that did not change themselves
+            if (contexts.get(dir).isIgnoreFileName(child.getFileName().toString())) rescan = true;
+            batch.remove(child);
+            batch.put(child, event.kind());
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            contexts.remove(dir);
+        }
+        return rescan;
+    }
+
+    private void apply(Map<Path, WatchEvent.Kind<?>> batch) throws IOException {
+        for (Map.Entry<Path, WatchEvent.Kind<?>> e : batch.entrySet()) {
+            Path p = e.getKey();
+            IgnoreContext parent = contexts.get(p.getParent());
+            if (parent == null) continue;
+
+            if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                if (e.getValue() == StandardWatchEventKinds.ENTRY_CREATE && filter.accepts(parent, p, true)) {
+                    // New directory (or one moved in): watch it and pick up what is already there
+                    register(p, filter.enter(parent, p), true, null);
+                }
+            } else if (Files.isRegularFile(p)) {
+                if (filter.accepts(parent, p, false)) update(p.toFile());
+            } else {
+                removeTree(p.toString());
+            }
+        }
+    }
+
+    private void rescan() throws IOException {
+        for (WatchKey k : keys.keySet()) k.cancel();
+        keys.clear();
+        contexts.clear();
+        Set<String> before = new HashSet<>(byPath.keySet());
+        Set<String> seen = new HashSet<>();
+        register(root.toPath(), filter.rootContext(root), true, seen);
+        before.removeIf(p -> seen.contains(fileOf(p)));
+        for (String gone : before) remove(gone);
+    }
+
+    /** The file a result path belongs to: the archive for an archive entry. */
+    private static String fileOf(String path) {
+        int i = path.indexOf(ArchiveScanner.SEPARATOR);
+        return i >= 0 ? path.substring(0, i) : path;
+    }
+
+    /**
+     * Watch dir and every accepted directory below it. With analyze set, accepted
+     * files are analyzed too: all of them when seen is non-null (a rescan, which also
+     * records their paths in seen), otherwise only those without a result yet.
+     */
+    private void register(Path dir, IgnoreContext ctx, boolean analyze, Set<String> seen) throws IOException {
+        final Deque<IgnoreContext> stack = new ArrayDeque<>();
+        stack.push(ctx);
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                IgnoreContext c = stack.peek();
+                if (!d.equals(dir)) {
+                    if (!filter.accepts(c, d, true)) return FileVisitResult.SKIP_SUBTREE;
+                    c = filter.enter(c, d);
+                }
+                stack.push(c);
+                contexts.put(d, c);
+                keys.put(d.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE), d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                if (!analyze || !attrs.isRegularFile() || !filter.accepts(stack.peek(), f, false)) return FileVisitResult.CONTINUE;
+                if (seen != null) {
+                    seen.add(f.toString());
+                    update(f.toFile());
+                } else if (!byPath.containsKey(f.toString())) {
+                    update(f.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path f, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) {
+                stack.pop();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void update(File file) {
+        if (filter.isArchive(file.getName())) {
+            updateArchive(file);
+            return;
+        }
+        JavaCodeMetrics old = byPath.remove(file.getPath());
+        if (old != null) summary.remove(old);
+        JavaCodeMetrics m = analyzer.reanalyzeFile(file);
+        if (m == null) return;
+        byPath.put(m.getPath(), m);
+        summary.add(m);
+        System.out.println((old == null ? "➕ " : "✏️  ") + m.getPath());
+    }
+
+    /**
+     * A changed archive replaces the results of all its entries.
+     */
+    private void updateArchive(File archive) {
+        for (String p : entriesOf(archive.getPath())) summary.remove(byPath.remove(p));
+        List<JavaCodeMetrics> results = analyzer.reanalyzeArchive(archive, filter::matchesExtension);
+        for (JavaCodeMetrics m : results) {
+            byPath.put(m.getPath(), m);
+            summary.add(m);
+        }
+        System.out.println("📦 " + archive.getPath() + " (" + results.size() + " entries)");
+    }
+
+    private List<String> entriesOf(String archive) {
+        String prefix = archive + ArchiveScanner.SEPARATOR;
+        List<String> entries = new ArrayList<>();
+        for (String p : byPath.keySet()) {
+            if (p.startsWith(prefix)) entries.add(p);
+        }
+        return entries;
+    }
+
+    private void remove(String path) {
+        JavaCodeMetrics old = byPath.remove(path);
+        if (old == null) return;
+        summary.remove(old);
+        analyzer.removeFile(path);
+        System.out.println("➖ " + path);
+    }
+
+    /**
+     * A deleted path may have been a directory or an archive: drop everything
+     * below it too.
+     */
+    private void removeTree(String path) {
+        remove(path);
+        String prefix = path + File.separator;
+        List<String> below = entriesOf(path);
+        for (String p : byPath.keySet()) {
+            if (p.startsWith(prefix)) below.add(p);
+        }
+        for (String p : below) remove(p);
+    }
+
+    private void printSummary() {
+        System.out.println("📈 Files: " + summary.getFileCount()
+            + " | Code lines: " + summary.getCodeLines()
+            + " | Avg complexity: " + String.format("%.1f", summary.getAverageComplexity())
+            + " | Avg comments: " + String.format("%.1f%%", summary.getAverageCommentRatio())
+            + (summary.hasMaintainabilityIndex() ? " | Avg MI: " + String.format("%.1f", summary.getAverageMaintainabilityIndex()) : ""));
+        List<JavaCodeMetrics> worst = summary.getWorst(WORST_FILES);
+        if (!worst.isEmpty()) {
+            System.out.println("   Most complex:");
+            for (JavaCodeMetrics m : worst) {
+                System.out.println("   • " + m.getCyclomaticComplexity() + "  " + m.getPath());
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class AdvancedMetrics {
     private int avgMethodComplexity;
     private int longestMethodLines;
     private int largestClassLines;
+    private MethodTable methods; // per method, null if the heuristic finds no methods
     
     // Coupling/Cohesion
     private int coupling; // afferent + efferent
@@ -85,6 +86,9 @@ public class AdvancedMetrics {
     public int getLargestClassLines() { return largestClassLines; }
     public void setLargestClassLines(int lines) { this.largestClassLines = lines; }
     
+    public MethodTable getMethods() { return methods; }
+    public void setMethods(MethodTable methods) { this.methods = methods; }
+    
     // Coupling/Cohesion
     public int getCoupling() { return coupling; }
     public void setCoupling(int coupling) { this.coupling = coupling; }
@@ -104,7 +108,7 @@ public class AdvancedMetrics {
         int N = N1 + N2;
         int n = n1 + n2;
         if (n > 0) {
-            volume = N * (Math.log(n) / Math.log(2));
+            volume = halsteadVolume(N, n);
             if (n2 > 0 && N2 > 0) {
                 difficulty = (n1 / 2.0) * (N2 / (double) n2);
             }
@@ -112,6 +116,14 @@ public class AdvancedMetrics {
         }
     }
     
+    /**
+     * V = N * log2(n) for N tokens of n distinct operators and operands; also
+     * used for the volume of single methods.
+     */
+    public static double halsteadVolume(int N, int n) {
+        return n > 0 ? N * (Math.log(n) / Math.log(2)) : 0.0;
+    }
+    
     /**
      * Compute Maintainability Index using Microsoft formula:
      * MI = MAX(0, (171 - 5.2 * ln(V) - 0.23 * CC - 16.2 * ln(LOC)) * 100 / 171)
@@ -126,4 +138,26 @@ public class AdvancedMetrics {
         double raw = 171 - 5.2 * lnV - 0.23 * cyclomaticComplexity - 16.2 * lnLOC;
         maintainabilityIndex = Math.max(0, (raw * 100) / 171);
     }
+
+    public AdvancedMetrics copy() {
+        AdvancedMetrics c = new AdvancedMetrics();
+        c.n1 = n1;
+        c.n2 = n2;
+        c.N1 = N1;
+        c.N2 = N2;
+        c.volume = volume;
+        c.difficulty = difficulty;
+        c.effort = effort;
+        c.cognitiveComplexity = cognitiveComplexity;
+        c.maintainabilityIndex = maintainabilityIndex;
+        c.maxMethodComplexity = maxMethodComplexity;
+        c.avgMethodComplexity = avgMethodComplexity;
+        c.longestMethodLines = longestMethodLines;
+        c.largestClassLines = largestClassLines;
+        c.methods = methods != null ? methods.copy() : null;
+        c.coupling = coupling;
+        c.cohesion = cohesion;
+        c.riskScore = riskScore;
+        return c;
+    }
 }
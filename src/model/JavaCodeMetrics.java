@@ -20,6 +20,10 @@ public class JavaCodeMetrics {
     private ChurnMetrics churnMetrics;
     private int duplicationPercentage;
     private double testCoverage;
+    private String statsOnlyReason; // non-null when only size/line stats were collected
+    private String path;            // full path (or archive key); fileName is only the last part
+    private java.util.List<String> aliases; // other paths of the same physical file
+    private long contentHash;               // SourceBuffer.contentHash, 0 if not analyzed
 
     public JavaCodeMetrics(String fileName) {
         this.fileName = fileName;
@@ -71,4 +75,46 @@ public class JavaCodeMetrics {
     
     public double getTestCoverage() { return testCoverage; }
     public void setTestCoverage(double coverage) { this.testCoverage = coverage; }
+
+    public boolean isStatsOnly() { return statsOnlyReason != null; }
+    public String getStatsOnlyReason() { return statsOnlyReason; }
+    public void setStatsOnlyReason(String reason) { this.statsOnlyReason = reason; }
+
+    public String getPath() { return path != null ? path : fileName; }
+    public void setPath(String path) { this.path = path; }
+
+    public java.util.List<String> getAliases() {
+        return aliases != null ? aliases : java.util.Collections.<String>emptyList();
+    }
+    public void addAlias(String alias) {
+        if (aliases == null) aliases = new java.util.ArrayList<>();
+        aliases.add(alias);
+    }
+
+    public long getContentHash() { return contentHash; }
+    public void setContentHash(long hash) { this.contentHash = hash; }
+
+    /**
+     * Copy of the content-derived results (line counts, heuristics, advanced
+     * metrics, findings) under another file name. Churn, path and aliases are
+     * per file and are not copied.
+     */
+    public JavaCodeMetrics copyAs(String fileName) {
+        JavaCodeMetrics c = new JavaCodeMetrics(fileName);
+        c.totalLines = totalLines;
+        c.codeLines = codeLines;
+        c.commentLines = commentLines;
+        c.blankLines = blankLines;
+        c.cyclomaticComplexity = cyclomaticComplexity;
+        c.commentRatio = commentRatio;
+        c.methodCount = methodCount;
+        c.classCount = classCount;
+        c.findings.addAll(findings);
+        c.advancedMetrics = advancedMetrics != null ? advancedMetrics.copy() : null;
+        c.duplicationPercentage = duplicationPercentage;
+        c.testCoverage = testCoverage;
+        c.statsOnlyReason = statsOnlyReason;
+        c.contentHash = contentHash;
+        return c;
+    }
 }
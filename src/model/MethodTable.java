@@ -0,0 +1,130 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Per-method metrics of one file: one row per method (or function) with a body,
+ * in source order, kept as parallel arrays rather than an object per method.
+ *
+ * The language heuristic adds the rows with their lines and cyclomatic
+ * complexity at the end of the file's MetricsPass; the Halstead and cognitive
+ * complexity accumulators, which finish after it, fill in their columns over
+ * each row's line range. Lines are 1-based and inclusive; a method nested in
+ * another (a local function, an anonymous class's method) has its own row and
+ * is also inside its parent's range.
+ *
+ * The Halstead volume is approximate: it counts whole lines, so tokens of other
+ * code sharing a method's first or last line (a neighbouring one-line method,
+ * the class declaration) are included.
+ */
+public class MethodTable {
+
+    private int size;
+    private String[] names;
+    private int[] startLines;
+    private int[] endLines;
+    private int[] codeLines;
+    private int[] complexity;
+    private int[] cognitive;
+    private double[] volumes;
+
+    public MethodTable() {
+        this(8);
+    }
+
+    public MethodTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        names = new String[capacity];
+        startLines = new int[capacity];
+        endLines = new int[capacity];
+        codeLines = new int[capacity];
+        complexity = new int[capacity];
+        cognitive = new int[capacity];
+        volumes = new double[capacity];
+    }
+
+    /**
+     * Appends a method; returns its row. The other columns start at 0.
+     */
+    public int add(String name, int startLine, int endLine, int cyclomaticComplexity) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            startLines = Arrays.copyOf(startLines, capacity);
+            endLines = Arrays.copyOf(endLines, capacity);
+            codeLines = Arrays.copyOf(codeLines, capacity);
+            complexity = Arrays.copyOf(complexity, capacity);
+            cognitive = Arrays.copyOf(cognitive, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+        }
+        names[size] = name;
+        startLines[size] = startLine;
+        endLines[size] = endLine;
+        complexity[size] = cyclomaticComplexity;
+        codeLines[size] = 0;
+        cognitive[size] = 0;
+        volumes[size] = 0.0;
+        return size++;
+    }
+
+    public int size() { return size; }
+
+    public String getName(int row) { return names[row]; }
+    public int getStartLine(int row) { return startLines[row]; }
+    public int getEndLine(int row) { return endLines[row]; }
+
+    public int getCodeLines(int row) { return codeLines[row]; }
+    public void setCodeLines(int row, int lines) { codeLines[row] = lines; }
+
+    public int getComplexity(int row) { return complexity[row]; }
+
+    public int getCognitiveComplexity(int row) { return cognitive[row]; }
+    public void setCognitiveComplexity(int row, int cc) { cognitive[row] = cc; }
+
+    public double getVolume(int row) { return volumes[row]; }
+    public void setVolume(int row, double volume) { volumes[row] = volume; }
+
+    public int maxComplexity() {
+        int max = 0;
+        for (int r = 0; r < size; r++) max = Math.max(max, complexity[r]);
+        return max;
+    }
+
+    /** Integer average, 0 without methods. */
+    public int averageComplexity() {
+        if (size == 0) return 0;
+        int total = 0;
+        for (int r = 0; r < size; r++) total += complexity[r];
+        return total / size;
+    }
+
+    /** Longest method in lines, from its first to its last line. */
+    public int longestLines() {
+        int longest = 0;
+        for (int r = 0; r < size; r++) longest = Math.max(longest, endLines[r] - startLines[r] + 1);
+        return longest;
+    }
+
+    /**
+     * Worse first: higher cyclomatic, then cognitive complexity, then longer.
+     */
+    public int compareRows(int row, MethodTable other, int otherRow) {
+        int c = Integer.compare(other.complexity[otherRow], complexity[row]);
+        if (c == 0) c = Integer.compare(other.cognitive[otherRow], cognitive[row]);
+        if (c == 0) c = Integer.compare(other.codeLines[otherRow], codeLines[row]);
+        return c;
+    }
+
+    public MethodTable copy() {
+        MethodTable c = new MethodTable(size);
+        c.size = size;
+        System.arraycopy(names, 0, c.names, 0, size);
+        System.arraycopy(startLines, 0, c.startLines, 0, size);
+        System.arraycopy(endLines, 0, c.endLines, 0, size);
+        System.arraycopy(codeLines, 0, c.codeLines, 0, size);
+        System.arraycopy(complexity, 0, c.complexity, 0, size);
+        System.arraycopy(cognitive, 0, c.cognitive, 0, size);
+        System.arraycopy(volumes, 0, c.volumes, 0, size);
+        return c;
+    }
+}
@@ -0,0 +1,75 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Running totals over a set of file metrics, updated by adding and removing
+ * single files instead of recomputing over the whole list. The averages match
+ * the summary printed by CodeAnalyzer.printAnalysis.
+ */
+public class MetricsSummary {
+
+    // Highest complexity first; the path breaks ties so distinct files never compare equal
+    private static final Comparator<JavaCodeMetrics> WORST_FIRST =
+        Comparator.comparingInt(JavaCodeMetrics::getCyclomaticComplexity).reversed()
+            .thenComparing(JavaCodeMetrics::getPath);
+
+    private int files;
+    private long totalLines;
+    private long codeLines;
+    private long totalComplexity;
+    private double totalCommentRatio;
+    private double totalMI;
+    private int miCount;
+    private final TreeSet<JavaCodeMetrics> worst = new TreeSet<>(WORST_FIRST);
+
+    public void add(JavaCodeMetrics m) {
+        files++;
+        totalLines += m.getTotalLines();
+        codeLines += m.getCodeLines();
+        totalComplexity += m.getCyclomaticComplexity();
+        totalCommentRatio += m.getCommentRatio();
+        if (m.getAdvancedMetrics() != null) {
+            totalMI += m.getAdvancedMetrics().getMaintainabilityIndex();
+            miCount++;
+        }
+        worst.add(m);
+    }
+
+    /**
+     * m must be the same instance (with unchanged values) that was added.
+     */
+    public void remove(JavaCodeMetrics m) {
+        if (!worst.remove(m)) return;
+        files--;
+        totalLines -= m.getTotalLines();
+        codeLines -= m.getCodeLines();
+        totalComplexity -= m.getCyclomaticComplexity();
+        totalCommentRatio -= m.getCommentRatio();
+        if (m.getAdvancedMetrics() != null) {
+            totalMI -= m.getAdvancedMetrics().getMaintainabilityIndex();
+            miCount--;
+        }
+    }
+
+    public int getFileCount() { return files; }
+    public long getTotalLines() { return totalLines; }
+    public long getCodeLines() { return codeLines; }
+
+    public double getAverageComplexity() { return files == 0 ? 0 : (double) totalComplexity / files; }
+    public double getAverageCommentRatio() { return files == 0 ? 0 : totalCommentRatio / files; }
+    public double getAverageMaintainabilityIndex() { return miCount == 0 ? 0 : totalMI / miCount; }
+    public boolean hasMaintainabilityIndex() { return miCount > 0; }
+
+    /**
+     * The n files with the highest cyclomatic complexity.
+     */
+    public List<JavaCodeMetrics> getWorst(int n) {
+        List<JavaCodeMetrics> out = new ArrayList<>(Math.min(n, worst.size()));
+        for (JavaCodeMetrics m : worst) {
+            if (out.size() >= n) break;
+            out.add(m);
+        }
+        return out;
+    }
+}
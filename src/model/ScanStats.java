@@ -0,0 +1,54 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Scan-level results that do not belong to a single file:
+ * files skipped or reduced to stats-only, counted per reason.
+ */
+public class ScanStats {
+
+    public static final String BINARY = "binary";
+    public static final String OVERSIZED = "oversized";
+    public static final String UNKNOWN_ENCODING = "unknown-encoding";
+    public static final String MINIFIED = "minified";
+    public static final String GENERATED = "generated";
+    public static final String ALIAS = "alias"; // same physical file reached through another path
+
+    private final Map<String, Integer> skipCounts;
+
+    public ScanStats() {
+        this.skipCounts = new TreeMap<>();
+    }
+
+    public synchronized void recordSkip(String reason) {
+        skipCounts.merge(reason, 1, Integer::sum);
+    }
+
+    public synchronized void recordSkips(Map<String, Integer> counts) {
+        for (Map.Entry<String, Integer> e : counts.entrySet()) skipCounts.merge(e.getKey(), e.getValue(), Integer::sum);
+    }
+
+    /**
+     * Undo recordSkips, for results that are being replaced.
+     */
+    public synchronized void forgetSkips(Map<String, Integer> counts) {
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            skipCounts.computeIfPresent(e.getKey(), (k, v) -> v > e.getValue() ? v - e.getValue() : null);
+        }
+    }
+
+    public synchronized Map<String, Integer> getSkipCounts() {
+        return new TreeMap<>(skipCounts);
+    }
+
+    public synchronized int getTotalSkipped() {
+        int total = 0;
+        for (int c : skipCounts.values()) total += c;
+        return total;
+    }
+
+    public synchronized void clear() {
+        skipCounts.clear();
+    }
+}
@@ -3,6 +3,8 @@ package reports;
 import model.JavaCodeMetrics;
 import model.AdvancedMetrics;
 import model.ChurnMetrics;
+import model.MethodTable;
+import model.ScanStats;
 import java.io.*;
 import java.util.*;
 
@@ -10,8 +12,14 @@ import java.util.*;
  * Generates interactive HTML dashboard with Chart.js visualizations
  */
 public class HtmlReportGenerator {
+
+    private static final int WORST_METHODS = 25;
     
     public static void generateHtmlReport(List<JavaCodeMetrics> allMetrics, String outputPath) {
+        generateHtmlReport(allMetrics, outputPath, null);
+    }
+
+    public static void generateHtmlReport(List<JavaCodeMetrics> allMetrics, String outputPath, ScanStats scanStats) {
         try (FileOutputStream fos = new FileOutputStream(outputPath);
              PrintStream ps = new PrintStream(fos)) {
             
@@ -62,7 +70,7 @@ public class HtmlReportGenerator {
             ps.println("        </div>");
             
             // Summary Stats
-            generateSummaryStats(ps, allMetrics);
+            generateSummaryStats(ps, allMetrics, scanStats);
             
             // Charts
             ps.println("        <div class=\"charts-grid\">");
@@ -77,6 +85,9 @@ public class HtmlReportGenerator {
             
             // Detailed Table
             generateDetailedTable(ps, allMetrics);
+
+            // Worst methods
+            generateWorstMethodsTable(ps, allMetrics);
             
             // Footer
             ps.println("        <div class=\"footer\">");
@@ -93,7 +104,7 @@ public class HtmlReportGenerator {
         }
     }
     
-    private static void generateSummaryStats(PrintStream ps, List<JavaCodeMetrics> metrics) {
+    private static void generateSummaryStats(PrintStream ps, List<JavaCodeMetrics> metrics, ScanStats scanStats) {
         int totalFiles = metrics.size();
         double avgComplexity = metrics.stream().mapToInt(JavaCodeMetrics::getCyclomaticComplexity).average().orElse(0);
         double avgMI = metrics.stream()
@@ -119,6 +130,18 @@ public class HtmlReportGenerator {
         ps.println("                <div class=\"label\">Avg Maintainability</div>");
         ps.println("                <div class=\"number\">" + String.format("%.1f", avgMI) + "</div>");
         ps.println("            </div>");
+        if (scanStats != null && scanStats.getTotalSkipped() > 0) {
+            StringBuilder reasons = new StringBuilder();
+            for (Map.Entry<String, Integer> e : scanStats.getSkipCounts().entrySet()) {
+                if (reasons.length() > 0) reasons.append(", ");
+                reasons.append(e.getKey()).append(": ").append(e.getValue());
+            }
+            ps.println("            <div class=\"stat-card\">");
+            ps.println("                <div class=\"label\">Skipped / Stats Only</div>");
+            ps.println("                <div class=\"number\">" + scanStats.getTotalSkipped() + "</div>");
+            ps.println("                <div class=\"label\">" + reasons + "</div>");
+            ps.println("            </div>");
+        }
         ps.println("        </div>");
     }
     
@@ -301,4 +324,56 @@ public class HtmlReportGenerator {
         ps.println("            </table>");
         ps.println("        </div>");
     }
+
+    /**
+     * The methods of all files ranked worst first (MethodTable.compareRows).
+     */
+    private static void generateWorstMethodsTable(PrintStream ps, List<JavaCodeMetrics> metrics) {
+        List<MethodTable> tables = new ArrayList<>();
+        List<JavaCodeMetrics> files = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>(); // table index, row
+        for (JavaCodeMetrics m : metrics) {
+            MethodTable methods = m.getAdvancedMetrics() != null ? m.getAdvancedMetrics().getMethods() : null;
+            if (methods == null) continue;
+            for (int r = 0; r < methods.size(); r++) rows.add(new int[] {tables.size(), r});
+            tables.add(methods);
+            files.add(m);
+        }
+        if (rows.isEmpty()) return;
+        rows.sort((a, b) -> tables.get(a[0]).compareRows(a[1], tables.get(b[0]), b[1]));
+
+        ps.println("        <div class=\"table-card\" style=\"margin-top: 20px;\">");
+        ps.println("            <h2>🔥 Worst Methods</h2>");
+        ps.println("            <table>");
+        ps.println("                <thead>");
+        ps.println("                    <tr>");
+        ps.println("                        <th>Method</th>");
+        ps.println("                        <th>File</th>");
+        ps.println("                        <th>Lines</th>");
+        ps.println("                        <th>LOC</th>");
+        ps.println("                        <th>Complexity</th>");
+        ps.println("                        <th>Cognitive</th>");
+        ps.println("                        <th title=\"Counted over the method's whole lines: tokens of other code on its first or last line are included\">Halstead Vol (approx.)</th>");
+        ps.println("                    </tr>");
+        ps.println("                </thead>");
+        ps.println("                <tbody>");
+
+        for (int[] ref : rows.subList(0, Math.min(WORST_METHODS, rows.size()))) {
+            MethodTable methods = tables.get(ref[0]);
+            int r = ref[1];
+            ps.println("                    <tr>");
+            ps.println("                        <td><strong>" + methods.getName(r) + "</strong></td>");
+            ps.println("                        <td>" + files.get(ref[0]).getFileName() + "</td>");
+            ps.println("                        <td>" + methods.getStartLine(r) + "-" + methods.getEndLine(r) + "</td>");
+            ps.println("                        <td>" + methods.getCodeLines(r) + "</td>");
+            ps.println("                        <td>" + methods.getComplexity(r) + "</td>");
+            ps.println("                        <td>" + methods.getCognitiveComplexity(r) + "</td>");
+            ps.println("                        <td>" + String.format("%.1f", methods.getVolume(r)) + "</td>");
+            ps.println("                    </tr>");
+        }
+
+        ps.println("                </tbody>");
+        ps.println("            </table>");
+        ps.println("        </div>");
+    }
 }
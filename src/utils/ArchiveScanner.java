@@ -0,0 +1,100 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the entries of .zip/.jar files through the JDK zip FileSystem, so
+ * archived sources can be analyzed without extracting them to disk.
+ *
+ * Entries are keyed as "archive!/path/inside", the same notation the JDK uses
+ * for jar URLs. Nested archives are not opened.
+ */
+public class ArchiveScanner {
+
+    public static final String SEPARATOR = "!/";
+
+    private static final String[] ARCHIVE_EXTENSIONS = {".zip", ".jar"};
+
+    /**
+     * One file inside an archive. Only valid while scan() is running: the
+     * archive is closed when it returns.
+     */
+    public static class Entry {
+        private final String key;
+        private final String name;
+        private final Path path;
+        private final long size;
+
+        Entry(String key, Path path, long size) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            Path fileName = path.getFileName();
+            this.name = fileName != null ? fileName.toString() : key;
+        }
+
+        /** "archive!/path/inside". */
+        public String getKey() { return key; }
+        /** File name of the entry, without directories. */
+        public String getName() { return name; }
+        /** Uncompressed size. */
+        public long getSize() { return size; }
+
+        public byte[] readAllBytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+
+        public SeekableByteChannel openChannel() throws IOException {
+            return Files.newByteChannel(path);
+        }
+    }
+
+    public static boolean isArchiveName(String name) {
+        for (String e : ARCHIVE_EXTENSIONS) {
+            int off = name.length() - e.length();
+            if (off >= 0 && name.regionMatches(true, off, e, 0, e.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pass every regular-file entry whose name is accepted by the filter to the sink.
+     * The key prefix is the archive's path as given, like the paths of plain files,
+     * so archives of the same name in different directories do not collide.
+     * Throws IOException if the file is not a readable zip.
+     */
+    public static void scan(Path archive, Predicate<String> nameFilter, Consumer<Entry> sink) throws IOException {
+        String prefix = archive.toString() + SEPARATOR;
+        FileSystem fs;
+        try {
+            fs = FileSystems.newFileSystem(archive, (ClassLoader) null);
+        } catch (ProviderNotFoundException | IllegalArgumentException e) {
+            throw new IOException("Not a zip archive: " + archive, e);
+        }
+        try (FileSystem zip = fs) {
+            for (final Path root : zip.getRootDirectories()) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+                        if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                        Path fileName = p.getFileName();
+                        if (fileName == null || !nameFilter.test(fileName.toString())) return FileVisitResult.CONTINUE;
+                        String rel = root.relativize(p).toString();
+                        sink.accept(new Entry(prefix + rel, p, attrs.size()));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path p, IOException exc) {
+                        return FileVisitResult.CONTINUE; // unreadable entry, skip
+                    }
+                });
+            }
+        }
+    }
+}
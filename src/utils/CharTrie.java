@@ -0,0 +1,68 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable trie over a fixed list of ASCII words (operators, keywords), matched
+ * directly against char ranges of a SourceBuffer. A word's id is its index in the
+ * list. Each node is a row of 128 child slots, so a lookup is one array read per
+ * char; the lists this is used for are short.
+ */
+final class CharTrie {
+
+    private final int[] next;       // next[node * 128 + c]: child node, 0 = none (root is 0)
+    private final int[] terminal;   // terminal[node]: word id + 1, 0 if no word ends here
+
+    CharTrie(String... words) {
+        int nodes = 1;
+        for (String w : words) nodes += w.length();
+        int[] trie = new int[nodes * 128];
+        int[] ends = new int[nodes];
+        int used = 1;
+        for (int id = 0; id < words.length; id++) {
+            int node = 0;
+            for (char c : words[id].toCharArray()) {
+                if (c >= 128) throw new IllegalArgumentException("not ASCII: " + words[id]);
+                int slot = node * 128 + c;
+                if (trie[slot] == 0) trie[slot] = used++;
+                node = trie[slot];
+            }
+            if (ends[node] == 0) ends[node] = id + 1;
+        }
+        next = Arrays.copyOf(trie, used * 128);
+        terminal = Arrays.copyOf(ends, used);
+    }
+
+    /** Id of the word spelled exactly by [start, end), or -1. */
+    int exact(SourceBuffer src, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c >= 128 || (node = next[node * 128 + c]) == 0) return -1;
+        }
+        return terminal[node] - 1;
+    }
+
+    /**
+     * Longest word starting at from (and ending by end), as id * 256 + length;
+     * -1 if none. See id() and length().
+     */
+    int longest(SourceBuffer src, int from, int end) {
+        int node = 0;
+        int match = -1;
+        for (int i = from; i < end; i++) {
+            char c = src.charAt(i);
+            if (c >= 128 || (node = next[node * 128 + c]) == 0) break;
+            if (terminal[node] != 0) match = (terminal[node] - 1) * 256 + (i - from + 1);
+        }
+        return match;
+    }
+
+    static int id(int match) {
+        return match >> 8;
+    }
+
+    static int length(int match) {
+        return match & 0xff;
+    }
+}
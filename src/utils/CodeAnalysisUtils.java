@@ -78,39 +78,6 @@ public class CodeAnalysisUtils {
         return complexity;
     }
 
-    /**
-     * Find longest method using custom comparator
-     * Demonstrates: Comparator, Algorithm design
-     */
-    public static int findLongestMethodLength(List<String> lines) {
-        int maxLength = 0;
-        int currentMethodLength = 0;
-        boolean inMethod = false;
-
-        for (String line : lines) {
-            String trimmed = line.trim();
-
-            // Detect method start
-            if ((trimmed.contains("public ") || trimmed.contains("private ")) 
-                && trimmed.contains("(") && trimmed.contains(")")) {
-                inMethod = true;
-                currentMethodLength = 0;
-            }
-
-            if (inMethod) {
-                currentMethodLength++;
-
-                // Detect method end
-                if (trimmed.equals("}")) {
-                    maxLength = Math.max(maxLength, currentMethodLength);
-                    inMethod = false;
-                }
-            }
-        }
-
-        return maxLength;
-    }
-
     /**
      * Detect code violations using Set (no duplicates)
      */
@@ -1,6 +1,8 @@
 package utils;
 
 import java.util.*;
+import model.AdvancedMetrics;
+import model.MethodTable;
 
 /**
  * Computes Cognitive Complexity as defined by SonarSource.
@@ -14,64 +16,90 @@ import java.util.*;
 public class CognitiveComplexityCalculator {
     
     public static int computeCognitiveComplexity(List<String> lines) {
-        int complexity = 0;
-        int nestingLevel = 0;
-        
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (trimmed.isEmpty() || trimmed.startsWith("//") || trimmed.startsWith("#")) continue;
-            
-            // Track nesting depth
-            int openBraces = countOccurrences(trimmed, '{');
-            int closeBraces = countOccurrences(trimmed, '}');
-            
-            // Increment complexity for control flow keywords
-            if (matchesControlFlow(trimmed)) {
-                complexity += 1 + nestingLevel; // +1 base + nesting penalty
+        return computeCognitiveComplexity(SourceBuffer.fromLines(lines));
+    }
+
+    public static int computeCognitiveComplexity(SourceBuffer src) {
+        AdvancedMetrics result = new AdvancedMetrics();
+        MetricsPass.run(src, accumulator(result));
+        return result.getCognitiveComplexity();
+    }
+
+    /**
+     * Cognitive complexity as part of a MetricsPass, stored in metrics at the end,
+     * and per method of its MethodTable: the increments of the method's lines.
+     */
+    public static MetricsPass.Accumulator accumulator(AdvancedMetrics metrics) {
+        return new MetricsPass.Accumulator() {
+            int complexity = 0;
+            int nestingLevel = 0;
+            // lines with an increment, in order, and the complexity before each
+            int[] incrementLines = new int[32];
+            int[] complexityBefore = new int[32];
+            int increments;
+
+            @Override
+            public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo line) {
+                if (line.skipped) return;
+                int before = complexity;
+
+                // Increment complexity for control flow keywords
+                if (line.controlFlow) {
+                    complexity += 1 + nestingLevel; // +1 base + nesting penalty
+                }
+
+                // Increment for logical operators in conditions (each && or ||)
+                complexity += line.logicalOps;
+
+                // Increment for catch blocks
+                if (line.catchBlock) {
+                    complexity += 1 + nestingLevel;
+                }
+
+                if (complexity > before) {
+                    if (increments == incrementLines.length) {
+                        incrementLines = Arrays.copyOf(incrementLines, increments * 2);
+                        complexityBefore = Arrays.copyOf(complexityBefore, increments * 2);
+                    }
+                    incrementLines[increments] = index;
+                    complexityBefore[increments++] = before;
+                }
+
+                // Update nesting level after processing line
+                nestingLevel += line.openBraces;
+                nestingLevel -= line.closeBraces;
+                if (nestingLevel < 0) nestingLevel = 0; // safety
             }
-            
-            // Increment for logical operators in conditions (each && or ||)
-            if (trimmed.contains("if") || trimmed.contains("while") || trimmed.contains("for")) {
-                complexity += countOccurrences(trimmed, "&&");
-                complexity += countOccurrences(trimmed, "||");
+
+            @Override
+            public void finish() {
+                metrics.setCognitiveComplexity(complexity);
+                MethodTable methods = metrics.getMethods();
+                if (methods == null) return;
+                for (int r = 0; r < methods.size(); r++) {
+                    int from = firstIncrement(methods.getStartLine(r) - 1);
+                    int to = firstIncrement(methods.getEndLine(r));
+                    methods.setCognitiveComplexity(r, complexityAt(to) - complexityAt(from));
+                }
             }
-            
-            // Increment for catch blocks
-            if (trimmed.startsWith("catch") || trimmed.contains("} catch")) {
-                complexity += 1 + nestingLevel;
+
+            /** Index of the first increment on line index or later. */
+            int firstIncrement(int index) {
+                int i = Arrays.binarySearch(incrementLines, 0, increments, index);
+                return i >= 0 ? i : -i - 1;
             }
-            
-            // Update nesting level after processing line
-            nestingLevel += openBraces;
-            nestingLevel -= closeBraces;
-            if (nestingLevel < 0) nestingLevel = 0; // safety
-        }
-        
-        return complexity;
-    }
-    
-    private static boolean matchesControlFlow(String line) {
-        return line.startsWith("if") || line.startsWith("else if") || line.startsWith("else") ||
-               line.startsWith("for") || line.startsWith("while") || line.startsWith("do") ||
-               line.startsWith("switch") || line.contains("? ") || // ternary
-               line.contains("elif ");
-    }
-    
-    private static int countOccurrences(String str, String substr) {
-        int count = 0;
-        int index = 0;
-        while ((index = str.indexOf(substr, index)) != -1) {
-            count++;
-            index += substr.length();
-        }
-        return count;
+
+            /** Complexity before increment i (the total after the last). */
+            int complexityAt(int i) {
+                return i < increments ? complexityBefore[i] : complexity;
+            }
+        };
     }
-    
-    private static int countOccurrences(String str, char c) {
-        int count = 0;
-        for (int i = 0; i < str.length(); i++) {
-            if (str.charAt(i) == c) count++;
-        }
-        return count;
+
+    static boolean matchesControlFlow(SourceBuffer src, int s, int e) {
+        return src.startsWith(s, e, "if") || src.startsWith(s, e, "else if") || src.startsWith(s, e, "else") ||
+               src.startsWith(s, e, "for") || src.startsWith(s, e, "while") || src.startsWith(s, e, "do") ||
+               src.startsWith(s, e, "switch") || src.contains(s, e, "? ") || // ternary
+               src.contains(s, e, "elif ");
     }
 }
@@ -0,0 +1,344 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Pre-analysis classification from a small prefix of each file, so binaries and
+ * other non-source files never reach the line readers, heuristics and secrets scan.
+ *
+ * - BINARY: known magic numbers (class files, zip/jar/docx, PDF, images, ELF, ...),
+ *   NUL bytes, or too many control characters. Skipped.
+ * - OVERSIZED: larger than the configured limit. Stats-only.
+ * - UNKNOWN_ENCODING: not valid UTF-8 and no BOM. Stats-only.
+ * - MINIFIED: very long lines of code (not string literals) in the prefix, or a
+ *   source-map comment at the end.
+ * - GENERATED: a generator marker in the comments before the first line of code,
+ *   or a Generated annotation.
+ * - SOURCE: everything else, analyzed normally.
+ *
+ * MINIFIED and GENERATED are only reported when generated-file detection is on;
+ * the caller decides whether such files are stats-only or skipped.
+ */
+public class ContentSniffer {
+
+    public enum Kind { SOURCE, BINARY, OVERSIZED, UNKNOWN_ENCODING, MINIFIED, GENERATED }
+
+    public static final int SNIFF_BYTES = 8 * 1024;
+    private static final int TAIL_BYTES = 512;     // where source-map comments live
+    private static final int HEADER_LINES = 50;    // generator markers must appear this early
+    private static final int MINIFIED_AVG_LINE = 200;
+    private static final int MINIFIED_MIN_BYTES = 2048;  // below this only the longest line and source maps count
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> PREFIX = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SNIFF_BYTES));
+    private static final ThreadLocal<ByteBuffer> TAIL = ThreadLocal.withInitial(() -> ByteBuffer.allocate(TAIL_BYTES));
+
+    // Matched inside the comment lines before the first line of code. Phrases a
+    // generator writes, not "auto-generated" alone: IDE templates put
+    // "TODO Auto-generated method stub" into hand-written files
+    private static final String[] GENERATED_MARKERS = {
+        "DO NOT EDIT", "Code generated by", "@generated", "<auto-generated", "Autogenerated by",
+        "automatically generated", "Automatically generated", "file was auto-generated", "file is auto-generated"
+    };
+    // Matched at the start of a line (annotations)
+    private static final String[] GENERATED_ANNOTATIONS = {
+        "@Generated", "@javax.annotation.Generated", "@javax.annotation.processing.Generated"
+    };
+    private static final byte[] SOURCE_MAP = "sourceMappingURL=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private static final byte[][] MAGIC = {
+        {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}, // Java class
+        {'P', 'K', 3, 4},                                     // zip, jar, docx, xlsx
+        {'%', 'P', 'D', 'F'},
+        {(byte) 0x89, 'P', 'N', 'G'},
+        {'G', 'I', 'F', '8'},
+        {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},              // JPEG
+        {0x7F, 'E', 'L', 'F'},
+        {'M', 'Z'},                                           // Windows executables
+        {0x1F, (byte) 0x8B},                                  // gzip
+        {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0},        // legacy Office
+    };
+
+    private final long maxBytes;
+    private final boolean detectGenerated;
+
+    public ContentSniffer() {
+        this(DEFAULT_MAX_BYTES, true);
+    }
+
+    public ContentSniffer(long maxBytes) {
+        this(maxBytes, true);
+    }
+
+    public ContentSniffer(long maxBytes, boolean detectGenerated) {
+        this.maxBytes = maxBytes;
+        this.detectGenerated = detectGenerated;
+    }
+
+    public long getMaxBytes() { return maxBytes; }
+    public boolean detectsGenerated() { return detectGenerated; }
+
+    /**
+     * Classify a file whose size is already known (from the directory walk).
+     */
+    public Kind sniff(Path path, long size) throws IOException {
+        if (size > maxBytes) return Kind.OVERSIZED;
+        ByteBuffer buf = PREFIX.get();
+        buf.clear();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buf.hasRemaining() && ch.read(buf) > 0) { }
+        }
+        buf.flip();
+        Kind kind = classify(buf, size <= SNIFF_BYTES);
+        if (kind != Kind.SOURCE || !detectGenerated) return kind;
+
+        ByteBuffer tail = null;
+        if (size > SNIFF_BYTES) {
+            tail = TAIL.get();
+            tail.clear();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                long pos = Math.max(SNIFF_BYTES, size - TAIL_BYTES);
+                while (tail.hasRemaining()) {
+                    int n = ch.read(tail, pos);
+                    if (n <= 0) break;
+                    pos += n;
+                }
+            }
+            tail.flip();
+        }
+        return classifyGenerated(buf, tail);
+    }
+
+    /**
+     * Classify in-memory content (archive and stream entries).
+     */
+    public Kind sniff(byte[] data) {
+        if (data.length > maxBytes) return Kind.OVERSIZED;
+        ByteBuffer buf = ByteBuffer.wrap(data, 0, Math.min(data.length, SNIFF_BYTES));
+        Kind kind = classify(buf, data.length <= SNIFF_BYTES);
+        if (kind != Kind.SOURCE || !detectGenerated) return kind;
+
+        ByteBuffer tail = null;
+        if (data.length > SNIFF_BYTES) {
+            int from = Math.max(SNIFF_BYTES, data.length - TAIL_BYTES);
+            tail = ByteBuffer.wrap(data, from, data.length - from);
+        }
+        return classifyGenerated(buf, tail);
+    }
+
+    /**
+     * complete: the buffer holds the whole file, so a truncated multi-byte
+     * sequence at the end is an error rather than an artifact of the prefix cut.
+     */
+    static Kind classify(ByteBuffer buf, boolean complete) {
+        int n = buf.remaining();
+        int base = buf.position();
+        if (n == 0) return Kind.SOURCE;
+
+        for (byte[] magic : MAGIC) {
+            if (n < magic.length) continue;
+            boolean match = true;
+            for (int i = 0; i < magic.length && match; i++) match = buf.get(base + i) == magic[i];
+            if (match) return Kind.BINARY;
+        }
+
+        int b0 = buf.get(base) & 0xff;
+        int b1 = n > 1 ? buf.get(base + 1) & 0xff : -1;
+        if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE)) return Kind.SOURCE; // UTF-16 with BOM
+
+        int control = 0;
+        int i = 0;
+        boolean validUtf8 = true;
+        while (i < n) {
+            int b = buf.get(base + i) & 0xff;
+            if (b == 0) return Kind.BINARY;
+            if (b < 0x80) {
+                if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B && b != '\b') control++;
+                i++;
+                continue;
+            }
+            // UTF-8 multi-byte sequence
+            int len = b >= 0xF0 && b <= 0xF4 ? 4 : b >= 0xE0 ? (b <= 0xEF ? 3 : 0) : b >= 0xC2 ? 2 : 0;
+            if (len == 0) { validUtf8 = false; i++; continue; }
+            if (i + len > n) {
+                if (complete) validUtf8 = false;
+                break; // sequence cut by the prefix limit
+            }
+            for (int k = 1; k < len; k++) {
+                if ((buf.get(base + i + k) & 0xC0) != 0x80) { validUtf8 = false; break; }
+            }
+            i += len;
+        }
+        if (control * 10 > n) return Kind.BINARY;
+        return validUtf8 ? Kind.SOURCE : Kind.UNKNOWN_ENCODING;
+    }
+
+    /**
+     * Minified or generated content, judged from the prefix (line lengths, header
+     * markers) and the tail (source-map comment; null when the prefix is the whole file).
+     */
+    static Kind classifyGenerated(ByteBuffer buf, ByteBuffer tail) {
+        int base = buf.position();
+        int n = buf.remaining();
+
+        // Line lengths leave out string literals: a resource bundle's long
+        // message strings are written by hand, minified code is not
+        int lines = 0;
+        int longest = 0;
+        int codeBytes = 0;
+        int lineCode = 0;
+        int quote = 0;
+        int lineStart = 0;
+        boolean header = true;      // no line of code yet
+        boolean blockComment = false;
+        for (int i = 0; i <= n; i++) {
+            if (i < n) {
+                byte b = buf.get(base + i);
+                if (b != '\n') {
+                    if (quote != 0) {
+                        if (b == '\\' && i + 1 < n && buf.get(base + i + 1) != '\n') i++;
+                        else if (b == quote) quote = 0;
+                    } else if (b == '"' || b == '\'' || b == '`') {
+                        quote = b;
+                    } else if (b != '\r') {
+                        lineCode++;
+                    }
+                    continue;
+                }
+            }
+            int len = i - lineStart;
+            if (len > 0 && buf.get(base + i - 1) == '\r') len--;
+            if (i < n || len > 0) lines++;
+            if (lineCode > longest) longest = lineCode;
+            codeBytes += lineCode;
+            if (lines <= HEADER_LINES) {
+                int s = base + lineStart;
+                int e = s + len;
+                while (s < e && (buf.get(s) == ' ' || buf.get(s) == '\t')) s++;
+                if (isGeneratedAnnotation(buf, s, e)) return Kind.GENERATED;
+                if (header && s < e) {
+                    boolean comment = blockComment || isCommentStart(buf, s, e);
+                    if (!comment) {
+                        header = false;
+                    } else {
+                        if (hasGeneratedMarker(buf, s, e)) return Kind.GENERATED;
+                        if (regionStartsWith(buf, s, e, "/*") || regionStartsWith(buf, s, e, "<!--")) blockComment = true;
+                        if (blockComment && (contains(buf, s + 2, e, "*/") || contains(buf, s, e, "-->"))) blockComment = false;
+                    }
+                }
+            }
+            lineCode = 0;
+            quote = 0;
+            lineStart = i + 1;
+        }
+        // The average only says something over a few KB: a small config file
+        // on one line is not minified
+        if (longest >= SNIFF_BYTES / 2) return Kind.MINIFIED;
+        if (n >= MINIFIED_MIN_BYTES && lines > 0 && codeBytes / lines > MINIFIED_AVG_LINE) return Kind.MINIFIED;
+
+        ByteBuffer end = tail != null ? tail : buf;
+        if (indexOf(end, SOURCE_MAP) >= 0) return Kind.MINIFIED;
+        return Kind.SOURCE;
+    }
+
+    /** The trimmed line [s, e) starts with a Generated annotation. */
+    private static boolean isGeneratedAnnotation(ByteBuffer buf, int s, int e) {
+        for (String a : GENERATED_ANNOTATIONS) {
+            // the whole name: not @GeneratedValue
+            if (regionStartsWith(buf, s, e, a) && (s + a.length() == e || !isIdentifierPart(buf.get(s + a.length())))) return true;
+        }
+        return false;
+    }
+
+    /** Comment lines and what else may come before the code (#!, <?xml). */
+    private static boolean isCommentStart(ByteBuffer buf, int s, int e) {
+        return regionStartsWith(buf, s, e, "//") || regionStartsWith(buf, s, e, "/*")
+            || regionStartsWith(buf, s, e, "*") || regionStartsWith(buf, s, e, "#")
+            || regionStartsWith(buf, s, e, "<!--") || regionStartsWith(buf, s, e, "<?")
+            || regionStartsWith(buf, s, e, "--");
+    }
+
+    private static boolean hasGeneratedMarker(ByteBuffer buf, int s, int e) {
+        for (String m : GENERATED_MARKERS) {
+            if (contains(buf, s, e, m)) return true;
+        }
+        return false;
+    }
+
+    private static boolean contains(ByteBuffer buf, int s, int e, String str) {
+        for (int i = s; i + str.length() <= e; i++) {
+            if (regionStartsWith(buf, i, e, str)) return true;
+        }
+        return false;
+    }
+
+    /** Non-ASCII bytes count as identifier parts (UTF-8 letters). */
+    private static boolean isIdentifierPart(byte b) {
+        return b < 0 || Character.isJavaIdentifierPart((char) b);
+    }
+
+    private static boolean regionStartsWith(ByteBuffer buf, int s, int e, String str) {
+        if (e - s < str.length()) return false;
+        for (int k = 0; k < str.length(); k++) {
+            if (buf.get(s + k) != str.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte[] needle) {
+        int base = buf.position();
+        int max = buf.limit() - needle.length;
+        outer:
+        for (int i = base; i <= max; i++) {
+            for (int k = 0; k < needle.length; k++) {
+                if (buf.get(i + k) != needle[k]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Cheap line count for the stats-only path: counts terminators like readLine.
+     */
+    public static int countLines(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return countLines(ch);
+        }
+    }
+
+    /**
+     * Same count from any channel (archive entries); the channel is not closed.
+     */
+    public static int countLines(ReadableByteChannel ch) throws IOException {
+        int lines = 0;
+        boolean pendingCr = false;
+        boolean midLine = false;
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        while (ch.read(buf) > 0) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == '\n') {
+                    if (!pendingCr) lines++;
+                    pendingCr = false;
+                    midLine = false;
+                } else if (b == '\r') {
+                    lines++;
+                    pendingCr = true;
+                    midLine = false;
+                } else {
+                    pendingCr = false;
+                    midLine = true;
+                }
+            }
+            buf.clear();
+        }
+        return midLine ? lines + 1 : lines;
+    }
+}
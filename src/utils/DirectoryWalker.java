@@ -0,0 +1,506 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Pruning directory walker built on Files.walkFileTree.
+ *
+ * Exclude prefixes, glob excludes and the extension filter are applied while
+ * descending: a directory that is excluded is never listed, and files are
+ * handed to the sink as soon as they are accepted instead of being collected
+ * into a list first. Ignore files are compiled per directory (see IgnoreContext)
+ * and evaluated for each entry with a single NFA step. In parallel mode every
+ * directory is listed by its own ForkJoin task, so the sink must be thread-safe.
+ *
+ * Symbolic links are followed after the real tree has been walked, so a file
+ * is always reported under its real path when it has one. Directory file keys
+ * are tracked to stop cycles, and a physical file (same file key) reached
+ * through several paths is emitted once; the other paths are kept as aliases.
+ */
+public class DirectoryWalker {
+
+    private final List<String> excludePrefixes;   // lower-cased absolute paths
+    private final List<PathMatcher> fileGlobs;    // matched against files
+    private final List<PathMatcher> subtreeGlobs; // "x/**" globs, matched against directories
+    private final String[] extensions;            // lower-cased, leading dot; empty = all
+    private final boolean parallel;
+    private boolean useGitignore;
+    private boolean includeArchives;
+    private final Map<Path, List<Path>> aliases = new ConcurrentHashMap<>();
+    private final Map<Path, List<Path>> dirAliases = new ConcurrentHashMap<>();
+
+    public DirectoryWalker(List<String> excludes, List<String> extensions, List<String> globExcludes, boolean parallel) {
+        this.parallel = parallel;
+
+        // Normalize excludes once (the old filter canonicalized and lowercased per file, per exclude)
+        this.excludePrefixes = new ArrayList<>();
+        if (excludes != null) {
+            for (String e : excludes) {
+                if (e == null || e.isEmpty()) continue;
+                String p = e.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+                try {
+                    p = new File(p).getCanonicalPath();
+                } catch (IOException ioe) {
+                    // fallback to raw
+                }
+                excludePrefixes.add(p.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        // Normalize extensions (lowercase, ensure leading dot)
+        List<String> normExt = new ArrayList<>();
+        if (extensions != null) {
+            for (String ex : extensions) {
+                if (ex == null || ex.trim().isEmpty()) continue;
+                String e = ex.trim().toLowerCase(Locale.ROOT);
+                if (!e.startsWith(".")) e = "." + e;
+                normExt.add(e);
+            }
+        }
+        this.extensions = normExt.toArray(new String[0]);
+
+        // Globs ending in "/**" exclude a whole subtree, so they can prune directories
+        this.fileGlobs = new ArrayList<>();
+        this.subtreeGlobs = new ArrayList<>();
+        if (globExcludes != null) {
+            for (String g : globExcludes) {
+                if (g == null || g.trim().isEmpty()) continue;
+                String glob = g.trim();
+                try {
+                    fileGlobs.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+                    if (glob.endsWith("/**") && glob.length() > 3) {
+                        subtreeGlobs.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(0, glob.length() - 3)));
+                    }
+                } catch (Exception ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Also honor .gitignore files (and .git/info/exclude) and skip .git directories.
+     * .analyzerignore files are always honored.
+     */
+    public void setUseGitignore(boolean useGitignore) {
+        this.useGitignore = useGitignore;
+    }
+
+    /**
+     * Also accept .zip/.jar files regardless of the extension filter, so their
+     * entries can be scanned (the filter then applies to the entries instead).
+     */
+    public void setIncludeArchives(boolean includeArchives) {
+        this.includeArchives = includeArchives;
+    }
+
+    /**
+     * Walk the directory and pass every accepted file to the sink.
+     * Returns when the whole tree has been visited.
+     */
+    public void walk(File root, Consumer<FileEntry> sink) {
+        aliases.clear();
+        dirAliases.clear();
+        Path start = root.toPath();
+        String absRoot;
+        try {
+            absRoot = start.toRealPath().toString();
+        } catch (IOException e) {
+            absRoot = start.toAbsolutePath().normalize().toString();
+        }
+
+        if (!acceptsDirectory(start, absRoot)) return;
+
+        WalkState state = new WalkState(sink);
+        try {
+            state.visitDirectory(start, Files.readAttributes(start, BasicFileAttributes.class), absRoot);
+        } catch (IOException e) {
+            // unreadable root, the listing below fails the same way
+        }
+        IgnoreContext ignore = IgnoreContext.forScanRoot(start, useGitignore);
+        ForkJoinPool pool = parallel ? new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors())) : null;
+        try {
+            run(pool, new DirTask(start, absRoot, state, ignore, true));
+
+            // Links, in path order so the outcome does not depend on thread timing.
+            // Following a linked directory can find more links, hence the loop.
+            while (!state.links.isEmpty()) {
+                List<Link> batch = new ArrayList<>(state.links);
+                state.links.clear();
+                batch.sort(Comparator.comparing(l -> l.abs));
+                for (Link link : batch) {
+                    if (link.attrs.isDirectory()) {
+                        if (state.visitDirectory(link.path, link.attrs, realPathOf(link.path))) {
+                            run(pool, new DirTask(link.path, link.abs, state, link.ignore, false));
+                        }
+                    } else {
+                        state.emit(link.path, link.attrs);
+                    }
+                }
+            }
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    private static void run(ForkJoinPool pool, DirTask task) {
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private static String realPathOf(Path p) {
+        try {
+            return p.toRealPath().toString();
+        } catch (IOException e) {
+            return p.toAbsolutePath().normalize().toString();
+        }
+    }
+
+    /**
+     * Paths that reached an already-reported file during the last walk, keyed by
+     * the path it was reported under.
+     */
+    public Map<Path, List<Path>> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Linked directories that were not walked because their target already was,
+     * keyed by the path the target was walked under. Every file below the key
+     * is also reachable below each alias.
+     */
+    public Map<Path, List<Path>> getDirectoryAliases() {
+        return dirAliases;
+    }
+
+    /**
+     * Enumerate tracked files from the git index instead of listing directories.
+     * Untracked files (build output, node_modules, ...) are never visited, and no directory
+     * is listed; each tracked file is stat'ed for its working-tree size and mtime, since the
+     * index only knows those of the staged content. Tracked files deleted from the working
+     * tree are left out. .analyzerignore files are honored as in walk(); .gitignore is not,
+     * since git already applied it when the files were added. Returns false if root is not
+     * inside a readable git checkout, in which case nothing was emitted and the caller
+     * should walk().
+     */
+    public boolean walkGitIndex(File root, Consumer<FileEntry> sink) {
+        File gitRoot = ChurnAnalyzer.findGitRoot(root);
+        if (gitRoot == null) return false;
+
+        List<GitIndexReader.Entry> entries;
+        Path realRoot;
+        Path realGitRoot;
+        try {
+            entries = GitIndexReader.read(gitRoot);
+            realRoot = root.toPath().toRealPath();
+            realGitRoot = gitRoot.toPath().toRealPath();
+        } catch (IOException e) {
+            return false;
+        }
+
+        // Only entries under root, relative to the git root
+        String prefix = realGitRoot.relativize(realRoot).toString().replace(File.separatorChar, '/');
+        if (!prefix.isEmpty()) prefix += "/";
+        Path start = root.toPath();
+        String absRoot = realRoot.toString();
+        if (!acceptsDirectory(start, absRoot)) return true;
+
+        // Contexts of the directories seen so far, keyed by path relative to root;
+        // null marks an ignored directory
+        Map<String, IgnoreContext> dirs = new HashMap<>();
+        dirs.put("", IgnoreContext.forScanRoot(start, false));
+
+        for (GitIndexReader.Entry e : entries) {
+            String rel = e.getPath();
+            if (!rel.startsWith(prefix)) continue;
+            rel = rel.substring(prefix.length());
+            int slash = rel.lastIndexOf('/');
+            IgnoreContext ctx = indexContext(dirs, start, slash < 0 ? "" : rel.substring(0, slash));
+            if (ctx == null || ctx.isIgnored(rel.substring(slash + 1), false)) continue;
+            String nativePath = File.separatorChar == '/' ? rel : rel.replace('/', File.separatorChar);
+            Path p = start.resolve(nativePath);
+            if (!acceptsFile(p, absRoot + File.separator + nativePath)) continue;
+            // The index has the size and mtime of the staged content; edits since
+            // git add only show on disk
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                continue;   // deleted in the working tree
+            }
+            if (!attrs.isRegularFile()) continue;
+            sink.accept(FileEntry.of(p, attrs));
+        }
+        return true;
+    }
+
+    /**
+     * Ignore context of directory relDir (relative to start, '/'-separated), stepping
+     * through its segments from the nearest known ancestor. Null if it or an ancestor
+     * is ignored.
+     */
+    private IgnoreContext indexContext(Map<String, IgnoreContext> dirs, Path start, String relDir) {
+        if (dirs.containsKey(relDir)) return dirs.get(relDir);
+        int slash = relDir.lastIndexOf('/');
+        IgnoreContext parent = indexContext(dirs, start, slash < 0 ? "" : relDir.substring(0, slash));
+        IgnoreContext ctx = null;
+        if (parent != null) {
+            Path dir = start.resolve(File.separatorChar == '/' ? relDir : relDir.replace('/', File.separatorChar));
+            if (accepts(parent, dir, true)) ctx = enter(parent, dir);
+        }
+        dirs.put(relDir, ctx);
+        return ctx;
+    }
+
+    /**
+     * Convenience: collect all accepted files into a list.
+     */
+    public List<FileEntry> collect(File root) {
+        List<FileEntry> out = Collections.synchronizedList(new ArrayList<>());
+        walk(root, out::add);
+        return out;
+    }
+
+    /**
+     * Ignore context of a scan root, for callers that check single paths
+     * (watch mode) instead of walking.
+     */
+    public IgnoreContext rootContext(File root) {
+        return IgnoreContext.forScanRoot(root.toPath(), useGitignore);
+    }
+
+    /**
+     * Context of sub-directory dir of the directory that parent belongs to,
+     * including dir's own ignore files.
+     */
+    public IgnoreContext enter(IgnoreContext parent, Path dir) {
+        return parent.descend(dir.getFileName().toString()).withRulesFrom(dir, null);
+    }
+
+    /**
+     * The same decision walk() makes for an entry of the directory ctx belongs to.
+     */
+    public boolean accepts(IgnoreContext ctx, Path p, boolean isDir) {
+        String name = p.getFileName().toString();
+        String abs = p.toAbsolutePath().normalize().toString();
+        if (isDir) {
+            if (ctx.usesGitignore() && ".git".equals(name)) return false;
+            return !ctx.isIgnored(name, true) && acceptsDirectory(p, abs);
+        }
+        return !ctx.isIgnored(name, false) && acceptsFile(p, abs);
+    }
+
+    boolean acceptsDirectory(Path dir, String absPath) {
+        if (isExcludedPrefix(absPath)) return false;
+        for (PathMatcher pm : subtreeGlobs) {
+            if (pm.matches(dir)) return false;
+        }
+        return true;
+    }
+
+    boolean acceptsFile(Path file, String absPath) {
+        if (!matchesName(file.getFileName().toString())) return false;
+        if (isExcludedPrefix(absPath)) return false;
+        for (PathMatcher pm : fileGlobs) {
+            if (pm.matches(file)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Extension check without allocating a lower-cased copy of the name.
+     */
+    public boolean matchesExtension(String name) {
+        if (extensions.length == 0) return true;
+        for (String e : extensions) {
+            int off = name.length() - e.length();
+            if (off >= 0 && name.regionMatches(true, off, e, 0, e.length())) return true;
+        }
+        return false;
+    }
+
+    private boolean matchesName(String name) {
+        return matchesExtension(name) || isArchive(name);
+    }
+
+    /**
+     * True if name is a .zip/.jar that this walker accepts as an archive to open.
+     */
+    public boolean isArchive(String name) {
+        return includeArchives && ArchiveScanner.isArchiveName(name);
+    }
+
+    private boolean isExcludedPrefix(String absPath) {
+        if (excludePrefixes.isEmpty()) return false;
+        String lower = absPath.toLowerCase(Locale.ROOT);
+        for (String ex : excludePrefixes) {
+            if (lower.startsWith(ex)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Per-walk bookkeeping shared by all tasks.
+     */
+    private class WalkState {
+        final Consumer<FileEntry> sink;
+        final Map<Object, Path> visitedDirs = new ConcurrentHashMap<>();
+        final Map<Object, Path> seenFiles = new ConcurrentHashMap<>();
+        final Queue<Link> links = new ConcurrentLinkedQueue<>();
+
+        WalkState(Consumer<FileEntry> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * False if this directory was already walked (through another path or a
+         * cycle); dir is then recorded as an alias. Falls back to the real path on
+         * file systems without file keys.
+         */
+        boolean visitDirectory(Path dir, BasicFileAttributes attrs, String realPath) {
+            Object key = attrs.fileKey();
+            Path first = visitedDirs.putIfAbsent(key != null ? key : realPath, dir);
+            if (first == null) return true;
+            dirAliases.computeIfAbsent(first, k -> Collections.synchronizedList(new ArrayList<>())).add(dir);
+            return false;
+        }
+
+        /**
+         * Emit the file unless the same physical file was already emitted,
+         * in which case the path is recorded as an alias of the first one.
+         */
+        void emit(Path p, BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            if (key != null) {
+                Path first = seenFiles.putIfAbsent(key, p);
+                if (first != null) {
+                    aliases.computeIfAbsent(first, k -> Collections.synchronizedList(new ArrayList<>())).add(p);
+                    return;
+                }
+            }
+            sink.accept(FileEntry.of(p, attrs));
+        }
+    }
+
+    /**
+     * A symbolic link found while listing, with its target's attributes.
+     */
+    private static class Link {
+        final Path path;
+        final String abs;
+        final BasicFileAttributes attrs;
+        final IgnoreContext ignore; // context of the link as a directory
+
+        Link(Path path, String abs, BasicFileAttributes attrs, IgnoreContext ignore) {
+            this.path = path;
+            this.abs = abs;
+            this.attrs = attrs;
+            this.ignore = ignore;
+        }
+    }
+
+    /**
+     * Lists one directory. Attributes come from the walkFileTree callback, so each
+     * entry is stat'ed exactly once; sub-directories become new tasks. The listing
+     * is buffered so ignore files in this directory apply to all of its entries.
+     * Links are queued on the walk state instead of being followed here.
+     */
+    private class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String absDir;
+        private final WalkState state;
+        private final IgnoreContext ignore;
+        private final boolean ignoreLoaded; // this directory's ignore files are already in 'ignore'
+
+        DirTask(Path dir, String absDir, WalkState state, IgnoreContext ignore, boolean ignoreLoaded) {
+            this.dir = dir;
+            this.absDir = absDir;
+            this.state = state;
+            this.ignore = ignore;
+            this.ignoreLoaded = ignoreLoaded;
+        }
+
+        @Override
+        protected void compute() {
+            final List<Path> paths = new ArrayList<>();
+            final List<BasicFileAttributes> attributes = new ArrayList<>();
+            final List<Boolean> linked = new ArrayList<>();
+            final boolean[] hasIgnoreFile = {false};
+            try {
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+                        boolean link = attrs.isSymbolicLink();
+                        if (link) {
+                            try {
+                                attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                            } catch (IOException e) {
+                                return FileVisitResult.CONTINUE; // dangling link
+                            }
+                        }
+                        if (!hasIgnoreFile[0] && ignore.isIgnoreFileName(p.getFileName().toString())) hasIgnoreFile[0] = true;
+                        paths.add(p);
+                        attributes.add(attrs);
+                        linked.add(link);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path p, IOException exc) {
+                        return FileVisitResult.CONTINUE; // unreadable entry, skip
+                    }
+                });
+            } catch (IOException e) {
+                return;
+            }
+
+            IgnoreContext ctx = hasIgnoreFile[0] && !ignoreLoaded ? ignore.withRulesFrom(dir, null) : ignore;
+            final List<DirTask> subtasks = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                Path p = paths.get(i);
+                BasicFileAttributes attrs = attributes.get(i);
+                boolean link = linked.get(i);
+                String name = p.getFileName().toString();
+                String abs = absDir + File.separator + name;
+                if (attrs.isDirectory()) {
+                    if (ctx.usesGitignore() && ".git".equals(name)) continue;
+                    if (ctx.isIgnored(name, true)) continue;
+                    if (!acceptsDirectory(p, abs)) continue;
+                    if (link) {
+                        state.links.add(new Link(p, abs, attrs, ctx.descend(name)));
+                    } else if (state.visitDirectory(p, attrs, abs)) {
+                        subtasks.add(new DirTask(p, abs, state, ctx.descend(name), false));
+                    }
+                } else if (attrs.isRegularFile()) {
+                    if (!matchesName(name)) continue;
+                    if (ctx.isIgnored(name, false)) continue;
+                    if (!acceptsFile(p, abs)) continue;
+                    if (link) {
+                        state.links.add(new Link(p, abs, attrs, null));
+                    } else {
+                        state.emit(p, attrs);
+                    }
+                }
+            }
+
+            if (!parallel) {
+                for (DirTask t : subtasks) t.compute();
+            } else {
+                invokeAll(subtasks);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package utils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts repeated blocks of BLOCK_LINES consecutive lines across files.
+ *
+ * Blocks are identified by a hash built from per-line hashes, so a file costs one
+ * pass over its characters and no strings; the text of a block is only kept once
+ * it has been seen twice. add() is safe to call from the analysis workers, which
+ * lets a directory scan feed it the sources it has already read.
+ */
+public class DuplicateFinder {
+
+    public static final int BLOCK_LINES = 3;
+
+    /**
+     * A block seen more than once and how often.
+     */
+    public static class Block {
+        private final String text;
+        private final int count;
+
+        public Block(String text, int count) {
+            this.text = text;
+            this.count = count;
+        }
+
+        public String getText() { return text; }
+        public int getCount() { return count; }
+    }
+
+    private static class Counter {
+        final AtomicInteger count = new AtomicInteger();
+        volatile String text;
+    }
+
+    private final Map<Long, Counter> blocks = new ConcurrentHashMap<>();
+
+    public void add(SourceBuffer src) {
+        int n = src.lineCount();
+        if (n < BLOCK_LINES) return;
+        long[] lineHashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            long h = 0xcbf29ce484222325L; // FNV-1a 64
+            for (int c = src.lineStart(i), end = src.lineEnd(i); c < end; c++) {
+                h ^= src.charAt(c);
+                h *= 0x100000001b3L;
+            }
+            lineHashes[i] = h;
+        }
+        for (int i = 0; i + BLOCK_LINES <= n; i++) {
+            long h = 0;
+            for (int k = 0; k < BLOCK_LINES; k++) h = mix(h ^ lineHashes[i + k]);
+            Counter c = blocks.computeIfAbsent(h, key -> new Counter());
+            if (c.count.incrementAndGet() == 2) c.text = text(src, i);
+        }
+    }
+
+    /**
+     * The n most repeated blocks, most frequent first.
+     */
+    public List<Block> top(int n) {
+        List<Block> out = new ArrayList<>();
+        for (Counter c : blocks.values()) {
+            int count = c.count.get();
+            if (count > 1 && c.text != null) out.add(new Block(c.text, count));
+        }
+        out.sort((a, b) -> Integer.compare(b.count, a.count));
+        return out.size() > n ? new ArrayList<>(out.subList(0, n)) : out;
+    }
+
+    private static String text(SourceBuffer src, int first) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < BLOCK_LINES; k++) {
+            if (k > 0) sb.append('\n');
+            sb.append(src.line(first + k));
+        }
+        return sb.toString();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
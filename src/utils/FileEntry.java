@@ -0,0 +1,37 @@
+package utils;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file accepted by directory discovery, together with the attributes that
+ * were read for it while walking (so later stages do not stat it again).
+ */
+public class FileEntry {
+
+    private final Path path;
+    private final long size;
+    private final long lastModified; // epoch millis
+    private final Object fileKey;    // may be null on file systems without inode keys
+
+    public FileEntry(Path path, long size, long lastModified, Object fileKey) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    public static FileEntry of(Path path, BasicFileAttributes attrs) {
+        return new FileEntry(path, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey());
+    }
+
+    public Path getPath() { return path; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    public Object getFileKey() { return fileKey; }
+
+    public java.io.File toFile() { return path.toFile(); }
+
+    @Override
+    public String toString() { return path.toString(); }
+}
@@ -0,0 +1,317 @@
+package utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import model.JavaCodeMetrics;
+
+/**
+ * Merkle tree over a scanned directory: every file node is fingerprinted from
+ * its name, size and mtime, and every directory from its children's names and
+ * fingerprints. Nodes carry the analysis results of their files, so the tree
+ * of the previous run doubles as a result cache.
+ *
+ * adopt() compares a freshly walked tree against the previous one top-down:
+ * a directory with an unchanged fingerprint is replaced by the old subtree (and
+ * its results) in a single comparison, and only files whose size or mtime
+ * changed are returned for analysis.
+ */
+public class FingerprintTree {
+
+    private static final int MAGIC = 0x43415452; // "CATR"
+    private static final int FORMAT = 1;
+
+    public static class FileNode {
+        final String name;
+        final long size;
+        final long lastModified;
+        final long fingerprint;
+        private List<JavaCodeMetrics> results = Collections.emptyList();
+        private Map<String, Integer> skips = Collections.emptyMap();
+        private boolean analyzed;
+
+        FileNode(String name, long size, long lastModified) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = mix(mix(hash(name) ^ 0x66L) ^ size) ^ lastModified;
+        }
+
+        public long getSize() { return size; }
+
+        /** Results of the file (several for an archive, none for a skipped file). */
+        public List<JavaCodeMetrics> getResults() { return results; }
+        /** ScanStats reasons recorded while analyzing the file, with counts. */
+        public Map<String, Integer> getSkips() { return skips; }
+
+        public void setResults(List<JavaCodeMetrics> results, Map<String, Integer> skips) {
+            this.results = results;
+            this.skips = skips;
+            this.analyzed = true;
+        }
+    }
+
+    public static class DirNode {
+        final String name;
+        final TreeMap<String, DirNode> dirs = new TreeMap<>();
+        final TreeMap<String, FileNode> files = new TreeMap<>();
+        long fingerprint;
+
+        DirNode(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A file that has to be analyzed, with its path in the scanned tree.
+     */
+    public static class Change {
+        public final Path path;
+        public final FileNode node;
+
+        Change(Path path, FileNode node) {
+            this.path = path;
+            this.node = node;
+        }
+    }
+
+    private DirNode root;
+    private int reusedDirs;
+    private int reusedFiles;
+    private final List<Change> reused = new ArrayList<>();
+
+    private FingerprintTree(DirNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Tree of the files found by a walk of rootPath (fingerprints computed).
+     * The entries' size and mtime must be those on disk: with --git-index the
+     * walk stats each tracked file rather than trusting the index, or an edit
+     * not yet staged would keep its old fingerprint.
+     */
+    public static FingerprintTree build(Path rootPath, Collection<FileEntry> entries) {
+        DirNode root = new DirNode("");
+        for (FileEntry e : entries) {
+            Path rel = rootPath.relativize(e.getPath());
+            DirNode d = root;
+            int n = rel.getNameCount();
+            for (int i = 0; i < n - 1; i++) {
+                d = d.dirs.computeIfAbsent(rel.getName(i).toString(), DirNode::new);
+            }
+            String name = rel.getName(n - 1).toString();
+            d.files.put(name, new FileNode(name, e.getSize(), e.getLastModified()));
+        }
+        fingerprint(root);
+        return new FingerprintTree(root);
+    }
+
+    private static long fingerprint(DirNode d) {
+        long h = hash(d.name);
+        for (FileNode f : d.files.values()) h = mix(h ^ f.fingerprint);
+        for (DirNode c : d.dirs.values()) h = mix(h ^ fingerprint(c));
+        d.fingerprint = h;
+        return h;
+    }
+
+    /**
+     * Take over the results of every unchanged part of previous (may be null) and
+     * return the files that still need analysis, in path order.
+     */
+    public List<Change> adopt(FingerprintTree previous, Path rootPath) {
+        reusedDirs = 0;
+        reusedFiles = 0;
+        reused.clear();
+        List<Change> changes = new ArrayList<>();
+        if (previous != null && previous.root.fingerprint == root.fingerprint) {
+            root = previous.root;
+            reusedDirs++;
+            reuse(root, rootPath);
+            return changes;
+        }
+        adopt(root, previous != null ? previous.root : null, rootPath, changes);
+        return changes;
+    }
+
+    private void adopt(DirNode now, DirNode before, Path dir, List<Change> changes) {
+        for (FileNode f : now.files.values()) {
+            FileNode old = before != null ? before.files.get(f.name) : null;
+            if (old != null && old.analyzed && old.fingerprint == f.fingerprint) {
+                f.setResults(old.results, old.skips);
+                reused.add(new Change(dir.resolve(f.name), f));
+                reusedFiles++;
+            } else {
+                changes.add(new Change(dir.resolve(f.name), f));
+            }
+        }
+        for (Map.Entry<String, DirNode> e : now.dirs.entrySet()) {
+            DirNode child = e.getValue();
+            DirNode old = before != null ? before.dirs.get(e.getKey()) : null;
+            if (old != null && old.fingerprint == child.fingerprint) {
+                e.setValue(old); // whole subtree unchanged
+                reusedDirs++;
+                reuse(old, dir.resolve(e.getKey()));
+            } else {
+                adopt(child, old, dir.resolve(e.getKey()), changes);
+            }
+        }
+    }
+
+    private void reuse(DirNode d, Path dir) {
+        for (FileNode f : d.files.values()) {
+            reused.add(new Change(dir.resolve(f.name), f));
+            reusedFiles++;
+        }
+        for (Map.Entry<String, DirNode> e : d.dirs.entrySet()) reuse(e.getValue(), dir.resolve(e.getKey()));
+    }
+
+    /** Unchanged directories taken over by the last adopt(). */
+    public int getReusedDirs() { return reusedDirs; }
+    /** Files whose results were taken over by the last adopt(). */
+    public int getReusedFiles() { return reusedFiles; }
+
+    /**
+     * The files counted by getReusedFiles(), with their paths. Their results carry
+     * the churn of the run that analyzed them; new commits do not change a file's
+     * fingerprint, so the caller attaches fresh churn.
+     */
+    public List<Change> getReused() { return reused; }
+
+    /**
+     * All results in path order.
+     */
+    public List<JavaCodeMetrics> results() {
+        List<JavaCodeMetrics> out = new ArrayList<>();
+        collect(root, out);
+        return out;
+    }
+
+    private static void collect(DirNode d, List<JavaCodeMetrics> out) {
+        for (FileNode f : d.files.values()) out.addAll(f.results);
+        for (DirNode c : d.dirs.values()) collect(c, out);
+    }
+
+    /**
+     * Skip counts of every file, for replaying into ScanStats.
+     */
+    public List<Map<String, Integer>> skips() {
+        List<Map<String, Integer>> out = new ArrayList<>();
+        collectSkips(root, out);
+        return out;
+    }
+
+    private static void collectSkips(DirNode d, List<Map<String, Integer>> out) {
+        for (FileNode f : d.files.values()) {
+            if (!f.skips.isEmpty()) out.add(f.skips);
+        }
+        for (DirNode c : d.dirs.values()) collectSkips(c, out);
+    }
+
+    // ---------------------------------------------------------------- persistence
+
+    /**
+     * The tree saved for this configuration, or null if there is none (or it was
+     * written for another configuration or format).
+     */
+    public static FingerprintTree load(File file, String configKey) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readInt() != MetricsCodec.VERSION) return null;
+            if (!configKey.equals(MetricsCodec.readString(in))) return null;
+            return new FingerprintTree(readDir(in));
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable cache: start over
+        }
+    }
+
+    /**
+     * Written to a temporary file first, so an interrupted run never leaves a
+     * truncated tree behind.
+     */
+    public void save(File file, String configKey) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(MetricsCodec.VERSION);
+            MetricsCodec.writeString(out, configKey);
+            Set<DirNode> incomplete = Collections.newSetFromMap(new IdentityHashMap<>());
+            findIncomplete(root, incomplete);
+            writeDir(out, root, incomplete);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Directories containing a file that could not be analyzed (read error). They
+     * are saved with a fingerprint that never matches, and the file with an
+     * impossible mtime, so the next run analyzes it again.
+     */
+    private static boolean findIncomplete(DirNode d, Set<DirNode> incomplete) {
+        boolean complete = true;
+        for (FileNode f : d.files.values()) complete &= f.analyzed;
+        for (DirNode c : d.dirs.values()) complete &= findIncomplete(c, incomplete);
+        if (!complete) incomplete.add(d);
+        return complete;
+    }
+
+    private static void writeDir(DataOutputStream out, DirNode d, Set<DirNode> incomplete) throws IOException {
+        MetricsCodec.writeString(out, d.name);
+        out.writeLong(incomplete.contains(d) ? 0 : d.fingerprint);
+        out.writeInt(d.files.size());
+        for (FileNode f : d.files.values()) {
+            MetricsCodec.writeString(out, f.name);
+            out.writeLong(f.size);
+            out.writeLong(f.analyzed ? f.lastModified : -1);
+            out.writeInt(f.skips.size());
+            for (Map.Entry<String, Integer> e : f.skips.entrySet()) {
+                MetricsCodec.writeString(out, e.getKey());
+                out.writeInt(e.getValue());
+            }
+            out.writeInt(f.results.size());
+            for (JavaCodeMetrics m : f.results) MetricsCodec.write(out, m);
+        }
+        out.writeInt(d.dirs.size());
+        for (DirNode c : d.dirs.values()) writeDir(out, c, incomplete);
+    }
+
+    private static DirNode readDir(DataInputStream in) throws IOException {
+        DirNode d = new DirNode(MetricsCodec.readString(in));
+        d.fingerprint = in.readLong();
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            FileNode f = new FileNode(MetricsCodec.readString(in), in.readLong(), in.readLong());
+            Map<String, Integer> skips = new TreeMap<>();
+            for (int k = 0, s = in.readInt(); k < s; k++) skips.put(MetricsCodec.readString(in), in.readInt());
+            List<JavaCodeMetrics> results = new ArrayList<>();
+            for (int k = 0, r = in.readInt(); k < r; k++) results.add(MetricsCodec.read(in));
+            f.setResults(results, skips);
+            d.files.put(f.name, f);
+        }
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            DirNode c = readDir(in);
+            d.dirs.put(c.name, c);
+        }
+        return d;
+    }
+
+    // ---------------------------------------------------------------- hashing
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L; // FNV-1a 64
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
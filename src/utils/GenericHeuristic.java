@@ -0,0 +1,92 @@
+package utils;
+
+import model.JavaCodeMetrics;
+
+/**
+ * Generic heuristic: simple token-based counts (works for any plain-text file).
+ */
+class GenericHeuristic implements LanguageHeuristic {
+    private static final String[] METHOD_KEYWORDS = {"def ", "function ", "public ", "private ", "protected "};
+    private static final String[] CLASS_KEYWORDS = {"class ", "interface ", "struct "};
+
+    @Override
+    public void analyze(SourceBuffer src, JavaCodeMetrics metrics) {
+        MetricsPass.run(src, accumulator(metrics));
+    }
+
+    @Override
+    public MetricsPass.Accumulator accumulator(JavaCodeMetrics metrics) {
+        return new MetricsPass.Accumulator() {
+            int commentLines = 0;
+            int blankLines = 0;
+            int codeLines = 0;
+            int complexity = 1;
+            int methodCount = 0;
+            int classCount = 0;
+            int lineCount = 0;
+
+            @Override
+            public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo line) {
+                lineCount++;
+                if (line.kind == LineMemo.BLANK) {
+                    blankLines++;
+                } else if (line.kind == LineMemo.COMMENT) {
+                    commentLines++;
+                } else {
+                    codeLines++;
+                    complexity += line.branches;
+                }
+                // Best-effort method/class counts (very generic, comments included)
+                if (line.method) methodCount++;
+                if (line.type) classCount++;
+            }
+
+            @Override
+            public void finish() {
+                metrics.setTotalLines(lineCount);
+                metrics.setCodeLines(codeLines);
+                metrics.setCommentLines(commentLines);
+                metrics.setBlankLines(blankLines);
+                metrics.setCyclomaticComplexity(complexity);
+                metrics.setCommentRatio(lineCount == 0 ? 0.0 : commentLines * 100.0 / lineCount);
+                metrics.setMethodCount(methodCount);
+                metrics.setClassCount(classCount);
+            }
+        };
+    }
+
+    /**
+     * Complexity increments of a code line: if/elif, loops, switch, catch/except.
+     */
+    static int branches(SourceBuffer src, int s, int e) {
+        int n = 0;
+        if (src.contains(s, e, "if ") || src.contains(s, e, "if(") || src.contains(s, e, "elif ") || src.contains(s, e, "elif(")) n++;
+        if (src.contains(s, e, "for ") || src.contains(s, e, "for(") || src.contains(s, e, "foreach")) n++;
+        if (src.contains(s, e, "while ") || src.contains(s, e, "while(")) n++;
+        if (src.contains(s, e, "switch")) n++;
+        if (src.contains(s, e, "catch") || src.contains(s, e, "except")) n++;
+        return n;
+    }
+
+    static boolean looksLikeType(SourceBuffer src, int s, int e) {
+        for (String k : CLASS_KEYWORDS) {
+            if (src.contains(s, e, k)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Same as matching ".*(def |function |public |private |protected ).*\\(.*\\).*":
+     * a keyword, then a '(' somewhere after it, then a ')' after that.
+     */
+    static boolean looksLikeMethod(SourceBuffer src, int s, int e) {
+        int keywordEnd = -1;
+        for (String k : METHOD_KEYWORDS) {
+            int at = src.indexOf(k, s, e);
+            if (at >= 0 && (keywordEnd < 0 || at + k.length() < keywordEnd)) keywordEnd = at + k.length();
+        }
+        if (keywordEnd < 0) return false;
+        int open = src.indexOf('(', keywordEnd, e);
+        return open >= 0 && src.lastIndexOf(')', open + 1, e) >= 0;
+    }
+}
@@ -0,0 +1,159 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Reads the tracked file list straight from .git/index (pure Java, no git process).
+ * Supports index versions 2, 3 and 4 (path prefix compression).
+ * Reference: Documentation/gitformat-index.txt in the git sources.
+ */
+public class GitIndexReader {
+
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+
+    private static final int MODE_TYPE_MASK = 0170000;
+    private static final int MODE_REGULAR = 0100000;
+
+    /**
+     * One stage-0 regular file from the index. Size and mtime are the values git
+     * recorded at its last stat, so they are only as fresh as the index itself.
+     */
+    public static class Entry {
+        private final String path;        // relative to the work tree, '/' separated
+        private final long size;
+        private final long lastModified;  // epoch millis
+
+        Entry(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+    }
+
+    /**
+     * Locate the index file for a work tree. Handles ".git" being a directory or a
+     * "gitdir: ..." pointer file (worktrees, submodules). Returns null if none.
+     */
+    public static File findIndexFile(File workTree) {
+        File dotGit = new File(workTree, ".git");
+        if (dotGit.isDirectory()) {
+            File index = new File(dotGit, "index");
+            return index.isFile() ? index : null;
+        }
+        if (dotGit.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(dotGit))) {
+                String line = reader.readLine();
+                if (line != null && line.startsWith("gitdir:")) {
+                    File gitDir = new File(line.substring(7).trim());
+                    if (!gitDir.isAbsolute()) gitDir = new File(workTree, gitDir.getPath());
+                    File index = new File(gitDir, "index");
+                    return index.isFile() ? index : null;
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read all tracked regular files (stage 0) from the work tree's index.
+     */
+    public static List<Entry> read(File workTree) throws IOException {
+        File indexFile = findIndexFile(workTree);
+        if (indexFile == null) throw new FileNotFoundException("No git index under " + workTree);
+
+        try (FileChannel ch = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return parse(buf);
+        }
+    }
+
+    static List<Entry> parse(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 12 || buf.getInt() != SIGNATURE) {
+            throw new IOException("Not a git index file");
+        }
+        int version = buf.getInt();
+        if (version < 2 || version > 4) throw new IOException("Unsupported git index version " + version);
+        int count = buf.getInt();
+
+        List<Entry> entries = new ArrayList<>(count);
+        byte[] pathBuf = new byte[256];
+        int prevLen = 0; // v4: length of previous path kept in pathBuf
+
+        for (int i = 0; i < count; i++) {
+            int entryStart = buf.position();
+            buf.position(entryStart + 8);                     // ctime sec + nsec
+            long mtimeSec = buf.getInt() & 0xffffffffL;
+            long mtimeNsec = buf.getInt() & 0xffffffffL;
+            buf.position(buf.position() + 8);                 // dev, ino
+            int mode = buf.getInt();
+            buf.position(buf.position() + 8);                 // uid, gid
+            long size = buf.getInt() & 0xffffffffL;
+            buf.position(buf.position() + 20);                // object name (sha-1)
+            int flags = buf.getShort() & 0xffff;
+            if (version >= 3 && (flags & 0x4000) != 0) {
+                buf.getShort();                               // extended flags
+            }
+            int stage = (flags >> 12) & 0x3;
+
+            int pathLen;
+            if (version == 4) {
+                int strip = readOffsetVarint(buf);
+                int keep = Math.max(0, prevLen - strip);
+                int suffixStart = buf.position();
+                while (buf.get() != 0) { }
+                int suffixLen = buf.position() - 1 - suffixStart;
+                pathLen = keep + suffixLen;
+                if (pathLen > pathBuf.length) pathBuf = Arrays.copyOf(pathBuf, Math.max(pathLen, pathBuf.length * 2));
+                buf.position(suffixStart);
+                buf.get(pathBuf, keep, suffixLen);
+                buf.get();                                    // NUL
+                prevLen = pathLen;
+            } else {
+                int nameStart = buf.position();
+                int nameLen = flags & 0x0fff;
+                if (nameLen == 0x0fff) {
+                    while (buf.get() != 0) { }                // long name: scan for NUL
+                    nameLen = buf.position() - 1 - nameStart;
+                }
+                pathLen = nameLen;
+                if (pathLen > pathBuf.length) pathBuf = Arrays.copyOf(pathBuf, Math.max(pathLen, pathBuf.length * 2));
+                buf.position(nameStart);
+                buf.get(pathBuf, 0, pathLen);
+                // Entry is NUL padded to a multiple of 8 bytes (at least one NUL)
+                int entryLen = buf.position() - entryStart;
+                int padded = (entryLen + 8) & ~7;
+                buf.position(entryStart + padded);
+            }
+
+            if (stage != 0 || (mode & MODE_TYPE_MASK) != MODE_REGULAR) continue; // conflicts, links, submodules
+            String path = new String(pathBuf, 0, pathLen, StandardCharsets.UTF_8);
+            entries.add(new Entry(path, size, mtimeSec * 1000 + mtimeNsec / 1_000_000));
+        }
+        return entries;
+    }
+
+    /**
+     * git's offset varint: 7 bits per byte, high bit = continue, with +1 bias per byte.
+     */
+    private static int readOffsetVarint(ByteBuffer buf) {
+        int c = buf.get() & 0xff;
+        int val = c & 0x7f;
+        while ((c & 0x80) != 0) {
+            c = buf.get() & 0xff;
+            val = ((val + 1) << 7) | (c & 0x7f);
+        }
+        return val;
+    }
+}
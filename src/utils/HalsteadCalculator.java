@@ -1,16 +1,22 @@
 package utils;
 
 import model.AdvancedMetrics;
+import model.MethodTable;
 import java.util.*;
 
 /**
  * Computes Halstead complexity metrics by analyzing operators and operands in code.
  * Reference: Halstead, M. H. (1977). Elements of Software Science.
+ *
+ * Lines are scanned over char ranges of the SourceBuffer: a char-class table splits
+ * them into words and operator characters, a trie over OPERATORS matches the
+ * longest operator (up to ">>>") and recognizes keyword operators, and operands are
+ * counted in a RangeTable. No String is created per token.
  */
 public class HalsteadCalculator {
-    
+
     // Java/Python/JS operators
-    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList(
+    private static final String[] OPERATORS = {
         "+", "-", "*", "/", "%", "=", "==", "!=", "<", ">", "<=", ">=",
         "&&", "||", "!", "&", "|", "^", "~", "<<", ">>", ">>>",
         "++", "--", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=",
@@ -19,94 +25,216 @@ public class HalsteadCalculator {
         "return", "throw", "try", "catch", "finally", "new", "import", "class",
         "def", "lambda", "async", "await", "yield", "with", "as", "in", "is",
         "function", "var", "let", "const", "=>", "typeof", "instanceof"
-    ));
-    
+    };
+
+    // Char classes of ASCII chars; other chars are words unless Character.isWhitespace
+    private static final byte WORD = 0;
+    private static final byte SPACE = 1;
+    private static final byte OPERATOR = 2;
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    /** Longest-match operators and keyword operators. */
+    private static final CharTrie TRIE = new CharTrie(OPERATORS);
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) CHAR_CLASS[c] = SPACE;
+        }
+        for (char c : "+-*/%=!<>&|^~?:.,;()[]{}".toCharArray()) CHAR_CLASS[c] = OPERATOR;
+    }
+
+    /**
+     * Operator ids and operand ranges of one line, as kept by LineMemo.
+     */
+    static final class Tokens {
+        static final Tokens NONE = new Tokens(new byte[0], new int[0]);
+
+        /** Index into OPERATORS of each operator token, in order. */
+        final byte[] operators;
+        /** Per operand: offset from the line start, length and hash. */
+        final int[] operands;
+
+        Tokens(byte[] operators, int[] operands) {
+            this.operators = operators;
+            this.operands = operands;
+        }
+    }
+
+    // Per-thread scratch space for tokenize, so only the result arrays are allocated
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[][] {new int[64], new int[96]});
+
     /**
      * Analyzes code lines to compute Halstead metrics and populate AdvancedMetrics object.
      */
     public static void computeHalstead(List<String> lines, AdvancedMetrics metrics) {
-        Map<String, Integer> operatorCounts = new HashMap<>();
-        Map<String, Integer> operandCounts = new HashMap<>();
-        
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (trimmed.isEmpty() || trimmed.startsWith("//") || trimmed.startsWith("#")) continue;
-            
-            // Tokenize line (simple split by whitespace and symbols)
-            String[] tokens = tokenize(trimmed);
-            
-            for (String token : tokens) {
-                if (token.isEmpty()) continue;
-                
-                if (OPERATORS.contains(token)) {
-                    operatorCounts.put(token, operatorCounts.getOrDefault(token, 0) + 1);
-                } else if (isOperand(token)) {
-                    operandCounts.put(token, operandCounts.getOrDefault(token, 0) + 1);
-                }
-            }
-        }
-        
-        metrics.setTotalN1(operatorCounts.values().stream().mapToInt(Integer::intValue).sum());
-        metrics.setTotalN2(operandCounts.values().stream().mapToInt(Integer::intValue).sum());
-        metrics.setN1(operatorCounts.size());
-        metrics.setN2(operandCounts.size());
-        
-        metrics.computeHalstead();
+        computeHalstead(SourceBuffer.fromLines(lines), metrics);
     }
-    
+
+    /**
+     * Same as above, reading lines straight from the buffer.
+     */
+    public static void computeHalstead(SourceBuffer src, AdvancedMetrics metrics) {
+        MetricsPass.run(src, accumulator(metrics));
+    }
+
     /**
-     * Simple tokenizer - splits by whitespace and separates operators.
+     * Halstead counting as part of a MetricsPass; tokens come from the LineMemo
+     * classification of each line. Each line's tokens (the memo's shared Tokens)
+     * and operand entries are kept, so the volume of every method in the file's
+     * MethodTable is computed at the end over its lines.
      */
-    private static String[] tokenize(String line) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder token = new StringBuilder();
-        
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            
-            if (Character.isWhitespace(c)) {
-                if (token.length() > 0) {
-                    tokens.add(token.toString());
-                    token.setLength(0);
+    public static MetricsPass.Accumulator accumulator(AdvancedMetrics metrics) {
+        return new MetricsPass.Accumulator() {
+            final int[] operatorCounts = new int[OPERATORS.length];
+            final RangeTable operands = new RangeTable();
+            int totalOperators;
+            int totalOperands;
+            // by line: its tokens, and where its operands start in operandEntries
+            Tokens[] lineTokens = new Tokens[256];
+            int[] lineOperands = new int[257];
+            int[] operandEntries = new int[1024];
+            int lines;
+
+            @Override
+            public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo line) {
+                Tokens tokens = line.skipped ? Tokens.NONE : line.tokens;
+                int[] o = tokens.operands;
+                if (index == lineTokens.length) {
+                    lineTokens = Arrays.copyOf(lineTokens, index * 2);
+                    lineOperands = Arrays.copyOf(lineOperands, index * 2 + 1);
+                }
+                if (totalOperands + o.length / 3 > operandEntries.length) {
+                    operandEntries = Arrays.copyOf(operandEntries, Math.max(operandEntries.length * 2, totalOperands + o.length / 3));
+                }
+                lineTokens[index] = tokens;
+                lines = index + 1;
+                for (byte id : tokens.operators) operatorCounts[id]++;
+                totalOperators += tokens.operators.length;
+                for (int k = 0; k < o.length; k += 3) {
+                    operandEntries[totalOperands++] = operands.add(src, 0, s + o[k], o[k + 1], o[k + 2]);
                 }
-            } else if (isOperatorChar(c)) {
-                if (token.length() > 0) {
-                    tokens.add(token.toString());
-                    token.setLength(0);
+                lineOperands[index + 1] = totalOperands;
+            }
+
+            @Override
+            public void finish() {
+                int distinctOperators = 0;
+                for (int count : operatorCounts) {
+                    if (count > 0) distinctOperators++;
                 }
-                
-                // Handle multi-char operators like ++, ==, <=, etc.
-                String op = String.valueOf(c);
-                if (i + 1 < line.length()) {
-                    char next = line.charAt(i + 1);
-                    String twoChar = c + String.valueOf(next);
-                    if (OPERATORS.contains(twoChar)) {
-                        op = twoChar;
-                        i++;
+                metrics.setTotalN1(totalOperators);
+                metrics.setTotalN2(totalOperands);
+                metrics.setN1(distinctOperators);
+                metrics.setN2(operands.size());
+
+                metrics.computeHalstead();
+                if (metrics.getMethods() != null) methodVolumes(metrics.getMethods());
+            }
+
+            /**
+             * Per row, the volume of the tokens on its lines; the distinct ones are
+             * counted by marking them with the row's number. Tokens carry no offsets
+             * of their own (only operands do), so a line shared with other code
+             * counts whole for the row: the volume is approximate.
+             */
+            void methodVolumes(MethodTable methods) {
+                int[] operatorMarks = new int[OPERATORS.length];
+                int[] operandMarks = new int[operands.size()];
+                for (int r = 0; r < methods.size(); r++) {
+                    int mark = r + 1;
+                    int total = 0;
+                    int distinct = 0;
+                    for (int l = methods.getStartLine(r) - 1, last = Math.min(methods.getEndLine(r), lines); l < last; l++) {
+                        for (byte id : lineTokens[l].operators) {
+                            if (operatorMarks[id] != mark) {
+                                operatorMarks[id] = mark;
+                                distinct++;
+                            }
+                        }
+                        total += lineTokens[l].operators.length;
+                        for (int k = lineOperands[l]; k < lineOperands[l + 1]; k++) {
+                            int entry = operandEntries[k];
+                            if (operandMarks[entry] != mark) {
+                                operandMarks[entry] = mark;
+                                distinct++;
+                            }
+                        }
+                        total += lineOperands[l + 1] - lineOperands[l];
                     }
+                    methods.setVolume(r, AdvancedMetrics.halsteadVolume(total, distinct));
                 }
-                tokens.add(op);
+            }
+        };
+    }
+
+    /**
+     * Tokenize the line [start, end) and sort the tokens into operators and
+     * operands; anything else is dropped. Tokens are maximal runs of non-space,
+     * non-operator chars, and operators, longest match first.
+     */
+    static Tokens tokenize(SourceBuffer src, int start, int end) {
+        int[][] scratch = SCRATCH.get();
+        int[] ops = scratch[0];
+        int[] opnds = scratch[1];
+        int opCount = 0;
+        int opndLength = 0;
+
+        int i = start;
+        while (i < end) {
+            char c = src.charAt(i);
+            byte cls = c < 128 ? CHAR_CLASS[c] : Character.isWhitespace(c) ? SPACE : WORD;
+            if (cls == SPACE) {
+                i++;
+            } else if (cls == OPERATOR) {
+                // Longest operator from the trie; every operator char is one by itself
+                int match = TRIE.longest(src, i, end);
+                if (opCount == ops.length) scratch[0] = ops = Arrays.copyOf(ops, opCount * 2);
+                ops[opCount++] = CharTrie.id(match);
+                i += CharTrie.length(match);
             } else {
-                token.append(c);
+                int wordStart = i;
+                while (i < end) {
+                    char d = src.charAt(i);
+                    if ((d < 128 ? CHAR_CLASS[d] : Character.isWhitespace(d) ? SPACE : WORD) != WORD) break;
+                    i++;
+                }
+                int keyword = TRIE.exact(src, wordStart, i);
+                if (keyword >= 0) {
+                    if (opCount == ops.length) scratch[0] = ops = Arrays.copyOf(ops, opCount * 2);
+                    ops[opCount++] = keyword;
+                } else if (isOperand(src, wordStart, i)) {
+                    if (opndLength + 3 > opnds.length) scratch[1] = opnds = Arrays.copyOf(opnds, opnds.length * 2);
+                    opnds[opndLength++] = wordStart - start;
+                    opnds[opndLength++] = i - wordStart;
+                    opnds[opndLength++] = RangeTable.hash(src, wordStart, i);
+                }
             }
         }
-        
-        if (token.length() > 0) {
-            tokens.add(token.toString());
-        }
-        
-        return tokens.toArray(new String[0]);
-    }
-    
-    private static boolean isOperatorChar(char c) {
-        return "+-*/%=!<>&|^~?:.,;()[]{}".indexOf(c) != -1;
+        if (opCount == 0 && opndLength == 0) return Tokens.NONE;
+        byte[] operators = new byte[opCount];
+        for (int k = 0; k < opCount; k++) operators[k] = (byte) ops[k];
+        return new Tokens(operators, Arrays.copyOf(opnds, opndLength));
     }
-    
-    private static boolean isOperand(String token) {
-        // Operands: variables, literals, function names
-        if (token.matches("\\d+")) return true; // numeric literal
-        if (token.matches("\".*\"") || token.matches("'.*'")) return true; // string literal
-        if (token.matches("[a-zA-Z_][a-zA-Z0-9_]*")) return true; // identifier
-        return false;
+
+    /**
+     * Operands: variables, literals, function names. Same as matching \d+,
+     * ".*", '.*' or [a-zA-Z_][a-zA-Z0-9_]*.
+     */
+    private static boolean isOperand(SourceBuffer src, int start, int end) {
+        char first = src.charAt(start);
+        char last = src.charAt(end - 1);
+        if (end - start >= 2 && (first == '"' || first == '\'') && last == first) {
+            // string literal; '.' stops at line terminators, only NEL can occur in a token
+            return src.indexOf('\u0085', start, end) < 0;
+        }
+        boolean digits = true;
+        boolean identifier = first == '_' || (first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z');
+        for (int i = start; i < end && (digits || identifier); i++) {
+            char c = src.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            digits &= digit;
+            identifier &= digit || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+        return digits || identifier;
     }
 }
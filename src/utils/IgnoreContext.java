@@ -0,0 +1,107 @@
+package utils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Ignore state of one directory during a walk: every ignore file that applies
+ * (from the git root down to this directory) together with that file's NFA
+ * position after consuming the path to here. Checking an entry therefore costs
+ * a single segment step per level, never a re-match of the full path.
+ *
+ * Deeper files take precedence over shallower ones, as in git. Contexts are
+ * immutable, so parallel walker tasks can share them.
+ */
+public class IgnoreContext {
+
+    public static final String ANALYZER_IGNORE = ".analyzerignore";
+    public static final String GIT_IGNORE = ".gitignore";
+
+    private static final IgnoreRules.Node[][] NO_STATES = new IgnoreRules.Node[0][];
+
+    private final IgnoreRules[] levels;         // shallowest first
+    private final IgnoreRules.Node[][] states;  // per level, after this directory's path
+    private final boolean gitignore;
+
+    private IgnoreContext(IgnoreRules[] levels, IgnoreRules.Node[][] states, boolean gitignore) {
+        this.levels = levels;
+        this.states = states;
+        this.gitignore = gitignore;
+    }
+
+    /**
+     * Context for the scan root: ignore files of the root itself and, inside a git
+     * checkout, of every ancestor up to the work tree root (plus .git/info/exclude).
+     * .analyzerignore files are always honored; .gitignore only when gitignore is set.
+     */
+    public static IgnoreContext forScanRoot(Path root, boolean gitignore) {
+        IgnoreContext ctx = new IgnoreContext(new IgnoreRules[0], NO_STATES, gitignore);
+
+        File scanRoot = root.toAbsolutePath().normalize().toFile();
+        File gitRoot = ChurnAnalyzer.findGitRoot(scanRoot);
+        List<File> chain = new ArrayList<>();
+        for (File d = scanRoot; d != null; d = d.getParentFile()) {
+            chain.add(0, d);
+            if (gitRoot == null || d.equals(gitRoot)) break;
+        }
+
+        for (int i = 0; i < chain.size(); i++) {
+            File d = chain.get(i);
+            if (i > 0) ctx = ctx.descend(d.getName());
+            Path info = gitignore && d.equals(gitRoot) ? new File(d, ".git/info/exclude").toPath() : null;
+            ctx = ctx.withRulesFrom(d.toPath(), info);
+        }
+        return ctx;
+    }
+
+    public boolean usesGitignore() { return gitignore; }
+
+    /**
+     * True if the entry with this name, directly inside this context's directory,
+     * is excluded.
+     */
+    public boolean isIgnored(String name, boolean isDir) {
+        for (int i = levels.length - 1; i >= 0; i--) {
+            IgnoreRules.Node[] next = IgnoreRules.step(states[i], name);
+            int decision = levels[i].decide(next, isDir);
+            if (decision != IgnoreRules.NONE) return decision == IgnoreRules.IGNORED;
+        }
+        return false;
+    }
+
+    /**
+     * Context of a sub-directory (before its own ignore files are loaded).
+     */
+    public IgnoreContext descend(String dirName) {
+        if (levels.length == 0) return this;
+        IgnoreRules.Node[][] next = new IgnoreRules.Node[levels.length][];
+        for (int i = 0; i < levels.length; i++) next[i] = IgnoreRules.step(states[i], dirName);
+        return new IgnoreContext(levels, next, gitignore);
+    }
+
+    /**
+     * Add the ignore files found in dir as a new, highest-precedence level.
+     * extra (may be null) is read before them, e.g. .git/info/exclude.
+     */
+    public IgnoreContext withRulesFrom(Path dir, Path extra) {
+        IgnoreRules rules = IgnoreRules.load(
+            extra,
+            gitignore ? dir.resolve(GIT_IGNORE) : null,
+            dir.resolve(ANALYZER_IGNORE));
+        if (rules == null) return this;
+
+        IgnoreRules[] l = Arrays.copyOf(levels, levels.length + 1);
+        IgnoreRules.Node[][] s = Arrays.copyOf(states, states.length + 1);
+        l[levels.length] = rules;
+        s[levels.length] = rules.start();
+        return new IgnoreContext(l, s, gitignore);
+    }
+
+    /**
+     * True if name is an ignore file this context would read.
+     */
+    public boolean isIgnoreFileName(String name) {
+        return ANALYZER_IGNORE.equals(name) || (gitignore && GIT_IGNORE.equals(name));
+    }
+}
@@ -0,0 +1,268 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of one ignore file (.gitignore / .analyzerignore), compiled into a
+ * single trie over path segments.
+ *
+ * Every rule becomes a path through the trie; "**" segments become looping
+ * nodes, so the whole rule set is simulated as one NFA. Matching a path costs
+ * one hash lookup per active state per segment, independent of how many rules
+ * share the trie (only segments with complex wildcards such as "a*b?" are kept
+ * as regexes and tested one by one).
+ *
+ * Semantics follow gitignore(5): '#' comments, '!' negation, trailing '/' for
+ * directory-only rules, leading or middle '/' anchoring the rule to this file's
+ * directory, '*', '?', '[...]' and '**', and "last matching rule wins".
+ */
+public class IgnoreRules {
+
+    public static final int NONE = 0;
+    public static final int IGNORED = 1;
+    public static final int INCLUDED = 2;
+
+    /**
+     * One trie state. A state set (Node[]) is the NFA position after some segments.
+     */
+    static final class Node {
+        Map<String, Node> literal;      // exact segment
+        Map<String, Node> byExtension;  // "*.ext" segments keyed by ".ext"
+        List<Pattern> globs;            // other wildcard segments ...
+        List<Node> globTargets;         // ... and where they lead
+        Node star;                      // "*": exactly one segment
+        Node starLoop;                  // trailing "**": one or more segments
+        Node anyDepth;                  // "**/": zero or more segments (epsilon edge)
+        boolean loop;                   // consumes any segment and stays here
+        int termAny = -1;               // last rule ending here
+        int termDir = -1;               // last directory-only rule ending here
+    }
+
+    private final Node root = new Node();
+    private final List<Boolean> negated = new ArrayList<>();
+    private int ruleCount;
+
+    /**
+     * Parse and compile the given ignore files (in order; later files win ties).
+     * Returns null if none of them exist or none contain rules.
+     */
+    public static IgnoreRules load(Path... files) {
+        IgnoreRules rules = new IgnoreRules();
+        for (Path f : files) {
+            if (f == null) continue;
+            try {
+                for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) rules.add(line);
+            } catch (IOException | java.io.UncheckedIOException e) {
+                // missing or unreadable ignore file: no rules from it
+            }
+        }
+        return rules.ruleCount == 0 ? null : rules;
+    }
+
+    public int size() { return ruleCount; }
+
+    /**
+     * Add one line of ignore-file syntax.
+     */
+    public void add(String line) {
+        String p = stripTrailingSpaces(line);
+        if (p.isEmpty() || p.startsWith("#")) return;
+
+        boolean negate = false;
+        if (p.startsWith("!")) {
+            negate = true;
+            p = p.substring(1);
+        } else if (p.startsWith("\\!") || p.startsWith("\\#")) {
+            p = p.substring(1);
+        }
+
+        boolean dirOnly = false;
+        if (p.endsWith("/")) {
+            dirOnly = true;
+            p = p.substring(0, p.length() - 1);
+        }
+        if (p.isEmpty()) return;
+
+        // A slash at the start or in the middle anchors the rule to this directory
+        boolean anchored = p.indexOf('/') >= 0;
+        if (p.startsWith("/")) p = p.substring(1);
+
+        List<String> segments = new ArrayList<>();
+        if (!anchored) segments.add("**");
+        for (String s : p.split("/")) {
+            if (s.isEmpty()) continue;
+            if ("**".equals(s) && !segments.isEmpty() && "**".equals(segments.get(segments.size() - 1))) continue;
+            segments.add(s);
+        }
+        if (segments.isEmpty()) return;
+
+        int index = ruleCount++;
+        negated.add(negate);
+
+        Node cur = root;
+        for (int i = 0; i < segments.size(); i++) {
+            String seg = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            if ("**".equals(seg)) {
+                if (last) {
+                    if (cur.starLoop == null) { cur.starLoop = new Node(); cur.starLoop.loop = true; }
+                    cur = cur.starLoop;
+                } else {
+                    if (cur.anyDepth == null) { cur.anyDepth = new Node(); cur.anyDepth.loop = true; }
+                    cur = cur.anyDepth;
+                }
+            } else if ("*".equals(seg)) {
+                if (cur.star == null) cur.star = new Node();
+                cur = cur.star;
+            } else if (!hasWildcard(seg)) {
+                if (cur.literal == null) cur.literal = new HashMap<>();
+                cur = cur.literal.computeIfAbsent(unescape(seg), k -> new Node());
+            } else if (seg.startsWith("*.") && !hasWildcard(seg.substring(1)) && seg.indexOf('.', 2) < 0 && seg.indexOf('\\') < 0) {
+                if (cur.byExtension == null) cur.byExtension = new HashMap<>();
+                cur = cur.byExtension.computeIfAbsent(seg.substring(1), k -> new Node());
+            } else {
+                if (cur.globs == null) { cur.globs = new ArrayList<>(); cur.globTargets = new ArrayList<>(); }
+                String regex = globToRegex(seg);
+                int at = -1;
+                for (int g = 0; g < cur.globs.size(); g++) {
+                    if (cur.globs.get(g).pattern().equals(regex)) { at = g; break; }
+                }
+                if (at < 0) {
+                    cur.globs.add(Pattern.compile(regex));
+                    cur.globTargets.add(new Node());
+                    at = cur.globs.size() - 1;
+                }
+                cur = cur.globTargets.get(at);
+            }
+        }
+        if (dirOnly) cur.termDir = index; else cur.termAny = index;
+    }
+
+    /**
+     * Initial state set (before any segment has been consumed).
+     */
+    Node[] start() {
+        List<Node> out = new ArrayList<>(4);
+        addState(out, root);
+        return out.toArray(new Node[0]);
+    }
+
+    /**
+     * Advance a state set by one path segment.
+     */
+    static Node[] step(Node[] states, String seg) {
+        if (states.length == 0) return states;
+        List<Node> out = new ArrayList<>(states.length + 2);
+        String ext = null;
+        int dot = seg.lastIndexOf('.');
+        for (Node s : states) {
+            if (s.loop) addState(out, s);
+            if (s.literal != null) {
+                Node t = s.literal.get(seg);
+                if (t != null) addState(out, t);
+            }
+            if (s.byExtension != null && dot >= 0) {
+                if (ext == null) ext = seg.substring(dot);
+                Node t = s.byExtension.get(ext);
+                if (t != null) addState(out, t);
+            }
+            if (s.globs != null) {
+                for (int g = 0; g < s.globs.size(); g++) {
+                    if (s.globs.get(g).matcher(seg).matches()) addState(out, s.globTargets.get(g));
+                }
+            }
+            if (s.star != null) addState(out, s.star);
+            if (s.starLoop != null) addState(out, s.starLoop);
+        }
+        return out.toArray(new Node[0]);
+    }
+
+    /**
+     * Decision of this rule set for a path whose segments led to the given state set.
+     */
+    int decide(Node[] states, boolean isDir) {
+        int best = -1;
+        for (Node s : states) {
+            if (s.termAny > best) best = s.termAny;
+            if (isDir && s.termDir > best) best = s.termDir;
+        }
+        if (best < 0) return NONE;
+        return negated.get(best) ? INCLUDED : IGNORED;
+    }
+
+    /**
+     * Match a '/'-separated path relative to this file's directory.
+     */
+    public int match(String relativePath, boolean isDir) {
+        Node[] states = start();
+        for (String seg : relativePath.split("/")) {
+            if (!seg.isEmpty()) states = step(states, seg);
+        }
+        return decide(states, isDir);
+    }
+
+    // Adds a state plus its epsilon closure ("**/" edges)
+    private static void addState(List<Node> out, Node s) {
+        for (Node n : out) if (n == s) return;
+        out.add(s);
+        if (s.anyDepth != null) addState(out, s.anyDepth);
+    }
+
+    private static boolean hasWildcard(String seg) {
+        for (int i = 0; i < seg.length(); i++) {
+            char c = seg.charAt(i);
+            if (c == '\\') { i++; continue; }
+            if (c == '*' || c == '?' || c == '[') return true;
+        }
+        return false;
+    }
+
+    private static String unescape(String seg) {
+        if (seg.indexOf('\\') < 0) return seg;
+        StringBuilder sb = new StringBuilder(seg.length());
+        for (int i = 0; i < seg.length(); i++) {
+            char c = seg.charAt(i);
+            if (c == '\\' && i + 1 < seg.length()) c = seg.charAt(++i);
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String stripTrailingSpaces(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')) end--;
+        if (end > 0 && line.charAt(end - 1) == '\r') end--;
+        return line.substring(0, end);
+    }
+
+    private static String globToRegex(String seg) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < seg.length(); i++) {
+            char c = seg.charAt(i);
+            switch (c) {
+                case '*': sb.append("[^/]*"); break;
+                case '?': sb.append("[^/]"); break;
+                case '\\':
+                    if (i + 1 < seg.length()) sb.append(Pattern.quote(String.valueOf(seg.charAt(++i))));
+                    break;
+                case '[': {
+                    int close = seg.indexOf(']', i + 2);
+                    if (close < 0) { sb.append("\\["); break; }
+                    String body = seg.substring(i + 1, close);
+                    if (body.startsWith("!")) body = "^" + body.substring(1);
+                    sb.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = close;
+                    break;
+                }
+                default:
+                    if ("().+^$|{}".indexOf(c) >= 0) sb.append('\\');
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.List;
+import model.AdvancedMetrics;
+import model.JavaCodeMetrics;
+
+/**
+ * Java heuristics on the Lexer's tokens (LanguageSpec.java()): comments, Javadoc,
+ * text blocks, char and string escapes are handled by the lexer, so only real
+ * code is counted. Decision points are if, for, while, case, catch, && and ||
+ * and the conditional '?' (not the generic wildcard).
+ *
+ * The tokens are also recorded in a JavaStructure, which parses them at the end
+ * of the file: methods and classes are counted from its types and methods, and
+ * it fills the method- and class-level AdvancedMetrics and the MethodTable, and
+ * the cognitive complexity of the file and of each method, nested from the
+ * method body rather than from the braces of the enclosing class.
+ */
+class JavaHeuristic extends LexerHeuristic {
+
+    private final int question;
+    private final boolean[] wildcardEnd;    // operators after '?' in <?>, <?, ...>, <?>>
+    private final int extendsKeyword;
+    private final int superKeyword;
+
+    JavaHeuristic() {
+        super(LanguageSpec.java());
+        List<String> operators = Arrays.asList(spec.getOperators());
+        List<String> keywords = Arrays.asList(spec.getKeywords());
+        question = operators.indexOf("?");
+        wildcardEnd = flags(operators, new String[] {">", ">>", ">>>", ",", "&"});
+        extendsKeyword = keywords.indexOf("extends");
+        superKeyword = keywords.indexOf("super");
+    }
+
+    @Override
+    public boolean measuresCognitiveComplexity() {
+        return true;
+    }
+
+    @Override
+    public MetricsPass.Accumulator accumulator(JavaCodeMetrics metrics) {
+        return new JavaCounter(metrics);
+    }
+
+    private final class JavaCounter extends Counter {
+        private JavaStructure structure;
+        private int line;
+        private boolean pendingQuestion;
+
+        JavaCounter(JavaCodeMetrics metrics) {
+            super(metrics);
+        }
+
+        @Override
+        public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo info) {
+            if (structure == null) structure = JavaStructure.reset(src);
+            line = index;
+            super.line(src, index, s, e, info);
+        }
+
+        @Override
+        public void token(int kind, int id, int start, int end) {
+            boolean operator = kind == Lexer.OPERATOR && id >= 0;
+            if (pendingQuestion) {
+                pendingQuestion = false;
+                boolean wildcard = (operator && wildcardEnd[id])
+                    || (kind == Lexer.KEYWORD && (id == extendsKeyword || id == superKeyword));
+                if (!wildcard) decision(structure.tokenCount() - 1);
+            }
+            int token = structure.add(kind, id, start, end, line);
+            if (kind == Lexer.KEYWORD && branchKeywords[id]) {
+                decision(token);
+            } else if (operator) {
+                if (branchOperators[id]) decision(token);
+                if (id == question) pendingQuestion = true;
+            }
+        }
+
+        private void decision(int token) {
+            complexity++;
+            structure.decision(token);
+        }
+
+        @Override
+        public void finish() {
+            if (structure == null) structure = JavaStructure.reset(null);
+            structure.parse();
+            methodCount = structure.methodCount();
+            classCount = structure.classCount();
+            super.finish();
+            AdvancedMetrics advanced = metrics.getAdvancedMetrics();
+            if (advanced == null) return;
+            structure.store(advanced);
+            if (advanced.getMethods() != null) countCodeLines(advanced.getMethods());
+        }
+    }
+}
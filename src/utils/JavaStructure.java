@@ -0,0 +1,922 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.List;
+import model.AdvancedMetrics;
+import model.MethodTable;
+
+/**
+ * The structure of one Java file, for method- and class-level metrics.
+ *
+ * JavaHeuristic records every token of the file here during its MetricsPass
+ * (kind, id, char range, line and whether it is a decision point). At the end of
+ * the file parse() reads them with a recursive-descent parser that knows just
+ * enough Java to find types, methods, blocks, lambdas and control statements,
+ * and skips over anything else. Tokens and nodes are kept as parallel primitive
+ * arrays (struct-of-arrays) rather than objects, and one JavaStructure is reused
+ * by every file a thread analyzes, so a file costs no garbage beyond the arrays
+ * growing to the largest file seen.
+ *
+ * Nodes are created in source order; each has a parent, a first and last token
+ * and, for types and methods, a name token (-1 if anonymous).
+ */
+final class JavaStructure {
+
+    // Node kinds
+    static final byte TYPE = 1;         // class, interface, enum, record, annotation, anonymous class body
+    static final byte METHOD = 2;       // method or constructor, with or without a body
+    static final byte BLOCK = 3;        // initializer, nested or case block
+    static final byte LAMBDA = 4;       // lambda body in braces
+    static final byte CONTROL = 5;      // if, else, for, while, do, switch, try, catch, finally, synchronized
+
+    // Token flags
+    private static final byte DECISION = 1;     // counted in cyclomatic complexity
+    private static final byte DECLARED = 2;     // name of a type, method, field or enum constant
+
+    // Deeper nesting is skipped rather than risking the stack
+    private static final int MAX_DEPTH = 200;
+
+    // parseExpression modes
+    private static final int STATEMENT = 0;     // up to ';', consumed
+    private static final int DECLARATOR = 1;    // up to ',' or ';', not consumed
+    private static final int LABEL = 2;         // up to ':' or '->', consumed
+    private static final int PARENS = 3;        // up to the unmatched ')', consumed
+
+    private static final List<String> KEYWORDS = Arrays.asList(LanguageSpec.java().getKeywords());
+    private static final List<String> OPERATORS = Arrays.asList(LanguageSpec.java().getOperators());
+    private static final int CLASS = keyword("class");
+    private static final int INTERFACE = keyword("interface");
+    private static final int ENUM = keyword("enum");
+    private static final int DEFAULT = keyword("default");
+    private static final int CASE = keyword("case");
+    private static final int IF = keyword("if");
+    private static final int ELSE = keyword("else");
+    private static final int FOR = keyword("for");
+    private static final int WHILE = keyword("while");
+    private static final int DO = keyword("do");
+    private static final int SWITCH = keyword("switch");
+    private static final int TRY = keyword("try");
+    private static final int CATCH = keyword("catch");
+    private static final int FINALLY = keyword("finally");
+    private static final int SYNCHRONIZED = keyword("synchronized");
+    private static final int BREAK = keyword("break");
+    private static final int CONTINUE = keyword("continue");
+    private static final int THIS = keyword("this");
+    private static final int IMPORT = keyword("import");
+    private static final int PACKAGE = keyword("package");
+    private static final int OPEN_BRACE = operator("{");
+    private static final int CLOSE_BRACE = operator("}");
+    private static final int OPEN_PAREN = operator("(");
+    private static final int CLOSE_PAREN = operator(")");
+    private static final int OPEN_BRACKET = operator("[");
+    private static final int CLOSE_BRACKET = operator("]");
+    private static final int SEMICOLON = operator(";");
+    private static final int COMMA = operator(",");
+    private static final int DOT = operator(".");
+    private static final int ASSIGN = operator("=");
+    private static final int COLON = operator(":");
+    private static final int ARROW = operator("->");
+    private static final int AT = operator("@");
+    private static final int METHOD_REFERENCE = operator("::");
+    private static final int LESS = operator("<");
+    private static final int GREATER = operator(">");
+    private static final int SHIFT_RIGHT = operator(">>");
+    private static final int SHIFT_RIGHT_UNSIGNED = operator(">>>");
+    private static final int QUESTION = operator("?");
+    private static final int AND = operator("&&");
+    private static final int OR = operator("||");
+
+    private static final ThreadLocal<JavaStructure> LOCAL = ThreadLocal.withInitial(JavaStructure::new);
+
+    private SourceBuffer src;
+
+    // Tokens
+    private int count;
+    private byte[] kinds = new byte[1024];
+    private int[] ids = new int[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int[] lines = new int[1024];
+    private byte[] flags = new byte[1024];
+
+    // Nodes
+    private int nodes;
+    private byte[] nodeKinds = new byte[64];
+    private int[] parents = new int[64];
+    private int[] firsts = new int[64];
+    private int[] lasts = new int[64];
+    private int[] names = new int[64];
+    private int[] complexity = new int[64];     // methods: 1 + decision points, 0 without a body
+    private int[] heads = new int[64];          // control statements: first token after the header
+    private int[] nestings = new int[64];       // cognitive nesting inside the node
+    private int[] owners = new int[64];         // innermost method, -1 outside methods
+    private int[] cognitive = new int[64];      // methods: cognitive complexity
+
+    // Fields (and record components): declaring type and name token
+    private int fields;
+    private int[] fieldTypes = new int[16];
+    private int[] fieldNames = new int[16];
+
+    private final RangeTable fieldTable = new RangeTable();
+    private final RangeTable typeTable = new RangeTable();
+    // by fieldTable entry: methods of the class using the field, and the last one seen
+    private int[] users = new int[16];
+    private int[] lastUser = new int[16];
+    private int[] stack = new int[16];
+    private int pos;
+
+    private JavaStructure() {
+    }
+
+    /**
+     * This thread's instance, emptied for a new file of src.
+     */
+    static JavaStructure reset(SourceBuffer src) {
+        JavaStructure s = LOCAL.get();
+        s.src = src;
+        s.count = 0;
+        s.nodes = 0;
+        s.fields = 0;
+        return s;
+    }
+
+    /** Appends a token; returns its index. */
+    int add(int kind, int id, int start, int end, int line) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        kinds[count] = (byte) kind;
+        ids[count] = id;
+        starts[count] = start;
+        ends[count] = end;
+        lines[count] = line;
+        flags[count] = 0;
+        return count++;
+    }
+
+    /** Marks token as a decision point of whichever method contains it. */
+    void decision(int token) {
+        flags[token] |= DECISION;
+    }
+
+    int tokenCount() {
+        return count;
+    }
+
+    int methodCount() {
+        int n = 0;
+        for (int k = 0; k < nodes; k++) {
+            if (nodeKinds[k] == METHOD) n++;
+        }
+        return n;
+    }
+
+    /** Named types; anonymous classes and enum constant bodies are not counted. */
+    int classCount() {
+        int n = 0;
+        for (int k = 0; k < nodes; k++) {
+            if (nodeKinds[k] == TYPE && names[k] >= 0) n++;
+        }
+        return n;
+    }
+
+    // ---- Parser ----
+
+    /**
+     * Builds the nodes from the recorded tokens.
+     */
+    void parse() {
+        pos = 0;
+        while (pos < count) {
+            if (isKeyword(pos, PACKAGE) || isKeyword(pos, IMPORT)) {
+                while (pos < count && !isOperator(pos, SEMICOLON)) pos++;
+                pos++;
+            } else if (isOperator(pos, AT) && !isKeyword(pos + 1, INTERFACE)) {
+                skipAnnotation();
+            } else if (startsType(pos)) {
+                parseType(-1, firstOfDeclaration(pos), 0);
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * At a type keyword (or "record"): the header up to '{', then the body.
+     */
+    private void parseType(int parent, int first, int depth) {
+        boolean isEnum = isKeyword(pos, ENUM);
+        boolean isRecord = kinds[pos] == Lexer.IDENTIFIER;
+        pos++;
+        int name = -1;
+        if (pos < count && kinds[pos] == Lexer.IDENTIFIER) {
+            name = pos++;
+            flags[name] |= DECLARED;
+        }
+        int node = addNode(TYPE, parent, first, name);
+        int angle = 0;
+        while (pos < count && !isOperator(pos, OPEN_BRACE)) {
+            if (isOperator(pos, SEMICOLON)) {
+                pos++;
+                close(node);
+                return;
+            }
+            if (isOperator(pos, CLOSE_BRACE)) {
+                close(node);
+                return;
+            }
+            angle = angle(pos, angle);
+            if (isRecord && angle == 0 && isOperator(pos, OPEN_PAREN)) parseComponents(node);
+            else pos++;
+        }
+        if (pos < count) {
+            pos++;
+            parseMembers(node, isEnum, depth + 1);
+        }
+        close(node);
+    }
+
+    /**
+     * Record components "(int x, List<String> names)" are the record's fields.
+     */
+    private void parseComponents(int type) {
+        pos++;
+        int parens = 1;
+        int angle = 0;
+        while (pos < count && parens > 0) {
+            int t = pos++;
+            if (isOperator(t, OPEN_PAREN)) {
+                parens++;
+            } else if (isOperator(t, CLOSE_PAREN)) {
+                parens--;
+                if (parens == 0 && kinds[t - 1] == Lexer.IDENTIFIER) addField(type, t - 1);
+            } else if (parens == 1 && angle == 0 && isOperator(t, COMMA) && kinds[t - 1] == Lexer.IDENTIFIER) {
+                addField(type, t - 1);
+            } else {
+                angle = angle(t, angle);
+            }
+        }
+    }
+
+    /**
+     * After the '{' of a type body, up to and including its '}'.
+     */
+    private void parseMembers(int type, boolean isEnum, int depth) {
+        if (depth > MAX_DEPTH) {
+            skipBlock();
+            return;
+        }
+        if (isEnum) parseEnumConstants(type, depth);
+        while (pos < count) {
+            if (isOperator(pos, CLOSE_BRACE)) {
+                pos++;
+                return;
+            }
+            int before = pos;
+            parseMember(type, depth);
+            if (pos == before) pos++;
+        }
+    }
+
+    /**
+     * "A, B(1), C { ... };" up to the ';' or the end of the enum body.
+     */
+    private void parseEnumConstants(int type, int depth) {
+        while (pos < count) {
+            int t = pos;
+            if (isOperator(t, CLOSE_BRACE)) return;
+            if (isOperator(t, SEMICOLON)) {
+                pos++;
+                return;
+            }
+            if (isOperator(t, AT)) {
+                skipAnnotation();
+            } else if (kinds[t] == Lexer.IDENTIFIER) {
+                flags[t] |= DECLARED;
+                pos++;
+                if (isOperator(pos, OPEN_PAREN)) {
+                    pos++;
+                    parseExpression(type, depth, PARENS);
+                }
+                if (isOperator(pos, OPEN_BRACE)) {
+                    int body = addNode(TYPE, type, pos, -1);
+                    pos++;
+                    parseMembers(body, false, depth + 1);
+                    close(body);
+                }
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * One member of a type body: a nested type, a method or constructor, fields or
+     * an initializer. Modifiers and the declared type are read over until one of
+     * '(' (after a name), '=', ',', ';' or '{' tells which it is.
+     */
+    private void parseMember(int type, int depth) {
+        while (isOperator(pos, AT) && !isKeyword(pos + 1, INTERFACE)) skipAnnotation();
+        int first = pos;
+        int angle = 0;
+        boolean initialized = false;    // the current declarator has "= value"
+        while (pos < count) {
+            int t = pos;
+            if (startsType(t)) {
+                parseType(type, first, depth);
+                return;
+            }
+            if (kinds[t] != Lexer.OPERATOR) {
+                pos++;
+                continue;
+            }
+            int id = ids[t];
+            if (id == AT && !isKeyword(t + 1, INTERFACE)) {
+                skipAnnotation();
+            } else if (id == CLOSE_BRACE) {
+                return;
+            } else if (id == SEMICOLON) {
+                if (angle == 0 && !initialized) declarator(type, first, t);
+                pos++;
+                return;
+            } else if (id == OPEN_BRACE) {
+                // "Name {" is a compact record constructor, anything else an initializer
+                boolean constructor = t > first && kinds[t - 1] == Lexer.IDENTIFIER;
+                int node = addNode(constructor ? METHOD : BLOCK, type, first, constructor ? t - 1 : -1);
+                if (constructor) {
+                    flags[t - 1] |= DECLARED;
+                    complexity[node] = 1;
+                }
+                pos++;
+                parseBlock(node, depth + 1);
+                close(node);
+                return;
+            } else if (angle > 0 || (id != OPEN_PAREN && id != ASSIGN && id != COMMA)) {
+                angle = angle(t, angle);
+                pos++;
+            } else if (id == OPEN_PAREN) {
+                if (t > first && kinds[t - 1] == Lexer.IDENTIFIER) {
+                    parseMethod(type, first, t - 1, depth);
+                    return;
+                }
+                pos++;
+                parseExpression(type, depth, PARENS);
+            } else {
+                if (!initialized) declarator(type, first, t);
+                initialized = id == ASSIGN;
+                pos++;
+                if (initialized) parseExpression(type, depth, DECLARATOR);
+            }
+        }
+    }
+
+    /**
+     * At the '(' after a method's name: parameters, then throws, an annotation
+     * element's default value or old-style array brackets, then the body or ';'.
+     */
+    private void parseMethod(int type, int first, int name, int depth) {
+        flags[name] |= DECLARED;
+        int node = addNode(METHOD, type, first, name);
+        pos++;
+        parseExpression(node, depth + 1, PARENS);
+        while (pos < count) {
+            int t = pos;
+            if (isOperator(t, OPEN_BRACE)) {
+                complexity[node] = 1;
+                pos++;
+                parseBlock(node, depth + 1);
+                break;
+            }
+            if (isOperator(t, SEMICOLON)) {
+                pos++;
+                break;
+            }
+            if (isOperator(t, CLOSE_BRACE)) break;
+            pos++;
+            if (isKeyword(t, DEFAULT)) {
+                parseExpression(node, depth + 1, STATEMENT);
+                break;
+            }
+        }
+        close(node);
+    }
+
+    /**
+     * After a '{' of code, up to and including its '}'.
+     */
+    private void parseBlock(int parent, int depth) {
+        if (depth > MAX_DEPTH) {
+            skipBlock();
+            return;
+        }
+        while (pos < count) {
+            if (isOperator(pos, CLOSE_BRACE)) {
+                pos++;
+                return;
+            }
+            int before = pos;
+            parseStatement(parent, depth);
+            if (pos == before) pos++;
+        }
+    }
+
+    private void parseStatement(int parent, int depth) {
+        int t = pos;
+        if (depth > MAX_DEPTH) {
+            skipStatement();
+        } else if (isOperator(t, OPEN_BRACE)) {
+            int node = addNode(BLOCK, parent, t, -1);
+            pos++;
+            parseBlock(node, depth + 1);
+            close(node);
+        } else if (isOperator(t, SEMICOLON)) {
+            pos++;
+        } else if (isControl(t)) {
+            parseControl(parent, depth);
+        } else if (isKeyword(t, CASE) || isKeyword(t, DEFAULT)) {
+            // the label; what follows ':' or '->' is parsed as the next statement
+            pos++;
+            parseExpression(parent, depth, LABEL);
+        } else if (startsType(t)) {
+            parseType(parent, t, depth);
+        } else if (kinds[t] == Lexer.IDENTIFIER && isOperator(t + 1, COLON)) {
+            pos += 2;
+        } else {
+            parseExpression(parent, depth, STATEMENT);
+        }
+    }
+
+    /**
+     * At a control keyword: its parenthesized header if it has one, then its body
+     * (a block, or a single statement). Else, catch and finally are statements of
+     * their own following the if or try.
+     */
+    private void parseControl(int parent, int depth) {
+        int keyword = ids[pos];
+        int node = addNode(CONTROL, parent, pos, pos);
+        pos++;
+        if (keyword != ELSE && keyword != DO && keyword != FINALLY && isOperator(pos, OPEN_PAREN)) {
+            pos++;
+            parseExpression(node, depth + 1, PARENS);
+        }
+        heads[node] = pos;
+        if (isOperator(pos, OPEN_BRACE)) {
+            pos++;
+            parseBlock(node, depth + 1);
+        } else if (keyword != SWITCH && pos < count) {
+            parseStatement(node, depth + 1);
+        }
+        if (keyword == DO && isKeyword(pos, WHILE)) {
+            pos++;
+            if (isOperator(pos, OPEN_PAREN)) {
+                pos++;
+                parseExpression(node, depth + 1, PARENS);
+            }
+            if (isOperator(pos, SEMICOLON)) pos++;
+        }
+        close(node);
+    }
+
+    /**
+     * An expression up to where mode says it ends. Braces inside are lambda bodies
+     * ("-> {"), anonymous class bodies (") {") or array initializers; a switch is a
+     * switch expression.
+     */
+    private void parseExpression(int parent, int depth, int mode) {
+        int nesting = 0;    // ( [ and initializer { opened in the expression
+        while (pos < count) {
+            int t = pos;
+            if (kinds[t] == Lexer.KEYWORD) {
+                if (ids[t] == SWITCH) {
+                    parseControl(parent, depth);
+                    continue;
+                }
+                if (startsType(t)) {
+                    parseType(parent, t, depth);
+                    continue;
+                }
+                if (nesting == 0 && mode == STATEMENT && isControl(t)) return;
+            } else if (startsType(t)) {
+                parseType(parent, t, depth);
+                continue;
+            } else if (kinds[t] == Lexer.OPERATOR) {
+                int id = ids[t];
+                if (id == OPEN_BRACE) {
+                    if (isOperator(t - 1, ARROW) || isOperator(t - 1, CLOSE_PAREN)) {
+                        boolean lambda = isOperator(t - 1, ARROW);
+                        int node = addNode(lambda ? LAMBDA : TYPE, parent, t, -1);
+                        pos++;
+                        if (lambda) parseBlock(node, depth + 1);
+                        else parseMembers(node, false, depth + 1);
+                        close(node);
+                        continue;
+                    }
+                    nesting++;
+                } else if (id == OPEN_PAREN || id == OPEN_BRACKET) {
+                    nesting++;
+                } else if (id == CLOSE_PAREN || id == CLOSE_BRACKET || id == CLOSE_BRACE) {
+                    if (nesting == 0) {
+                        if (mode == PARENS && id == CLOSE_PAREN) pos++;
+                        return;
+                    }
+                    nesting--;
+                } else if (nesting == 0 && mode != PARENS) {
+                    if (id == SEMICOLON) {
+                        if (mode != DECLARATOR) pos++;
+                        return;
+                    }
+                    if (mode == DECLARATOR && id == COMMA) return;
+                    if (mode == LABEL && (id == COLON || id == ARROW)) {
+                        pos++;
+                        return;
+                    }
+                }
+            }
+            pos++;
+        }
+    }
+
+    /** Past deeply nested code without recording it, to after the matching '}'. */
+    private void skipBlock() {
+        int braces = 1;
+        while (pos < count && braces > 0) {
+            if (isOperator(pos, OPEN_BRACE)) braces++;
+            else if (isOperator(pos, CLOSE_BRACE)) braces--;
+            pos++;
+        }
+    }
+
+    /** Past a statement without recording it: to after ';', or to an unmatched '}'. */
+    private void skipStatement() {
+        int braces = 0;
+        while (pos < count) {
+            if (isOperator(pos, OPEN_BRACE)) {
+                braces++;
+            } else if (isOperator(pos, CLOSE_BRACE)) {
+                if (braces == 0) return;
+                if (--braces == 0) {
+                    pos++;
+                    return;
+                }
+            } else if (braces == 0 && isOperator(pos, SEMICOLON)) {
+                pos++;
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /** "@Name", "@a.b.Name" or "@Name(...)". */
+    private void skipAnnotation() {
+        pos += 2;
+        while (isOperator(pos, DOT) && pos + 1 < count && kinds[pos + 1] == Lexer.IDENTIFIER) pos += 2;
+        if (isOperator(pos, OPEN_PAREN)) {
+            int parens = 0;
+            do {
+                if (isOperator(pos, OPEN_PAREN)) parens++;
+                else if (isOperator(pos, CLOSE_PAREN)) parens--;
+                pos++;
+            } while (pos < count && parens > 0);
+        }
+    }
+
+    /** The name before '=', ',' or ';' of a field declaration, skipping "[]". */
+    private void declarator(int type, int first, int t) {
+        int name = t - 1;
+        while (name - 1 > first && isOperator(name, CLOSE_BRACKET) && isOperator(name - 1, OPEN_BRACKET)) name -= 2;
+        if (name > first && kinds[name] == Lexer.IDENTIFIER) addField(type, name);
+    }
+
+    private boolean startsType(int t) {
+        if (kinds[t] == Lexer.KEYWORD) {
+            int id = ids[t];
+            return (id == CLASS || id == INTERFACE || id == ENUM)
+                && !isOperator(t - 1, DOT) && !isOperator(t - 1, METHOD_REFERENCE);
+        }
+        // contextual keyword: "record Name(" or "record Name<"
+        return kinds[t] == Lexer.IDENTIFIER && ends[t] - starts[t] == 6 && src.startsWith(starts[t], ends[t], "record")
+            && t + 2 < count && kinds[t + 1] == Lexer.IDENTIFIER
+            && (isOperator(t + 2, OPEN_PAREN) || isOperator(t + 2, LESS));
+    }
+
+    /** First token of the top-level declaration whose type keyword is at t. */
+    private int firstOfDeclaration(int t) {
+        int first = t;
+        while (first > 0 && kinds[first - 1] == Lexer.KEYWORD) first--;
+        return first;
+    }
+
+    private boolean isControl(int t) {
+        if (kinds[t] != Lexer.KEYWORD) return false;
+        int id = ids[t];
+        return id == IF || id == ELSE || id == FOR || id == WHILE || id == DO || id == SWITCH
+            || id == TRY || id == CATCH || id == FINALLY || id == SYNCHRONIZED;
+    }
+
+    /** Generic angle bracket depth after token t. */
+    private int angle(int t, int angle) {
+        if (isOperator(t, LESS)) return angle + 1;
+        if (isOperator(t, GREATER)) return Math.max(0, angle - 1);
+        if (isOperator(t, SHIFT_RIGHT)) return Math.max(0, angle - 2);
+        if (isOperator(t, SHIFT_RIGHT_UNSIGNED)) return Math.max(0, angle - 3);
+        return angle;
+    }
+
+    private boolean isOperator(int t, int id) {
+        return t >= 0 && t < count && kinds[t] == Lexer.OPERATOR && ids[t] == id;
+    }
+
+    private boolean isKeyword(int t, int id) {
+        return t >= 0 && t < count && kinds[t] == Lexer.KEYWORD && ids[t] == id;
+    }
+
+    private int addNode(byte kind, int parent, int first, int name) {
+        if (nodes == nodeKinds.length) {
+            int capacity = nodes * 2;
+            nodeKinds = Arrays.copyOf(nodeKinds, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            lasts = Arrays.copyOf(lasts, capacity);
+            names = Arrays.copyOf(names, capacity);
+            complexity = Arrays.copyOf(complexity, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            nestings = Arrays.copyOf(nestings, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            cognitive = Arrays.copyOf(cognitive, capacity);
+        }
+        nodeKinds[nodes] = kind;
+        parents[nodes] = parent;
+        firsts[nodes] = first;
+        lasts[nodes] = first;
+        names[nodes] = name;
+        complexity[nodes] = 0;
+        heads[nodes] = first;
+        return nodes++;
+    }
+
+    /** The node ends with the token before pos. */
+    private void close(int node) {
+        lasts[node] = Math.max(firsts[node], Math.min(pos, count) - 1);
+    }
+
+    private void addField(int type, int name) {
+        if (fields == fieldTypes.length) {
+            fieldTypes = Arrays.copyOf(fieldTypes, fields * 2);
+            fieldNames = Arrays.copyOf(fieldNames, fields * 2);
+        }
+        flags[name] |= DECLARED;
+        fieldTypes[fields] = type;
+        fieldNames[fields++] = name;
+    }
+
+    // ---- Metrics ----
+
+    /**
+     * Method and class metrics from the parsed nodes:
+     * - method complexity: 1 + the decision points in the method, not counting
+     *   those of methods nested in it (anonymous and local classes); lambdas
+     *   count for the method they are in. Max and average over methods with a
+     *   body, which are also the rows of the MethodTable.
+     * - cognitive complexity of the file and of each method (see resolveCognitive).
+     * - longest method and largest class, in lines from the first modifier to '}'.
+     * - coupling: distinct type names the file refers to (capitalized names
+     *   outside imports, annotations and qualified names, not declared in the file).
+     * - cohesion: Henderson-Sellers LCOM* of the least cohesive class with at
+     *   least two methods and a field, 0 (cohesive) to 1, more if fields are unused.
+     */
+    void store(AdvancedMetrics metrics) {
+        resolveMethods();
+        metrics.setCognitiveComplexity(resolveCognitive());
+        int max = 0;
+        int total = 0;
+        int bodies = 0;
+        int longest = 0;
+        int largest = 0;
+        MethodTable methods = null;
+        for (int k = 0; k < nodes; k++) {
+            int length = lines[lasts[k]] - lines[firsts[k]] + 1;
+            if (nodeKinds[k] == METHOD) {
+                longest = Math.max(longest, length);
+                if (complexity[k] > 0) {
+                    max = Math.max(max, complexity[k]);
+                    total += complexity[k];
+                    bodies++;
+                    if (methods == null) methods = new MethodTable();
+                    int name = names[k];
+                    int row = methods.add(src.substring(starts[name], ends[name]), lines[firsts[k]] + 1, lines[lasts[k]] + 1, complexity[k]);
+                    methods.setCognitiveComplexity(row, cognitive[k]);
+                }
+            } else if (nodeKinds[k] == TYPE) {
+                largest = Math.max(largest, length);
+            }
+        }
+        metrics.setMaxMethodComplexity(max);
+        metrics.setAvgMethodComplexity(bodies > 0 ? total / bodies : 0);
+        metrics.setLongestMethodLines(longest);
+        metrics.setLargestClassLines(largest);
+        metrics.setMethods(methods);
+        metrics.setCoupling(coupling());
+        metrics.setCohesion(lackOfCohesion());
+    }
+
+    /**
+     * Sweeps the tokens with a stack of the methods they are in: adds decision
+     * points to the innermost method's complexity and counts, per field, the
+     * methods of its class that use it ("name" or "this.name", not "x.name" or a
+     * call "name(...)") into users.
+     */
+    private void resolveMethods() {
+        fieldTable.clear();
+        for (int f = 0; f < fields; f++) {
+            int name = fieldNames[f];
+            fieldTable.add(src, fieldTypes[f], starts[name], ends[name] - starts[name], hashOf(name));
+        }
+        int entries = fieldTable.size();
+        if (users.length < entries) {
+            users = new int[entries * 2];
+            lastUser = new int[entries * 2];
+        }
+        Arrays.fill(users, 0, entries, 0);
+        Arrays.fill(lastUser, 0, entries, -1);
+
+        int depth = 0;
+        int next = 0;
+        for (int t = 0; t < count; t++) {
+            while (next < nodes && firsts[next] <= t) {
+                if (nodeKinds[next] == METHOD) {
+                    while (depth > 0 && lasts[stack[depth - 1]] < firsts[next]) depth--;
+                    if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+                    stack[depth++] = next;
+                }
+                next++;
+            }
+            while (depth > 0 && lasts[stack[depth - 1]] < t) depth--;
+            if (depth == 0) continue;
+            int method = stack[depth - 1];
+            if ((flags[t] & DECISION) != 0 && complexity[method] > 0) complexity[method]++;
+            if (kinds[t] == Lexer.IDENTIFIER && (flags[t] & DECLARED) == 0 && !isOperator(t + 1, OPEN_PAREN)
+                    && (!isOperator(t - 1, DOT) || isKeyword(t - 2, THIS))) {
+                int f = fieldTable.find(src, parents[method], starts[t], ends[t] - starts[t], hashOf(t));
+                if (f >= 0 && lastUser[f] != method) {
+                    lastUser[f] = method;
+                    users[f]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cognitive complexity (Campbell, SonarSource) from the nodes. if, for, while,
+     * do, switch, catch and the conditional '?' add 1 plus their nesting; else and
+     * "else if" add 1. Their bodies, lambdas and methods nested in code are one
+     * level deeper, and a method body starts at 0; try, finally, synchronized,
+     * blocks and types do not nest. Each run of the same && or || operator (runs
+     * end at parentheses, commas, assignments and statement ends) and each break
+     * or continue to a label add 1. Increments count for the file and for the
+     * innermost method they are in; returns the file's total.
+     */
+    private int resolveCognitive() {
+        int total = 0;
+        for (int k = 0; k < nodes; k++) {
+            int parent = parents[k];
+            int outer = parent >= 0 ? nesting(parent, firsts[k]) : 0;
+            int owner = parent >= 0 ? owners[parent] : -1;
+            int increment = 0;
+            cognitive[k] = 0;
+            if (nodeKinds[k] == METHOD) {
+                nestings[k] = owner >= 0 ? outer + 1 : 0;
+                owner = k;
+            } else if (nodeKinds[k] == LAMBDA) {
+                nestings[k] = outer + 1;
+            } else if (nodeKinds[k] == CONTROL) {
+                int keyword = ids[firsts[k]];
+                boolean elseIf = keyword == IF && parent >= 0 && nodeKinds[parent] == CONTROL
+                    && firsts[parent] == firsts[k] - 1 && isKeyword(firsts[parent], ELSE);
+                if (elseIf || keyword == TRY || keyword == FINALLY || keyword == SYNCHRONIZED) {
+                    nestings[k] = outer; // the else already counted and nested
+                } else {
+                    increment = keyword == ELSE ? 1 : 1 + outer;
+                    nestings[k] = outer + 1;
+                }
+            } else {
+                nestings[k] = outer;
+            }
+            owners[k] = owner;
+            total += increment;
+            if (owner >= 0) cognitive[owner] += increment;
+        }
+
+        int depth = 0;
+        int next = 0;
+        int run = -1;   // && or || of the current run
+        for (int t = 0; t < count; t++) {
+            while (next < nodes && firsts[next] <= t) {
+                while (depth > 0 && lasts[stack[depth - 1]] < firsts[next]) depth--;
+                if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = next++;
+            }
+            while (depth > 0 && lasts[stack[depth - 1]] < t) depth--;
+            int node = depth > 0 ? stack[depth - 1] : -1;
+            int increment = 0;
+            if (kinds[t] == Lexer.OPERATOR) {
+                int id = ids[t];
+                if (id == AND || id == OR) {
+                    if (id != run) increment = 1;
+                    run = id;
+                } else if (id == OPEN_PAREN || id == CLOSE_PAREN || id == SEMICOLON || id == OPEN_BRACE
+                        || id == CLOSE_BRACE || id == COMMA || id == ASSIGN || id == QUESTION || id == COLON || id == ARROW) {
+                    run = -1;
+                }
+                if (id == QUESTION && (flags[t] & DECISION) != 0) increment = 1 + (node >= 0 ? nesting(node, t) : 0);
+            } else if ((isKeyword(t, BREAK) || isKeyword(t, CONTINUE)) && t + 1 < count && kinds[t + 1] == Lexer.IDENTIFIER) {
+                increment = 1;
+            }
+            if (increment == 0) continue;
+            total += increment;
+            int owner = node >= 0 ? owners[node] : -1;
+            if (owner >= 0) cognitive[owner] += increment;
+        }
+        return total;
+    }
+
+    /** Cognitive nesting at token t of node k: a control statement's header is still outside it. */
+    private int nesting(int k, int t) {
+        if (nodeKinds[k] != CONTROL || t >= heads[k]) return nestings[k];
+        return parents[k] >= 0 ? nesting(parents[k], firsts[k]) : 0;
+    }
+
+    private int coupling() {
+        typeTable.clear();
+        for (int k = 0; k < nodes; k++) {
+            int name = names[k];
+            if (nodeKinds[k] == TYPE && name >= 0) typeTable.add(src, 0, starts[name], ends[name] - starts[name], hashOf(name));
+        }
+        int declared = typeTable.size();
+        for (int t = 0; t < count; t++) {
+            if (isKeyword(t, IMPORT) || isKeyword(t, PACKAGE)) {
+                while (t + 1 < count && !isOperator(t + 1, SEMICOLON)) t++;
+            } else if (kinds[t] == Lexer.IDENTIFIER && (flags[t] & DECLARED) == 0 && isTypeName(t)
+                    && !isOperator(t - 1, DOT) && !isOperator(t - 1, AT)) {
+                int length = ends[t] - starts[t];
+                int hash = hashOf(t);
+                if (typeTable.find(src, 0, starts[t], length, hash) < 0) typeTable.add(src, 1, starts[t], length, hash);
+            }
+        }
+        return typeTable.size() - declared;
+    }
+
+    /** Starts with an upper-case letter and is not all capitals (constants, type variables). */
+    private boolean isTypeName(int t) {
+        char c = src.charAt(starts[t]);
+        if (c < 'A' || c > 'Z') return false;
+        for (int i = starts[t] + 1; i < ends[t]; i++) {
+            char d = src.charAt(i);
+            if (d >= 'a' && d <= 'z') return true;
+        }
+        return false;
+    }
+
+    private double lackOfCohesion() {
+        double worst = 0;
+        for (int k = 0; k < nodes; k++) {
+            if (nodeKinds[k] != TYPE) continue;
+            int methods = 0;
+            for (int m = k + 1; m < nodes && firsts[m] <= lasts[k]; m++) {
+                if (nodeKinds[m] == METHOD && parents[m] == k && complexity[m] > 0) methods++;
+            }
+            int typeFields = 0;
+            int sum = 0;
+            for (int f = 0, entries = fieldTable.size(); f < entries; f++) {
+                if (fieldTable.group(f) != k) continue;
+                typeFields++;
+                sum += users[f];
+            }
+            if (methods < 2 || typeFields == 0) continue;
+            double lcom = ((double) sum / typeFields - methods) / (1 - methods);
+            worst = Math.max(worst, lcom);
+        }
+        return worst;
+    }
+
+    private int hashOf(int t) {
+        return RangeTable.hash(src, starts[t], ends[t]);
+    }
+
+    private static int keyword(String word) {
+        int id = KEYWORDS.indexOf(word);
+        if (id < 0) throw new IllegalStateException("not a Java keyword: " + word);
+        return id;
+    }
+
+    private static int operator(String op) {
+        int id = OPERATORS.indexOf(op);
+        if (id < 0) throw new IllegalStateException("not a Java operator: " + op);
+        return id;
+    }
+}
@@ -2,13 +2,14 @@ package utils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple extension-based language detector and heuristic registry.
  */
 public class LanguageDetector {
 
-    private static final Map<String, LanguageHeuristic> registry = new HashMap<>();
+    private static final Map<String, LanguageHeuristic> registry = new ConcurrentHashMap<>();
 
     static {
         // Register known heuristics
@@ -18,31 +19,44 @@ public class LanguageDetector {
         LanguageHeuristic python = new PythonHeuristic();
         registry.put("py", python);
 
-        LanguageHeuristic js = new JavaScriptHeuristic();
-        registry.put("js", js);
-        registry.put("jsx", js);
-        registry.put("mjs", js);
-        registry.put("ts", js);
+        registry.put("java", new JavaHeuristic());
+
+        // Languages described by lexer tables
+        register(LanguageSpec.javaScript(), "js", "jsx", "mjs", "ts");
+        register(LanguageSpec.c(), "c", "h");
+        register(LanguageSpec.go(), "go");
+        register(LanguageSpec.rust(), "rs");
+        register(LanguageSpec.kotlin(), "kt", "kts");
 
         // Common textual files fall back to generic
         registry.put("txt", generic);
         registry.put("md", generic);
         registry.put("html", generic);
         registry.put("xml", generic);
-        registry.put("c", generic);
         registry.put("cpp", generic);
-        registry.put("h", generic);
         registry.put("hpp", generic);
         registry.put("sh", generic);
         registry.put("rb", generic);
         registry.put("php", generic);
-        registry.put("go", generic);
-        registry.put("kt", generic);
-        registry.put("rs", generic);
+    }
+
+    /**
+     * Analyze files with these extensions (without the dot) through a Lexer built
+     * from spec, replacing any heuristic registered for them.
+     */
+    public static void register(LanguageSpec spec, String... extensions) {
+        LanguageHeuristic heuristic = new LexerHeuristic(spec);
+        for (String ext : extensions) registry.put(ext.toLowerCase(Locale.ROOT), heuristic);
     }
 
     public static LanguageHeuristic getHeuristicForFile(File file) {
-        String name = file.getName();
+        return getHeuristicForName(file.getName());
+    }
+
+    /**
+     * Lookup by file name, for content that has no File (archive entries).
+     */
+    public static LanguageHeuristic getHeuristicForName(String name) {
         int idx = name.lastIndexOf('.');
         if (idx < 0) return registry.get("default");
         String ext = name.substring(idx + 1).toLowerCase(Locale.ROOT);
@@ -0,0 +1,304 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tables that describe a language to the Lexer and LexerHeuristic: comment
+ * delimiters, string and character literal rules, keywords and operators, and
+ * which of them count as branches, function or type declarations.
+ *
+ * Adding a language is a matter of filling one of these (see the factory methods
+ * below) and registering it in LanguageDetector; no scanning code is written
+ * per language.
+ */
+public class LanguageSpec {
+
+    /**
+     * A string literal form: opening and closing delimiter, the escape char
+     * (0 for raw strings) and whether it may span lines.
+     */
+    public static final class StringRule {
+        final String open;
+        final String close;
+        final char escape;
+        final boolean multiline;
+
+        public StringRule(String open, String close, char escape, boolean multiline) {
+            this.open = open;
+            this.close = close;
+            this.escape = escape;
+            this.multiline = multiline;
+        }
+    }
+
+    private final String name;
+    private String[] lineComments = {};
+    private String blockCommentOpen;
+    private String blockCommentClose;
+    private boolean nestedBlockComments;
+    private final List<StringRule> strings = new ArrayList<>();
+    private char charQuote;
+    private String identifierChars = "_";
+    private String[] keywords = {};
+    private String[] operators = {};
+    private String[] branchKeywords = {};
+    private String[] branchOperators = {};
+    private String[] functionKeywords = {};
+    private String[] functionOperators = {};
+    private String[] typeKeywords = {};
+    private boolean typeNeedsBody;
+    private boolean functionBodies;
+    private boolean regexLiterals;
+
+    public LanguageSpec(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public String[] getLineComments() { return lineComments; }
+    public void setLineComments(String... lineComments) { this.lineComments = lineComments; }
+
+    public String getBlockCommentOpen() { return blockCommentOpen; }
+    public String getBlockCommentClose() { return blockCommentClose; }
+    public boolean isNestedBlockComments() { return nestedBlockComments; }
+    public void setBlockComment(String open, String close, boolean nested) {
+        this.blockCommentOpen = open;
+        this.blockCommentClose = close;
+        this.nestedBlockComments = nested;
+    }
+
+    public List<StringRule> getStrings() { return strings; }
+    public void addString(String open, String close, char escape, boolean multiline) {
+        strings.add(new StringRule(open, close, escape, multiline));
+    }
+
+    /**
+     * Quote of character literals ('a', '\n'); a quote that does not close such a
+     * literal (a Rust lifetime, say) is an ordinary token. 0 if none.
+     */
+    public char getCharQuote() { return charQuote; }
+    public void setCharQuote(char charQuote) { this.charQuote = charQuote; }
+
+    /** Non-alphanumeric ASCII chars allowed in identifiers. */
+    public String getIdentifierChars() { return identifierChars; }
+    public void setIdentifierChars(String identifierChars) { this.identifierChars = identifierChars; }
+
+    public String[] getKeywords() { return keywords; }
+    public void setKeywords(String... keywords) { this.keywords = keywords; }
+
+    public String[] getOperators() { return operators; }
+    public void setOperators(String... operators) { this.operators = operators; }
+
+    /** Keywords that add a decision point to cyclomatic complexity. */
+    public String[] getBranchKeywords() { return branchKeywords; }
+    public void setBranchKeywords(String... branchKeywords) { this.branchKeywords = branchKeywords; }
+
+    /** Operators that add a decision point (&&, ||, ?). */
+    public String[] getBranchOperators() { return branchOperators; }
+    public void setBranchOperators(String... branchOperators) { this.branchOperators = branchOperators; }
+
+    /**
+     * Keywords that declare a function; one directly followed by '(' is an
+     * anonymous function and not counted.
+     */
+    public String[] getFunctionKeywords() { return functionKeywords; }
+    public void setFunctionKeywords(String... functionKeywords) { this.functionKeywords = functionKeywords; }
+
+    /** Operators that introduce a function (JavaScript's =>). */
+    public String[] getFunctionOperators() { return functionOperators; }
+    public void setFunctionOperators(String... functionOperators) { this.functionOperators = functionOperators; }
+
+    /** Keywords that declare a type when followed by its name. */
+    public String[] getTypeKeywords() { return typeKeywords; }
+    public void setTypeKeywords(String... typeKeywords) { this.typeKeywords = typeKeywords; }
+
+    /** Only count a type keyword and name that are followed by a '{' body (C's struct uses). */
+    public boolean isTypeNeedsBody() { return typeNeedsBody; }
+    public void setTypeNeedsBody(boolean typeNeedsBody) { this.typeNeedsBody = typeNeedsBody; }
+
+    /** Count a top-level '{' right after ')' as a function body, for languages without a function keyword. */
+    public boolean isFunctionBodies() { return functionBodies; }
+    public void setFunctionBodies(boolean functionBodies) { this.functionBodies = functionBodies; }
+
+    /**
+     * '/' starts a regular expression literal (/a[/]b/g) wherever a value may
+     * start: not after an identifier, a number, ')' or ']'.
+     */
+    public boolean isRegexLiterals() { return regexLiterals; }
+    public void setRegexLiterals(boolean regexLiterals) { this.regexLiterals = regexLiterals; }
+
+    // ---------------------------------------------------------------- languages
+
+    /**
+     * Java, for JavaHeuristic: methods have no keyword, so it finds them from
+     * the tokens around type bodies instead of through function keywords.
+     */
+    public static LanguageSpec java() {
+        LanguageSpec s = new LanguageSpec("java");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", false);
+        s.addString("\"\"\"", "\"\"\"", '\\', true);
+        s.addString("\"", "\"", '\\', false);
+        s.setCharQuote('\'');
+        s.setIdentifierChars("_$");
+        s.setKeywords("abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally",
+            "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long",
+            "native", "new", "package", "private", "protected", "public", "return", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try",
+            "void", "volatile", "while");
+        s.setOperators("=", ">", "<", "!", "~", "?", ":", "->", "==", ">=", "<=", "!=", "&&", "||",
+            "++", "--", "+", "-", "*", "/", "&", "|", "^", "%", "<<", ">>", ">>>", "+=", "-=", "*=",
+            "/=", "&=", "|=", "^=", "%=", "<<=", ">>=", ">>>=", "(", ")", "{", "}", "[", "]", ";",
+            ",", ".", "...", "@", "::");
+        s.setBranchKeywords("if", "for", "while", "case", "catch");
+        // '?' is a branch unless it is a wildcard; JavaHeuristic decides
+        s.setBranchOperators("&&", "||");
+        s.setTypeKeywords("class", "interface", "enum");
+        return s;
+    }
+
+    /**
+     * Python, for PythonHeuristic: blocks are found from indentation there, so
+     * only the keywords and brackets are described here. String prefixes (r, b,
+     * f) lex as identifiers in front of the string; match and case are soft
+     * keywords, identifiers to the lexer.
+     */
+    public static LanguageSpec python() {
+        LanguageSpec s = new LanguageSpec("python");
+        s.setLineComments("#");
+        s.addString("\"\"\"", "\"\"\"", '\\', true);
+        s.addString("'''", "'''", '\\', true);
+        s.addString("\"", "\"", '\\', false);
+        s.addString("'", "'", '\\', false);
+        s.setKeywords("False", "None", "True", "and", "as", "assert", "async", "await", "break", "class",
+            "continue", "def", "del", "elif", "else", "except", "finally", "for", "from", "global", "if",
+            "import", "in", "is", "lambda", "nonlocal", "not", "or", "pass", "raise", "return", "try",
+            "while", "with", "yield");
+        s.setOperators("+", "-", "*", "/", "//", "%", "**", "<<", ">>", "&", "|", "^", "~", "<", ">",
+            "<=", ">=", "==", "!=", "=", "+=", "-=", "*=", "/=", "//=", "%=", "**=", ">>=", "<<=", "&=",
+            "|=", "^=", "@", "@=", ":=", "->", "(", ")", "[", "]", "{", "}", ",", ":", ".", ";", "...");
+        s.setBranchKeywords("if", "elif", "for", "while", "except", "with", "and", "or");
+        s.setFunctionKeywords("def");
+        s.setTypeKeywords("class");
+        return s;
+    }
+
+    public static LanguageSpec c() {
+        LanguageSpec s = new LanguageSpec("c");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", false);
+        s.addString("\"", "\"", '\\', false);
+        s.setCharQuote('\'');
+        s.setKeywords("auto", "break", "case", "char", "const", "continue", "default", "do", "double",
+            "else", "enum", "extern", "float", "for", "goto", "if", "inline", "int", "long", "register",
+            "restrict", "return", "short", "signed", "sizeof", "static", "struct", "switch", "typedef",
+            "union", "unsigned", "void", "volatile", "while");
+        s.setOperators("+", "-", "*", "/", "%", "=", "==", "!=", "<", ">", "<=", ">=", "&&", "||",
+            "!", "&", "|", "^", "~", "<<", ">>", "++", "--", "+=", "-=", "*=", "/=", "%=", "&=", "|=",
+            "^=", "<<=", ">>=", "?", ":", ".", ",", ";", "(", ")", "[", "]", "{", "}", "->", "...");
+        s.setBranchKeywords("if", "for", "while", "case");
+        s.setBranchOperators("&&", "||", "?");
+        s.setTypeKeywords("struct", "union", "enum");
+        s.setTypeNeedsBody(true);
+        s.setFunctionBodies(true);
+        return s;
+    }
+
+    public static LanguageSpec go() {
+        LanguageSpec s = new LanguageSpec("go");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", false);
+        s.addString("\"", "\"", '\\', false);
+        s.addString("`", "`", (char) 0, true);
+        s.setCharQuote('\'');
+        s.setKeywords("break", "case", "chan", "const", "continue", "default", "defer", "else",
+            "fallthrough", "for", "func", "go", "goto", "if", "import", "interface", "map", "package",
+            "range", "return", "select", "struct", "switch", "type", "var");
+        s.setOperators("+", "-", "*", "/", "%", "&", "|", "^", "<<", ">>", "&^", "+=", "-=", "*=",
+            "/=", "%=", "&=", "|=", "^=", "<<=", ">>=", "&^=", "&&", "||", "<-", "++", "--", "==",
+            "<", ">", "=", "!", "~", "!=", "<=", ">=", ":=", "...", "(", ")", "[", "]", "{", "}",
+            ",", ";", ".", ":");
+        s.setBranchKeywords("if", "for", "case");
+        s.setBranchOperators("&&", "||");
+        s.setFunctionKeywords("func");
+        s.setTypeKeywords("type");
+        return s;
+    }
+
+    public static LanguageSpec rust() {
+        LanguageSpec s = new LanguageSpec("rust");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", true);
+        s.addString("\"", "\"", '\\', true);
+        s.addString("b\"", "\"", '\\', true);
+        s.addString("r\"", "\"", (char) 0, true);
+        s.addString("r#\"", "\"#", (char) 0, true);
+        s.addString("r##\"", "\"##", (char) 0, true);
+        s.addString("br\"", "\"", (char) 0, true);
+        s.addString("br#\"", "\"#", (char) 0, true);
+        s.setCharQuote('\'');
+        s.setKeywords("as", "async", "await", "break", "const", "continue", "crate", "dyn", "else",
+            "enum", "extern", "false", "fn", "for", "if", "impl", "in", "let", "loop", "match", "mod",
+            "move", "mut", "pub", "ref", "return", "self", "Self", "static", "struct", "super", "trait",
+            "true", "type", "union", "unsafe", "use", "where", "while");
+        s.setOperators("+", "-", "*", "/", "%", "^", "!", "&", "|", "&&", "||", "<<", ">>", "+=",
+            "-=", "*=", "/=", "%=", "^=", "&=", "|=", "<<=", ">>=", "=", "==", "!=", ">", "<", ">=",
+            "<=", "@", ".", "..", "...", "..=", ",", ";", ":", "::", "->", "=>", "#", "$", "?", "(",
+            ")", "[", "]", "{", "}");
+        s.setBranchKeywords("if", "for", "while");
+        // each match arm is a branch
+        s.setBranchOperators("&&", "||", "=>");
+        s.setFunctionKeywords("fn");
+        s.setTypeKeywords("struct", "enum", "trait", "union");
+        return s;
+    }
+
+    public static LanguageSpec kotlin() {
+        LanguageSpec s = new LanguageSpec("kotlin");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", true);
+        s.addString("\"\"\"", "\"\"\"", (char) 0, true);
+        s.addString("\"", "\"", '\\', false);
+        s.setCharQuote('\'');
+        s.setKeywords("as", "break", "catch", "class", "continue", "do", "else", "false", "finally",
+            "for", "fun", "if", "in", "interface", "is", "null", "object", "package", "return", "super",
+            "this", "throw", "true", "try", "typealias", "typeof", "val", "var", "when", "while");
+        s.setOperators("+", "-", "*", "/", "%", "=", "+=", "-=", "*=", "/=", "%=", "++", "--", "&&",
+            "||", "!", "==", "!=", "===", "!==", "<", ">", "<=", ">=", "[", "]", "!!", "?.", "?:",
+            "::", "..", "..<", ":", "?", "->", "@", ";", ",", ".", "(", ")", "{", "}", "&", "|");
+        s.setBranchKeywords("if", "for", "while", "catch");
+        s.setBranchOperators("&&", "||", "?:");
+        s.setFunctionKeywords("fun");
+        s.setTypeKeywords("class", "interface", "object");
+        return s;
+    }
+
+    public static LanguageSpec javaScript() {
+        LanguageSpec s = new LanguageSpec("javascript");
+        s.setLineComments("//");
+        s.setBlockComment("/*", "*/", false);
+        s.addString("\"", "\"", '\\', false);
+        s.addString("'", "'", '\\', false);
+        s.addString("`", "`", '\\', true);
+        s.setRegexLiterals(true);
+        s.setIdentifierChars("_$");
+        s.setKeywords("async", "await", "break", "case", "catch", "class", "const", "continue",
+            "debugger", "default", "delete", "do", "else", "export", "extends", "false", "finally",
+            "for", "function", "if", "import", "in", "instanceof", "interface", "let", "new", "null",
+            "return", "super", "switch", "this", "throw", "true", "try", "type", "typeof", "var",
+            "void", "while", "with", "yield");
+        s.setOperators("+", "-", "*", "/", "%", "**", "=", "==", "===", "!=", "!==", "<", ">", "<=",
+            ">=", "&&", "||", "??", "!", "&", "|", "^", "~", "<<", ">>", ">>>", "++", "--", "+=",
+            "-=", "*=", "/=", "%=", "**=", "&=", "|=", "^=", "<<=", ">>=", ">>>=", "&&=", "||=",
+            "??=", "?", "?.", ":", "=>", ".", "...", ",", ";", "(", ")", "[", "]", "{", "}", "@", "#");
+        s.setBranchKeywords("if", "for", "while", "case", "catch");
+        s.setBranchOperators("&&", "||", "??", "?");
+        s.setFunctionKeywords("function");
+        s.setFunctionOperators("=>");
+        s.setTypeKeywords("class", "interface");
+        return s;
+    }
+}
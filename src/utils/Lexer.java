@@ -0,0 +1,327 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * A LanguageSpec compiled into lookup tables: a char-class table, one trie for
+ * every delimiter that opens a comment or string, and tries for keywords and
+ * operators. scanLine() is the state machine; it lexes one line at a time so it
+ * can run inside a MetricsPass, carrying open block comments and multi-line
+ * strings across lines in a State, and reports tokens as char ranges to a sink.
+ * Regular expression literals (JavaScript) are reported as STRING tokens.
+ *
+ * A Lexer is immutable and shared by all files of its language.
+ */
+public final class Lexer {
+
+    // Token kinds
+    public static final int KEYWORD = 1;
+    public static final int IDENTIFIER = 2;
+    public static final int NUMBER = 3;
+    public static final int STRING = 4;
+    /** An operator; id -1 for chars that are none of the language's operators. */
+    public static final int OPERATOR = 5;
+
+    // scanLine() result flags
+    public static final int HAS_CODE = 1;
+    public static final int HAS_COMMENT = 2;
+
+    /**
+     * Receives the tokens of a line in order; id is the index in the spec's keyword
+     * or operator list, -1 for other kinds.
+     */
+    public interface TokenSink {
+        void token(int kind, int id, int start, int end);
+    }
+
+    /**
+     * Where the lexer is between lines of one file.
+     */
+    public static final class State {
+        private int mode = CODE;
+        private int depth;          // block comment nesting
+        private int rule;           // StringRule of an open string
+        private boolean afterValue; // the last token ends a value: '/' divides
+
+        /** In a block comment or multi-line string carried over from a previous line. */
+        public boolean continues() {
+            return mode != CODE;
+        }
+    }
+
+    private static final int CODE = 0;
+    private static final int BLOCK_COMMENT = 1;
+    private static final int IN_STRING = 2;
+
+    // Char classes (ASCII); chars >= 128 are identifier chars if they are letters
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte IDENT = 2;
+    private static final byte DIGIT = 3;
+
+    // Delimiter kinds, for delimiter id d: kinds[d]
+    private static final int LINE_COMMENT = -1;
+    private static final int BLOCK_OPEN = -2;
+    // >= 0: opens strings.get(kind)
+
+    private final LanguageSpec spec;
+    private final byte[] charClass = new byte[128];
+    private final boolean[] opensDelimiter = new boolean[128];
+    private final CharTrie delimiters;
+    private final int[] delimiterKinds;
+    private final LanguageSpec.StringRule[] strings;
+    private final CharTrie keywords;
+    private final CharTrie operators;
+    private final String blockClose;
+    private final String blockOpen;
+    private final int closeParen;
+    private final int closeBracket;
+
+    public Lexer(LanguageSpec spec) {
+        this.spec = spec;
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) charClass[c] = SPACE;
+            else if (Character.isLetter(c)) charClass[c] = IDENT;
+            else if (c >= '0' && c <= '9') charClass[c] = DIGIT;
+        }
+        for (char c : spec.getIdentifierChars().toCharArray()) charClass[c] = IDENT;
+
+        List<LanguageSpec.StringRule> rules = spec.getStrings();
+        strings = rules.toArray(new LanguageSpec.StringRule[0]);
+        String[] lineComments = spec.getLineComments();
+        blockOpen = spec.getBlockCommentOpen();
+        blockClose = spec.getBlockCommentClose();
+        int count = lineComments.length + (blockOpen != null ? 1 : 0) + strings.length;
+        String[] opens = new String[count];
+        delimiterKinds = new int[count];
+        int d = 0;
+        for (String lc : lineComments) {
+            delimiterKinds[d] = LINE_COMMENT;
+            opens[d++] = lc;
+        }
+        if (blockOpen != null) {
+            delimiterKinds[d] = BLOCK_OPEN;
+            opens[d++] = blockOpen;
+        }
+        for (int r = 0; r < strings.length; r++) {
+            delimiterKinds[d] = r;
+            opens[d++] = strings[r].open;
+        }
+        for (String open : opens) opensDelimiter[open.charAt(0)] = true;
+        delimiters = new CharTrie(opens);
+        keywords = new CharTrie(spec.getKeywords());
+        operators = new CharTrie(spec.getOperators());
+        List<String> ops = java.util.Arrays.asList(spec.getOperators());
+        closeParen = ops.indexOf(")");
+        closeBracket = ops.indexOf("]");
+    }
+
+    public LanguageSpec getSpec() { return spec; }
+
+    /**
+     * Lex [start, end), one line without its line break, continuing from state.
+     * Returns HAS_CODE if the line has any token (string contents included) and
+     * HAS_COMMENT if it has comment text.
+     */
+    public int scanLine(SourceBuffer src, int start, int end, State state, TokenSink sink) {
+        int flags = 0;
+        int i = start;
+        while (i < end) {
+            if (state.mode == BLOCK_COMMENT) {
+                flags |= HAS_COMMENT;
+                i = skipComment(src, i, end, state);
+                continue;
+            }
+            if (state.mode == IN_STRING) {
+                flags |= HAS_CODE;
+                int close = closeString(src, i, end, strings[state.rule], state);
+                token(sink, state, STRING, -1, i, close);
+                i = close;
+                continue;
+            }
+
+            char c = src.charAt(i);
+            if (c == '/' && spec.isRegexLiterals() && !state.afterValue) {
+                int close = regexLiteral(src, i, end);
+                if (close > 0) {
+                    flags |= HAS_CODE;
+                    token(sink, state, STRING, -1, i, close);
+                    i = close;
+                    continue;
+                }
+            }
+            byte cls = c < 128 ? charClass[c] : Character.isLetter(c) ? IDENT : Character.isWhitespace(c) ? SPACE : OTHER;
+            if (cls == SPACE) {
+                i++;
+                continue;
+            }
+            if (c < 128 && opensDelimiter[c]) {
+                int match = delimiters.longest(src, i, end);
+                if (match >= 0) {
+                    int kind = delimiterKinds[CharTrie.id(match)];
+                    int length = CharTrie.length(match);
+                    if (kind == LINE_COMMENT) {
+                        flags |= HAS_COMMENT;
+                        break;
+                    }
+                    if (kind == BLOCK_OPEN) {
+                        state.mode = BLOCK_COMMENT;
+                        state.depth = 1;
+                        i += length;
+                        continue;
+                    }
+                    flags |= HAS_CODE;
+                    state.mode = IN_STRING;
+                    state.rule = kind;
+                    int close = closeString(src, i + length, end, strings[kind], state);
+                    token(sink, state, STRING, -1, i, close);
+                    i = close;
+                    continue;
+                }
+            }
+
+            flags |= HAS_CODE;
+            int tokenStart = i;
+            if (c == spec.getCharQuote() && c != 0) {
+                int length = charLiteral(src, i, end);
+                if (length > 0) {
+                    token(sink, state, STRING, -1, i, i + length);
+                    i += length;
+                    continue;
+                }
+            }
+            if (cls == IDENT) {
+                i++;
+                while (i < end && isIdentifierPart(src.charAt(i))) i++;
+                int id = keywords.exact(src, tokenStart, i);
+                token(sink, state, id >= 0 ? KEYWORD : IDENTIFIER, id, tokenStart, i);
+            } else if (cls == DIGIT) {
+                // 0x1F, 1_000u32, 1.5e3f: digits, letters, '_' and a '.' before a digit
+                i++;
+                while (i < end) {
+                    char d = src.charAt(i);
+                    if (isIdentifierPart(d) || (d == '.' && i + 1 < end && isDigit(src.charAt(i + 1)))) i++;
+                    else break;
+                }
+                token(sink, state, NUMBER, -1, tokenStart, i);
+            } else {
+                int match = operators.longest(src, i, end);
+                if (match >= 0) {
+                    i += CharTrie.length(match);
+                    token(sink, state, OPERATOR, CharTrie.id(match), tokenStart, i);
+                } else {
+                    i++;
+                    token(sink, state, OPERATOR, -1, tokenStart, i);
+                }
+            }
+        }
+        // Single-line strings end with the line, closed or not
+        if (state.mode == IN_STRING && !strings[state.rule].multiline) state.mode = CODE;
+        return flags;
+    }
+
+    private void token(TokenSink sink, State state, int kind, int id, int start, int end) {
+        sink.token(kind, id, start, end);
+        state.afterValue = kind == IDENTIFIER || kind == NUMBER
+            || (kind == OPERATOR && id >= 0 && (id == closeParen || id == closeBracket));
+    }
+
+    /**
+     * Position after the regular expression literal starting with the '/' at i
+     * (its flags included), or 0 if there is none: "//" and "/*" open comments,
+     * and a literal closes on its line. '/' inside [...] or escaped does not close.
+     */
+    private int regexLiteral(SourceBuffer src, int i, int end) {
+        if (i + 1 >= end || src.charAt(i + 1) == '/' || src.charAt(i + 1) == '*') return 0;
+        boolean inClass = false;
+        for (int k = i + 1; k < end; k++) {
+            char c = src.charAt(k);
+            if (c == '\\') {
+                k++;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                k++;
+                while (k < end && isIdentifierPart(src.charAt(k))) k++;
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Skip comment text from i; returns the position after the comment's close,
+     * or end if it continues on the next line.
+     */
+    private int skipComment(SourceBuffer src, int i, int end, State state) {
+        boolean nested = spec.isNestedBlockComments();
+        while (i < end) {
+            if (src.startsWith(i, end, blockClose)) {
+                i += blockClose.length();
+                if (--state.depth == 0) {
+                    state.mode = CODE;
+                    return i;
+                }
+            } else if (nested && src.startsWith(i, end, blockOpen)) {
+                i += blockOpen.length();
+                state.depth++;
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Position after the string's closing delimiter, or end if it does not close
+     * on this line.
+     */
+    private static int closeString(SourceBuffer src, int i, int end, LanguageSpec.StringRule rule, State state) {
+        while (i < end) {
+            char c = src.charAt(i);
+            if (c == rule.escape && rule.escape != 0) {
+                i += 2;
+            } else if (src.startsWith(i, end, rule.close)) {
+                state.mode = CODE;
+                return i + rule.close.length();
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Length of the character literal at i ('a', '\n', '\x41'), or 0 if the
+     * quote does not start one.
+     */
+    private static int charLiteral(SourceBuffer src, int i, int end) {
+        char q = src.charAt(i);
+        if (i + 2 >= end) return 0;
+        char c = src.charAt(i + 1);
+        if (c == '\\') {
+            for (int k = i + 3; k < end && k <= i + 12; k++) {
+                if (src.charAt(k) == q) return k - i + 1;
+            }
+            return 0;
+        }
+        if (c == q) return 0;
+        if (src.charAt(i + 2) == q) return 3;
+        if (Character.isHighSurrogate(c) && i + 3 < end && src.charAt(i + 3) == q) return 4;
+        return 0;
+    }
+
+    private boolean isIdentifierPart(char c) {
+        if (c < 128) {
+            byte cls = charClass[c];
+            return cls == IDENT || cls == DIGIT;
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
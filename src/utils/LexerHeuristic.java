@@ -0,0 +1,280 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.List;
+import model.AdvancedMetrics;
+import model.JavaCodeMetrics;
+import model.MethodTable;
+
+/**
+ * Heuristics for any language described by a LanguageSpec, counted from its
+ * Lexer's tokens: keywords inside comments and strings are not counted, and a
+ * block comment that starts or ends mid-line does not hide the code next to it.
+ * A line is code if it has any token, comment if it only has comment text.
+ *
+ * Functions with a body are followed on a stack of the brace depths their bodies
+ * opened at, so decision points count for the innermost one; they become the
+ * rows of the file's MethodTable. A function's name is the identifier before
+ * the first '(' outside parentheses after its keyword (or, for C, before its body).
+ */
+class LexerHeuristic implements LanguageHeuristic {
+    private final Lexer lexer;
+    final LanguageSpec spec;
+    // by keyword id
+    final boolean[] branchKeywords;
+    private final boolean[] functionKeywords;
+    private final boolean[] typeKeywords;
+    // by operator id
+    final boolean[] branchOperators;
+    private final boolean[] functionOperators;
+    private final boolean[] endsDeclaration;
+    private final boolean[] endsSignature;
+    private final int openBrace;
+    private final int closeBrace;
+    private final int openParen;
+    private final int closeParen;
+
+    LexerHeuristic(LanguageSpec spec) {
+        this.spec = spec;
+        this.lexer = new Lexer(spec);
+        List<String> keywords = Arrays.asList(spec.getKeywords());
+        List<String> operators = Arrays.asList(spec.getOperators());
+        branchKeywords = flags(keywords, spec.getBranchKeywords());
+        functionKeywords = flags(keywords, spec.getFunctionKeywords());
+        typeKeywords = flags(keywords, spec.getTypeKeywords());
+        branchOperators = flags(operators, spec.getBranchOperators());
+        functionOperators = flags(operators, spec.getFunctionOperators());
+        endsDeclaration = flags(operators, new String[] {";", "(", ")", "=", ","});
+        endsSignature = flags(operators, new String[] {";", "="});
+        openBrace = operators.indexOf("{");
+        closeBrace = operators.indexOf("}");
+        openParen = operators.indexOf("(");
+        closeParen = operators.indexOf(")");
+    }
+
+    static boolean[] flags(List<String> all, String[] selected) {
+        boolean[] flags = new boolean[all.size()];
+        for (String s : selected) {
+            int id = all.indexOf(s);
+            if (id < 0) throw new IllegalArgumentException("not in the language's list: " + s);
+            flags[id] = true;
+        }
+        return flags;
+    }
+
+    @Override
+    public String name() {
+        return getClass().getName() + ":" + spec.getName();
+    }
+
+    @Override
+    public void analyze(SourceBuffer src, JavaCodeMetrics metrics) {
+        MetricsPass.run(src, accumulator(metrics));
+    }
+
+    @Override
+    public MetricsPass.Accumulator accumulator(JavaCodeMetrics metrics) {
+        return new Counter(metrics);
+    }
+
+    /**
+     * Line and token counts of one file; subclasses change how tokens are counted.
+     */
+    class Counter implements MetricsPass.Accumulator, Lexer.TokenSink {
+        final JavaCodeMetrics metrics;
+        final Lexer.State state = new Lexer.State();
+        int lineCount = 0;
+        int commentLines = 0;
+        int blankLines = 0;
+        int codeLines = 0;
+        int complexity = 1;
+        int methodCount = 0;
+        int classCount = 0;
+        private SourceBuffer src;
+        private int line;
+        private int[] codeBefore = new int[256];    // code lines before each line
+        // previous token
+        private int lastKind;
+        private int lastId = -1;
+        private int lastStart = -1;
+        private int lastEnd = -1;
+        private int depth = 0;
+        private int parens = 0;
+        private boolean pendingFunction;
+        private int pendingType; // 1: type keyword seen, 2: and its name, waiting for '{'
+        // Functions: the one waiting for its body, then the open ones by brace depth
+        private boolean pendingBody;
+        private int functionLine;
+        private int nameStart = -1;
+        private int nameEnd;
+        private int nameLine;
+        private int functions;
+        private int[] functionLines = new int[16];      // first and last line, per function
+        private int[] functionNames = new int[16];      // name start and end, start -1 if anonymous
+        private int[] functionComplexity = new int[8];
+        private int open;
+        private int[] openFunctions = new int[8];
+        private int[] openDepths = new int[8];
+
+        Counter(JavaCodeMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo info) {
+            this.src = src;
+            line = index;
+            count(index, scan(src, s, e));
+        }
+
+        /**
+         * Counts line index as code, comment or blank by the Lexer's HAS_CODE and
+         * HAS_COMMENT flags; lines must come in order.
+         */
+        void count(int index, int flags) {
+            lineCount++;
+            if ((flags & Lexer.HAS_CODE) != 0) codeLines++;
+            else if ((flags & Lexer.HAS_COMMENT) != 0) commentLines++;
+            else blankLines++;
+            if (index + 1 >= codeBefore.length) codeBefore = Arrays.copyOf(codeBefore, (index + 1) * 2);
+            codeBefore[index + 1] = codeLines;
+        }
+
+        /** Code lines among the counted lines first to last (0-based, inclusive). */
+        int codeLines(int first, int last) {
+            return codeBefore[last + 1] - codeBefore[first];
+        }
+
+        /** Sets the code lines of every row of methods from its line range. */
+        void countCodeLines(MethodTable methods) {
+            for (int r = 0; r < methods.size(); r++) {
+                methods.setCodeLines(r, codeLines(methods.getStartLine(r) - 1, methods.getEndLine(r) - 1));
+            }
+        }
+
+        /** Lexes [s, e) into token(); returns the Lexer's HAS_CODE and HAS_COMMENT flags. */
+        int scan(SourceBuffer src, int s, int e) {
+            return lexer.scanLine(src, s, e, state, this);
+        }
+
+        @Override
+        public void token(int kind, int id, int start, int end) {
+            boolean operator = kind == Lexer.OPERATOR && id >= 0;
+            if (pendingFunction) {
+                // "func(" directly after the keyword is an anonymous function
+                pendingFunction = false;
+                if (!(operator && id == openParen && start == lastEnd)) {
+                    methodCount++;
+                    pendingBody = true;
+                    nameStart = -1;
+                }
+            }
+            if (pendingType == 1) {
+                pendingType = kind == Lexer.IDENTIFIER && spec.isTypeNeedsBody() ? 2 : 0;
+                if (kind == Lexer.IDENTIFIER && !spec.isTypeNeedsBody()) classCount++;
+            } else if (pendingType == 2 && operator) {
+                if (id == openBrace) classCount++;
+                if (id == openBrace || endsDeclaration[id]) pendingType = 0;
+            }
+
+            if (kind == Lexer.KEYWORD) {
+                if (branchKeywords[id]) decision();
+                if (functionKeywords[id]) {
+                    pendingFunction = true;
+                    functionLine = line;
+                }
+                if (typeKeywords[id]) {
+                    pendingType = 1;
+                    pendingBody = false;
+                }
+            } else if (operator) {
+                if (branchOperators[id]) decision();
+                if (functionOperators[id]) methodCount++;
+                if (id == openBrace) {
+                    if (spec.isFunctionBodies() && depth == 0 && lastKind == Lexer.OPERATOR && lastId == closeParen) {
+                        methodCount++;
+                        pendingBody = true;
+                        functionLine = nameStart >= 0 ? nameLine : line;
+                    }
+                    if (pendingBody && parens == 0) openFunction();
+                    depth++;
+                } else if (id == closeBrace && depth > 0) {
+                    pendingBody = false;
+                    depth--;
+                    if (open > 0 && openDepths[open - 1] == depth) {
+                        functionLines[2 * openFunctions[--open] + 1] = line;
+                    }
+                } else if (id == openParen) {
+                    // a keyword function's name is the first, a C function's the last before its body
+                    if (parens == 0 && lastKind == Lexer.IDENTIFIER && !(pendingBody && nameStart >= 0)) {
+                        nameStart = lastStart;
+                        nameEnd = lastEnd;
+                        nameLine = line;
+                    }
+                    parens++;
+                } else if (id == closeParen) {
+                    if (parens > 0) parens--;
+                } else if (pendingBody && parens == 0 && endsSignature[id]) {
+                    pendingBody = false;    // a declaration without a body, or "fun f() = ..."
+                }
+            }
+            lastKind = kind;
+            lastId = id;
+            lastStart = start;
+            lastEnd = end;
+        }
+
+        private void decision() {
+            complexity++;
+            if (open > 0) functionComplexity[openFunctions[open - 1]]++;
+        }
+
+        /** At the '{' of the pending function's body. */
+        private void openFunction() {
+            pendingBody = false;
+            if (functions == functionComplexity.length) {
+                functionLines = Arrays.copyOf(functionLines, functions * 4);
+                functionNames = Arrays.copyOf(functionNames, functions * 4);
+                functionComplexity = Arrays.copyOf(functionComplexity, functions * 2);
+            }
+            functionLines[2 * functions] = functionLine;
+            functionLines[2 * functions + 1] = line;
+            functionNames[2 * functions] = nameStart;
+            functionNames[2 * functions + 1] = nameEnd;
+            functionComplexity[functions] = 1;
+            if (open == openFunctions.length) {
+                openFunctions = Arrays.copyOf(openFunctions, open * 2);
+                openDepths = Arrays.copyOf(openDepths, open * 2);
+            }
+            openFunctions[open] = functions++;
+            openDepths[open++] = depth;
+        }
+
+        @Override
+        public void finish() {
+            metrics.setTotalLines(lineCount);
+            metrics.setCodeLines(codeLines);
+            metrics.setCommentLines(commentLines);
+            metrics.setBlankLines(blankLines);
+            metrics.setCyclomaticComplexity(complexity);
+            metrics.setCommentRatio(lineCount == 0 ? 0.0 : commentLines * 100.0 / lineCount);
+            metrics.setMethodCount(methodCount);
+            metrics.setClassCount(classCount);
+
+            AdvancedMetrics advanced = metrics.getAdvancedMetrics();
+            if (advanced == null || functions == 0) return;
+            while (open > 0) functionLines[2 * openFunctions[--open] + 1] = line;
+            MethodTable methods = new MethodTable(functions);
+            for (int f = 0; f < functions; f++) {
+                int start = functionNames[2 * f];
+                String name = start >= 0 ? src.substring(start, functionNames[2 * f + 1]) : "(anonymous)";
+                methods.add(name, functionLines[2 * f] + 1, functionLines[2 * f + 1] + 1, functionComplexity[f]);
+            }
+            countCodeLines(methods);
+            advanced.setMethods(methods);
+            advanced.setMaxMethodComplexity(methods.maxComplexity());
+            advanced.setAvgMethodComplexity(methods.averageComplexity());
+            advanced.setLongestMethodLines(methods.longestLines());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memo table of per-line classifications shared by all files of a run.
+ *
+ * License headers, imports, braces and other boilerplate lines repeat across
+ * thousands of files; every analyzer used to re-scan them. A LineInfo holds
+ * everything the generic heuristic, CognitiveComplexityCalculator and
+ * HalsteadCalculator need from a line that does not depend on the lines around
+ * it. Lines are looked up by a hash of their trimmed text in a fixed-size,
+ * direct-mapped table: a collision simply replaces the older entry, so memory
+ * stays bounded and no locking is needed (entries are immutable).
+ */
+public final class LineMemo {
+
+    public static final int DEFAULT_SLOTS = 1 << 16;
+    /** Longer lines are classified but not stored: they rarely repeat. */
+    private static final int MAX_LINE = 160;
+
+    public static final byte BLANK = 0;
+    public static final byte COMMENT = 1;
+    public static final byte CODE = 2;
+
+    /**
+     * Context-free facts about one trimmed line.
+     */
+    public static final class LineInfo {
+        final String text;
+        final long hash;
+        /** Generic heuristic line kind: BLANK, COMMENT or CODE. */
+        public final byte kind;
+        /** Blank, // or # lines, which Halstead and cognitive complexity ignore. */
+        public final boolean skipped;
+        /** Generic heuristic complexity increments (code lines only). */
+        public final int branches;
+        public final boolean method;
+        public final boolean type;
+        public final int openBraces;
+        public final int closeBraces;
+        public final boolean controlFlow;
+        public final boolean catchBlock;
+        /** && and || counted by cognitive complexity (lines with if/while/for). */
+        public final int logicalOps;
+        /** Could match one of SecretsDetector's patterns; most lines cannot. */
+        public final boolean mayHoldSecret;
+        /** Halstead operator ids and operand ranges, in order. */
+        final HalsteadCalculator.Tokens tokens;
+
+        LineInfo(SourceBuffer src, int s, int e, String text, long hash) {
+            this.text = text;
+            this.hash = hash;
+            boolean blank = s >= e;
+            this.skipped = blank || src.startsWith(s, e, "//") || src.startsWith(s, e, "#");
+            if (blank) {
+                kind = BLANK;
+            } else if (src.startsWith(s, e, "//") || src.startsWith(s, e, "#") || src.startsWith(s, e, "/*") || src.startsWith(s, e, "*")) {
+                kind = COMMENT;
+            } else {
+                kind = CODE;
+            }
+            branches = kind == CODE ? GenericHeuristic.branches(src, s, e) : 0;
+            method = GenericHeuristic.looksLikeMethod(src, s, e);
+            type = GenericHeuristic.looksLikeType(src, s, e);
+            mayHoldSecret = SecretsDetector.mayMatch(src, s, e);
+
+            if (skipped) {
+                openBraces = closeBraces = logicalOps = 0;
+                controlFlow = catchBlock = false;
+                tokens = HalsteadCalculator.Tokens.NONE;
+                return;
+            }
+            openBraces = src.count(s, e, '{');
+            closeBraces = src.count(s, e, '}');
+            controlFlow = CognitiveComplexityCalculator.matchesControlFlow(src, s, e);
+            catchBlock = src.startsWith(s, e, "catch") || src.contains(s, e, "} catch");
+            logicalOps = src.contains(s, e, "if") || src.contains(s, e, "while") || src.contains(s, e, "for")
+                ? src.count(s, e, "&&") + src.count(s, e, "||") : 0;
+            tokens = HalsteadCalculator.tokenize(src, s, e);
+        }
+    }
+
+    private static volatile LineMemo shared = new LineMemo(DEFAULT_SLOTS);
+
+    private final AtomicReferenceArray<LineInfo> table; // null when disabled
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private LineMemo(int slots) {
+        if (slots <= 0) {
+            table = null;
+            mask = 0;
+            return;
+        }
+        int n = Integer.highestOneBit(slots);
+        if (n < slots) n <<= 1;
+        table = new AtomicReferenceArray<>(n);
+        mask = n - 1;
+    }
+
+    /** The table used by the analyzers. */
+    public static LineMemo shared() {
+        return shared;
+    }
+
+    /**
+     * Replace the shared table with an empty one of this many slots (rounded up to
+     * a power of two); 0 disables memoization.
+     */
+    public static void configure(int slots) {
+        shared = new LineMemo(slots);
+    }
+
+    /**
+     * Classification of the trimmed range [s, e) of src.
+     */
+    public LineInfo get(SourceBuffer src, int s, int e) {
+        if (e < s) e = s; // whitespace-only line: trimStart is past trimEnd
+        if (table == null || e - s > MAX_LINE) return new LineInfo(src, s, e, null, 0);
+        long h = 0xcbf29ce484222325L; // FNV-1a 64
+        for (int i = s; i < e; i++) {
+            h ^= src.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        LineInfo info = table.get(slot);
+        if (info != null && info.hash == h && info.text.length() == e - s && src.startsWith(s, e, info.text)) {
+            hits.increment();
+            return info;
+        }
+        misses.increment();
+        info = new LineInfo(src, s, e, src.substring(s, e), h);
+        table.lazySet(slot, info);
+        return info;
+    }
+
+    public int getSlots() { return table == null ? 0 : table.length(); }
+    public long getHits() { return hits.sum(); }
+    /** Lookups that had to classify the line (long lines are not counted). */
+    public long getMisses() { return misses.sum(); }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : h * 100.0 / total;
+    }
+}
@@ -0,0 +1,351 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.JavaCodeMetrics;
+
+/**
+ * Persistent per-file result cache, memory-mapped for lookups.
+ *
+ * Layout (big-endian):
+ *   header   magic, format, MetricsCodec.VERSION, config key (analyzer version and
+ *            settings), path slot count, content slot count
+ *   paths    open-addressing table: path hash, size, mtime, record offset (0 = empty)
+ *   contents open-addressing table: content key, record offset
+ *   records  path, skip reason, MetricsCodec bytes
+ *
+ * A lookup hashes the path, probes a few 32-byte slots and decodes a single
+ * record, so opening the cache costs one mmap no matter how many files it holds.
+ * Files whose size or mtime changed (a fresh clone, a touched file) can still hit
+ * the contents table once they have been read and hashed.
+ *
+ * Entries looked up or put during a run are written back by save(); files not
+ * seen in the run are dropped. The cache lives in numbered generations next to
+ * the given file (metrics-x.bin.1, .2, ...): save() writes the next generation
+ * rather than replacing the one that is mapped, which Windows does not allow,
+ * and open() maps the newest.
+ */
+public class MetricsCache {
+
+    private static final int MAGIC = 0x43414d43; // "CAMC"
+    private static final int FORMAT = 1;
+    private static final int PATH_SLOT = 32;
+    private static final int CONTENT_SLOT = 16;
+    private static final int KEPT_GENERATIONS = 2; // the newest and the one it replaced, which may still be mapped
+
+    /**
+     * One cached file: its stat key, the skip reason recorded for it (if any) and
+     * its encoded result (null for files that produce none, such as binaries).
+     */
+    public static class Entry {
+        final String path;
+        final long size;
+        final long lastModified;
+        final long contentKey;
+        final String skipReason;
+        final byte[] metrics;
+
+        Entry(String path, long size, long lastModified, long contentKey, String skipReason, byte[] metrics) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentKey = contentKey;
+            this.skipReason = skipReason;
+            this.metrics = metrics;
+        }
+
+        public String getSkipReason() { return skipReason; }
+
+        /** A fresh copy of the cached result (without churn), or null. */
+        public JavaCodeMetrics getMetrics() {
+            if (metrics == null) return null;
+            try {
+                return MetricsCodec.read(new DataInputStream(new ByteArrayInputStream(metrics)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final ByteBuffer map; // null when there was no usable cache
+    private final int pathSlots;
+    private final int contentSlots;
+    private final int contentTable;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final AtomicInteger pathHits = new AtomicInteger();
+    private final AtomicInteger contentHits = new AtomicInteger();
+
+    private MetricsCache(ByteBuffer map, int pathSlots, int contentSlots, int contentTable) {
+        this.map = map;
+        this.pathSlots = pathSlots;
+        this.contentSlots = contentSlots;
+        this.contentTable = contentTable;
+    }
+
+    /**
+     * Map the newest generation of the cache file. A missing, damaged or foreign
+     * (other analyzer version or settings) file gives an empty cache.
+     */
+    public static MetricsCache open(File file, String configKey) {
+        MetricsCache empty = new MetricsCache(null, 0, 0, 0);
+        long[] generations = generations(file);
+        if (generations.length == 0) return empty;
+        File current = generation(file, generations[generations.length - 1]);
+        if (!current.isFile() || current.length() > Integer.MAX_VALUE) return empty;
+        try (FileChannel ch = FileChannel.open(current.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT || map.getInt(8) != MetricsCodec.VERSION) return empty;
+            int keyLen = map.getInt(12);
+            if (!configKey.equals(string(map, 16, keyLen))) return empty;
+            int pos = 16 + keyLen;
+            int pathSlots = map.getInt(pos);
+            int contentSlots = map.getInt(pos + 4);
+            int pathTable = pos + 8;
+            return new MetricsCache(map.slice(pathTable, map.capacity() - pathTable),
+                pathSlots, contentSlots, pathSlots * PATH_SLOT);
+        } catch (IOException | RuntimeException e) {
+            return empty; // unreadable cache: start over
+        }
+    }
+
+    /**
+     * The entry for this path if its size and mtime are unchanged. A hit is kept
+     * for the next save.
+     */
+    public Entry lookup(String path, long size, long lastModified) {
+        if (map == null || pathSlots == 0) return null;
+        long h = hash(path);
+        int mask = pathSlots - 1;
+        for (int i = (int) h & mask, n = 0; n < pathSlots; i = (i + 1) & mask, n++) {
+            int slot = i * PATH_SLOT;
+            int offset = (int) map.getLong(slot + 24);
+            if (offset == 0) return null;
+            if (map.getLong(slot) != h) continue;
+            Entry e = readRecord(offset, map.getLong(slot + 8), map.getLong(slot + 16));
+            if (!e.path.equals(path)) continue;
+            if (e.size != size || e.lastModified != lastModified) return null;
+            current.put(path, e);
+            pathHits.incrementAndGet();
+            return e;
+        }
+        return null;
+    }
+
+    /**
+     * A cached result for this content (see contentKey), or null. Only the
+     * content-derived parts of it are meaningful to the caller.
+     */
+    public JavaCodeMetrics lookupContent(long contentKey) {
+        if (map == null || contentSlots == 0) return null;
+        int mask = contentSlots - 1;
+        for (int i = (int) mix(contentKey) & mask, n = 0; n < contentSlots; i = (i + 1) & mask, n++) {
+            int slot = contentTable + i * CONTENT_SLOT;
+            int offset = (int) map.getLong(slot + 8);
+            if (offset == 0) return null;
+            if (map.getLong(slot) != contentKey) continue;
+            contentHits.incrementAndGet();
+            return readRecord(offset, 0, 0).getMetrics();
+        }
+        return null;
+    }
+
+    /**
+     * Record the result of a file analyzed in this run. contentKey is 0 for results
+     * that must not be shared by content (stats-only files). Churn and the risk
+     * score are left out: new commits change them without touching the file, so
+     * the caller computes them again on a hit.
+     */
+    public void put(String path, long size, long lastModified, long contentKey, String skipReason, JavaCodeMetrics metrics) {
+        byte[] bytes = null;
+        if (metrics != null) {
+            JavaCodeMetrics stored = metrics.copyAs(metrics.getFileName());
+            stored.setPath(metrics.getPath());
+            if (stored.getAdvancedMetrics() != null) stored.getAdvancedMetrics().setRiskScore(0);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(512);
+            try {
+                MetricsCodec.write(new DataOutputStream(buf), stored);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bytes = buf.toByteArray();
+        }
+        current.put(path, new Entry(path, size, lastModified, contentKey, skipReason, bytes));
+    }
+
+    /** Files served from the paths table in this run. */
+    public int getPathHits() { return pathHits.get(); }
+    /** Analyses replaced by a contents table hit in this run. */
+    public int getContentHits() { return contentHits.get(); }
+
+    /**
+     * Key for the contents table: the heuristic that analyzed the content and its
+     * SourceBuffer.contentHash.
+     */
+    public static long contentKey(String heuristic, long contentHash) {
+        long k = mix(hash(heuristic) ^ contentHash);
+        return k != 0 ? k : 1;
+    }
+
+    /**
+     * Write the entries of this run as the next generation, through a temporary
+     * file and a rename, then delete the generations before the previous one.
+     */
+    public void save(File file, String configKey) throws IOException {
+        List<Entry> entries = new ArrayList<>(current.values());
+        entries.sort(Comparator.comparing(e -> e.path));
+
+        int pathSlots = tableSize(entries.size());
+        int shared = 0;
+        for (Entry e : entries) if (e.contentKey != 0 && e.metrics != null) shared++;
+        int contentSlots = tableSize(shared);
+        byte[] key = configKey.getBytes(StandardCharsets.UTF_8);
+        long recordStart = 16 + key.length + 8 + (long) pathSlots * PATH_SLOT + (long) contentSlots * CONTENT_SLOT;
+
+        // Record offsets are relative to the path table, which is where open() slices the file
+        long tableStart = 16 + key.length + 8;
+        long[] pathTable = new long[pathSlots * 4];
+        long[] contentTable = new long[contentSlots * 2];
+        long offset = recordStart - tableStart;
+        for (Entry e : entries) {
+            long h = hash(e.path);
+            int i = (int) h & (pathSlots - 1);
+            while (pathTable[i * 4 + 3] != 0) i = (i + 1) & (pathSlots - 1);
+            pathTable[i * 4] = h;
+            pathTable[i * 4 + 1] = e.size;
+            pathTable[i * 4 + 2] = e.lastModified;
+            pathTable[i * 4 + 3] = offset;
+            if (e.contentKey != 0 && e.metrics != null) {
+                int j = (int) mix(e.contentKey) & (contentSlots - 1);
+                boolean dup = false;
+                while (contentTable[j * 2 + 1] != 0) {
+                    if (contentTable[j * 2] == e.contentKey) { dup = true; break; }
+                    j = (j + 1) & (contentSlots - 1);
+                }
+                if (!dup) {
+                    contentTable[j * 2] = e.contentKey;
+                    contentTable[j * 2 + 1] = offset;
+                }
+            }
+            offset += recordLength(e);
+        }
+        if (tableStart + offset > Integer.MAX_VALUE) throw new IOException("metrics cache exceeds 2 GB");
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(MetricsCodec.VERSION);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(pathSlots);
+            out.writeInt(contentSlots);
+            for (long v : pathTable) out.writeLong(v);
+            for (long v : contentTable) out.writeLong(v);
+            for (Entry e : entries) {
+                MetricsCodec.writeString(out, e.path);
+                out.writeLong(e.contentKey);
+                MetricsCodec.writeString(out, e.skipReason);
+                out.writeInt(e.metrics != null ? e.metrics.length : -1);
+                if (e.metrics != null) out.write(e.metrics);
+            }
+        }
+        long[] generations = generations(file);
+        long next = generations.length > 0 ? generations[generations.length - 1] + 1 : 1;
+        Files.move(tmp.toPath(), generation(file, next).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        // Older generations may still be mapped by this process (Windows refuses to
+        // delete those); they are deleted by a later save
+        for (int i = 0; i < generations.length - (KEPT_GENERATIONS - 1); i++) {
+            generation(file, generations[i]).delete();
+        }
+    }
+
+    private static File generation(File file, long n) {
+        return new File(file.getPath() + "." + n);
+    }
+
+    /** Generation numbers of the cache file on disk, ascending. */
+    private static long[] generations(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        String[] names = dir != null ? dir.list() : null;
+        if (names == null) return new long[0];
+        String prefix = file.getName() + ".";
+        long[] found = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (!name.startsWith(prefix)) continue;
+            try {
+                found[n++] = Long.parseLong(name.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                // the temporary file or something else
+            }
+        }
+        found = Arrays.copyOf(found, n);
+        Arrays.sort(found);
+        return found;
+    }
+
+    private static int recordLength(Entry e) {
+        return 4 + e.path.getBytes(StandardCharsets.UTF_8).length
+            + 8
+            + 4 + (e.skipReason != null ? e.skipReason.getBytes(StandardCharsets.UTF_8).length : 0)
+            + 4 + (e.metrics != null ? e.metrics.length : 0);
+    }
+
+    private Entry readRecord(int offset, long size, long lastModified) {
+        int pos = offset;
+        int len = map.getInt(pos);
+        String path = string(map, pos + 4, len);
+        pos += 4 + len;
+        long contentKey = map.getLong(pos);
+        pos += 8;
+        len = map.getInt(pos);
+        String skip = len < 0 ? null : string(map, pos + 4, len);
+        pos += 4 + Math.max(len, 0);
+        len = map.getInt(pos);
+        byte[] metrics = null;
+        if (len >= 0) {
+            metrics = new byte[len];
+            map.get(pos + 4, metrics);
+        }
+        return new Entry(path, size, lastModified, contentKey, skip, metrics);
+    }
+
+    private static String string(ByteBuffer buf, int pos, int len) {
+        byte[] b = new byte[len];
+        buf.get(pos, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Power of two, at most half full. */
+    private static int tableSize(int entries) {
+        int n = 2;
+        while (n < entries * 2) n <<= 1;
+        return n;
+    }
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L; // FNV-1a 64
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
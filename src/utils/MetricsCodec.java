@@ -0,0 +1,192 @@
+package utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import model.AdvancedMetrics;
+import model.ChurnMetrics;
+import model.JavaCodeMetrics;
+import model.MethodTable;
+
+/**
+ * Compact binary form of JavaCodeMetrics, used by the on-disk caches.
+ * Bump VERSION whenever the layout changes; readers reject other versions.
+ */
+public final class MetricsCodec {
+
+    public static final int VERSION = 3;
+
+    private MetricsCodec() {}
+
+    public static void write(DataOutput out, JavaCodeMetrics m) throws IOException {
+        writeString(out, m.getFileName());
+        writeString(out, m.getPath().equals(m.getFileName()) ? null : m.getPath());
+        out.writeInt(m.getTotalLines());
+        out.writeInt(m.getCodeLines());
+        out.writeInt(m.getCommentLines());
+        out.writeInt(m.getBlankLines());
+        out.writeInt(m.getCyclomaticComplexity());
+        out.writeDouble(m.getCommentRatio());
+        out.writeInt(m.getMethodCount());
+        out.writeInt(m.getClassCount());
+        out.writeInt(m.getDuplicationPercentage());
+        out.writeDouble(m.getTestCoverage());
+        writeString(out, m.getStatsOnlyReason());
+        writeStrings(out, m.getFindings());
+        writeStrings(out, m.getAliases());
+        out.writeLong(m.getContentHash());
+
+        AdvancedMetrics am = m.getAdvancedMetrics();
+        out.writeBoolean(am != null);
+        if (am != null) {
+            out.writeInt(am.getN1());
+            out.writeInt(am.getN2());
+            out.writeInt(am.getTotalN1());
+            out.writeInt(am.getTotalN2());
+            out.writeDouble(am.getVolume());
+            out.writeDouble(am.getDifficulty());
+            out.writeDouble(am.getEffort());
+            out.writeInt(am.getCognitiveComplexity());
+            out.writeDouble(am.getMaintainabilityIndex());
+            out.writeInt(am.getMaxMethodComplexity());
+            out.writeInt(am.getAvgMethodComplexity());
+            out.writeInt(am.getLongestMethodLines());
+            out.writeInt(am.getLargestClassLines());
+            out.writeInt(am.getCoupling());
+            out.writeDouble(am.getCohesion());
+            out.writeDouble(am.getRiskScore());
+            writeMethods(out, am.getMethods());
+        }
+
+        ChurnMetrics cm = m.getChurnMetrics();
+        out.writeBoolean(cm != null);
+        if (cm != null) {
+            out.writeInt(cm.getCommitCount());
+            out.writeInt(cm.getLinesAdded());
+            out.writeInt(cm.getLinesDeleted());
+            out.writeInt(cm.getAuthorsCount());
+            out.writeLong(cm.getLastModifiedTimestamp());
+            out.writeDouble(cm.getChurnRate());
+        }
+    }
+
+    public static JavaCodeMetrics read(DataInput in) throws IOException {
+        JavaCodeMetrics m = new JavaCodeMetrics(readString(in));
+        String path = readString(in);
+        if (path != null) m.setPath(path);
+        m.setTotalLines(in.readInt());
+        m.setCodeLines(in.readInt());
+        m.setCommentLines(in.readInt());
+        m.setBlankLines(in.readInt());
+        m.setCyclomaticComplexity(in.readInt());
+        m.setCommentRatio(in.readDouble());
+        m.setMethodCount(in.readInt());
+        m.setClassCount(in.readInt());
+        m.setDuplicationPercentage(in.readInt());
+        m.setTestCoverage(in.readDouble());
+        m.setStatsOnlyReason(readString(in));
+        for (int i = 0, n = in.readInt(); i < n; i++) m.addFinding(readString(in));
+        for (int i = 0, n = in.readInt(); i < n; i++) m.addAlias(readString(in));
+        m.setContentHash(in.readLong());
+
+        if (in.readBoolean()) {
+            AdvancedMetrics am = new AdvancedMetrics();
+            am.setN1(in.readInt());
+            am.setN2(in.readInt());
+            am.setTotalN1(in.readInt());
+            am.setTotalN2(in.readInt());
+            am.setVolume(in.readDouble());
+            am.setDifficulty(in.readDouble());
+            am.setEffort(in.readDouble());
+            am.setCognitiveComplexity(in.readInt());
+            am.setMaintainabilityIndex(in.readDouble());
+            am.setMaxMethodComplexity(in.readInt());
+            am.setAvgMethodComplexity(in.readInt());
+            am.setLongestMethodLines(in.readInt());
+            am.setLargestClassLines(in.readInt());
+            am.setCoupling(in.readInt());
+            am.setCohesion(in.readDouble());
+            am.setRiskScore(in.readDouble());
+            am.setMethods(readMethods(in));
+            m.setAdvancedMetrics(am);
+        } else {
+            m.setAdvancedMetrics(null);
+        }
+
+        if (in.readBoolean()) {
+            ChurnMetrics cm = new ChurnMetrics();
+            cm.setCommitCount(in.readInt());
+            cm.setLinesAdded(in.readInt());
+            cm.setLinesDeleted(in.readInt());
+            cm.setAuthorsCount(in.readInt());
+            cm.setLastModifiedTimestamp(in.readLong());
+            cm.setChurnRate(in.readDouble());
+            m.setChurnMetrics(cm);
+        } else {
+            m.setChurnMetrics(null);
+        }
+        return m;
+    }
+
+    /**
+     * Row count (-1 for null), then per row its name, lines and metrics.
+     */
+    private static void writeMethods(DataOutput out, MethodTable methods) throws IOException {
+        out.writeInt(methods != null ? methods.size() : -1);
+        if (methods == null) return;
+        for (int r = 0; r < methods.size(); r++) {
+            writeString(out, methods.getName(r));
+            out.writeInt(methods.getStartLine(r));
+            out.writeInt(methods.getEndLine(r));
+            out.writeInt(methods.getCodeLines(r));
+            out.writeInt(methods.getComplexity(r));
+            out.writeInt(methods.getCognitiveComplexity(r));
+            out.writeDouble(methods.getVolume(r));
+        }
+    }
+
+    private static MethodTable readMethods(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        MethodTable methods = new MethodTable(n);
+        for (int r = 0; r < n; r++) {
+            String name = readString(in);
+            int startLine = in.readInt();
+            int endLine = in.readInt();
+            int codeLines = in.readInt();
+            methods.add(name, startLine, endLine, in.readInt());
+            methods.setCodeLines(r, codeLines);
+            methods.setCognitiveComplexity(r, in.readInt());
+            methods.setVolume(r, in.readDouble());
+        }
+        return methods;
+    }
+
+    /**
+     * Length-prefixed UTF-8 (writeUTF is limited to 64 KB); -1 encodes null.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutput out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) writeString(out, s);
+    }
+}
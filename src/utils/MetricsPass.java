@@ -0,0 +1,49 @@
+package utils;
+
+/**
+ * The single pass over a file's lines behind all content analyzers.
+ *
+ * Each line is trimmed and classified once (through LineMemo) and handed to every
+ * accumulator in turn. Accumulators keep whatever running state they need
+ * (nesting depth, docstring mode, operator counts) and store their results in
+ * finish(), so the heuristic, Halstead, cognitive complexity and secrets no
+ * longer walk and re-tokenize the file one after another.
+ */
+public final class MetricsPass {
+
+    /**
+     * Receives every line of a file in order, then finish().
+     */
+    public interface Accumulator {
+        /**
+         * Line number index (0-based), its trimmed range [s, e) in src (empty for
+         * blank lines) and its classification.
+         */
+        void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo info);
+
+        /** Called once after the last line; stores the results. */
+        void finish();
+    }
+
+    private MetricsPass() {
+    }
+
+    /**
+     * Feed every line of src to the accumulators; null entries are ignored.
+     */
+    public static void run(SourceBuffer src, Accumulator... accumulators) {
+        Accumulator[] active = new Accumulator[accumulators.length];
+        int n = 0;
+        for (Accumulator a : accumulators) {
+            if (a != null) active[n++] = a;
+        }
+        LineMemo memo = LineMemo.shared();
+        for (int i = 0, lines = src.lineCount(); i < lines; i++) {
+            int s = src.trimStart(i);
+            int e = Math.max(s, src.trimEnd(i));
+            LineMemo.LineInfo info = memo.get(src, s, e);
+            for (int k = 0; k < n; k++) active[k].line(src, i, s, e, info);
+        }
+        for (int k = 0; k < n; k++) active[k].finish();
+    }
+}
@@ -0,0 +1,381 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.List;
+import model.AdvancedMetrics;
+import model.JavaCodeMetrics;
+import model.MethodTable;
+
+/**
+ * Python heuristics on the Lexer's tokens (LanguageSpec.python()) with an
+ * indentation block model.
+ *
+ * Blocks follow logical lines, as Python reads them: a line continued with a
+ * backslash or inside brackets, and the lines of a multi-line string, belong to
+ * the line they started on. The indentation of each logical line closes the
+ * blocks (def, class, if, for, ...) on a stack that are indented as far or
+ * further, so every token is known to be in a function, and at what nesting.
+ *
+ * Decision points are if, elif, for, while, except, with, and, or and case
+ * clauses, in comprehensions and conditional expressions too; each counts for
+ * the file and for the function it is in. Cognitive complexity adds 1 plus the
+ * nesting for if, for, while, except, match and conditional expressions, 1 for
+ * elif, the else of an if and each change between and/or; if, loops, except,
+ * match and functions nested in functions nest. Each function is a row of the
+ * file's MethodTable, from its def to its last line with a token. Statements
+ * that are only a string (docstrings) are comment lines.
+ *
+ * The stack and the function table are primitive arrays; nothing is allocated
+ * per line.
+ */
+class PythonHeuristic extends LexerHeuristic {
+
+    // Block kinds
+    private static final byte DEF = 1;
+    private static final byte CLASS = 2;
+    private static final byte IF = 3;       // if, elif, else of an if
+    private static final byte LOOP = 4;     // for, while
+    private static final byte EXCEPT = 5;
+    private static final byte MATCH = 6;
+    private static final byte PLAIN = 7;    // try, finally, with, case, else of a loop or try
+
+    private final int defKeyword;
+    private final int classKeyword;
+    private final int ifKeyword;
+    private final int elifKeyword;
+    private final int elseKeyword;
+    private final int forKeyword;
+    private final int whileKeyword;
+    private final int tryKeyword;
+    private final int exceptKeyword;
+    private final int finallyKeyword;
+    private final int withKeyword;
+    private final int asyncKeyword;
+    private final int andKeyword;
+    private final int orKeyword;
+    private final boolean[] opensBracket;
+    private final boolean[] closesBracket;
+    private final boolean[] startsPattern;      // after "case": [x, y], (a), {...}, -1, *rest
+    private final int colon;
+    private final int semicolon;
+
+    PythonHeuristic() {
+        super(LanguageSpec.python());
+        List<String> keywords = Arrays.asList(spec.getKeywords());
+        List<String> operators = Arrays.asList(spec.getOperators());
+        defKeyword = keywords.indexOf("def");
+        classKeyword = keywords.indexOf("class");
+        ifKeyword = keywords.indexOf("if");
+        elifKeyword = keywords.indexOf("elif");
+        elseKeyword = keywords.indexOf("else");
+        forKeyword = keywords.indexOf("for");
+        whileKeyword = keywords.indexOf("while");
+        tryKeyword = keywords.indexOf("try");
+        exceptKeyword = keywords.indexOf("except");
+        finallyKeyword = keywords.indexOf("finally");
+        withKeyword = keywords.indexOf("with");
+        asyncKeyword = keywords.indexOf("async");
+        andKeyword = keywords.indexOf("and");
+        orKeyword = keywords.indexOf("or");
+        opensBracket = flags(operators, new String[] {"(", "[", "{"});
+        closesBracket = flags(operators, new String[] {")", "]", "}"});
+        startsPattern = flags(operators, new String[] {"(", "[", "{", "-", "*"});
+        colon = operators.indexOf(":");
+        semicolon = operators.indexOf(";");
+    }
+
+    @Override
+    public boolean measuresCognitiveComplexity() {
+        return true;
+    }
+
+    @Override
+    public MetricsPass.Accumulator accumulator(JavaCodeMetrics metrics) {
+        return new PythonCounter(metrics);
+    }
+
+    private final class PythonCounter extends Counter {
+        private SourceBuffer src;
+        private int line;
+
+        // Logical lines
+        private int brackets;
+        private boolean continued;          // the last line ended with a backslash
+        private boolean backslash;          // the last token was a backslash
+        private boolean logicalStart = true;
+        private boolean statementStart;
+        private boolean header;             // in a block's header, before its ':'
+        private boolean stringStatement;    // only string tokens so far
+        private int prefixEnd = -1;         // end of a string prefix (r, b, f, ...) starting the statement
+        private int lastBoolean = -1;       // and/or last seen in the statement
+        private byte pendingSoft;           // MATCH or PLAIN (case) if the next token confirms it
+        private boolean pendingName;
+        private int lastTokenLine;
+
+        // Block stack
+        private int depth;
+        private int[] indents = new int[16];
+        private byte[] kinds = new byte[16];
+        private int[] nestings = new int[16];       // nesting of the block's body
+        private int[] functionOf = new int[16];     // innermost function, -1 at module level
+        private int[] firstLines = new int[16];
+        private byte closedKind;                    // last block closed at the current indentation
+
+        // Functions
+        private int functions;
+        private int[] functionLines = new int[16];  // first and last line, per function
+        private int[] functionNames = new int[16];  // name start and end, start -1 if missing
+        private int[] functionComplexity = new int[8];
+        private int[] functionCognitive = new int[8];
+        private int cognitive;
+        private int largestClass;
+
+        PythonCounter(JavaCodeMetrics metrics) {
+            super(metrics);
+        }
+
+        @Override
+        public void line(SourceBuffer src, int index, int s, int e, LineMemo.LineInfo info) {
+            this.src = src;
+            line = index;
+            if (!continued && brackets == 0 && !state.continues()) logicalStart = true;
+            backslash = false;
+            int flags = scan(src, s, e);
+            continued = backslash;
+            if ((flags & Lexer.HAS_CODE) != 0) {
+                lastTokenLine = index;
+                if (stringStatement) flags = Lexer.HAS_COMMENT;
+            }
+            count(index, flags);
+        }
+
+        @Override
+        public void token(int kind, int id, int start, int end) {
+            if (logicalStart) {
+                beginLogicalLine(start);
+                stringStatement = kind == Lexer.STRING || (kind == Lexer.IDENTIFIER && isStringPrefix(start, end));
+                prefixEnd = kind == Lexer.IDENTIFIER && stringStatement ? end : -1;
+            } else if (prefixEnd >= 0) {
+                stringStatement = kind == Lexer.STRING && start == prefixEnd;
+                prefixEnd = -1;
+            } else if (kind != Lexer.STRING) {
+                stringStatement = false;
+            }
+            backslash = kind == Lexer.OPERATOR && id < 0 && src.charAt(start) == '\\';
+            boolean atStatement = statementStart;
+            statementStart = false;
+
+            if (pendingName) {
+                pendingName = false;
+                if (kind == Lexer.IDENTIFIER) {
+                    int function = functionOf[depth - 1];
+                    functionNames[2 * function] = start;
+                    functionNames[2 * function + 1] = end;
+                }
+            }
+            if (pendingSoft != 0) {
+                byte soft = pendingSoft;
+                pendingSoft = 0;
+                if (kind != Lexer.OPERATOR || (id >= 0 && startsPattern[id])) {
+                    if (soft == MATCH) {
+                        cognitive(1 + nesting());
+                    } else {
+                        decision();
+                    }
+                    open(soft);
+                }
+            }
+
+            if (kind == Lexer.KEYWORD) {
+                keyword(id, atStatement);
+            } else if (kind == Lexer.IDENTIFIER && atStatement) {
+                if (isWord(start, end, "match")) pendingSoft = MATCH;
+                else if (isWord(start, end, "case") && depth > 0 && kinds[depth - 1] == MATCH) pendingSoft = PLAIN;
+            } else if (kind == Lexer.OPERATOR && id >= 0) {
+                if (opensBracket[id]) {
+                    brackets++;
+                } else if (closesBracket[id]) {
+                    if (brackets > 0) brackets--;
+                } else if (brackets == 0 && (id == semicolon || (id == colon && header))) {
+                    // a statement follows: "a; b" or "if x: return y"
+                    header = false;
+                    statementStart = true;
+                    lastBoolean = -1;
+                }
+            }
+        }
+
+        private void keyword(int id, boolean atStatement) {
+            if (branchKeywords[id]) decision();
+            if (atStatement) {
+                if (id == defKeyword) {
+                    methodCount++;
+                    open(DEF);
+                    pendingName = true;
+                } else if (id == classKeyword) {
+                    classCount++;
+                    open(CLASS);
+                } else if (id == ifKeyword) {
+                    cognitive(1 + nesting());
+                    open(IF);
+                } else if (id == elifKeyword) {
+                    cognitive(1);
+                    open(IF);
+                } else if (id == elseKeyword) {
+                    boolean ofIf = closedKind == IF;
+                    if (ofIf) cognitive(1);
+                    open(ofIf ? IF : PLAIN);
+                } else if (id == forKeyword || id == whileKeyword) {
+                    cognitive(1 + nesting());
+                    open(LOOP);
+                } else if (id == exceptKeyword) {
+                    cognitive(1 + nesting());
+                    open(EXCEPT);
+                } else if (id == tryKeyword || id == finallyKeyword || id == withKeyword) {
+                    open(PLAIN);
+                } else if (id == asyncKeyword) {
+                    statementStart = true;      // async def, async for, async with
+                }
+            } else if (id == ifKeyword) {
+                // conditional expression or comprehension filter
+                cognitive(1 + nesting());
+            } else if (id == andKeyword || id == orKeyword) {
+                if (id != lastBoolean) cognitive(1);
+                lastBoolean = id;
+            }
+        }
+
+        /**
+         * First token of a logical line at start: its indentation closes the
+         * blocks indented as far or further.
+         */
+        private void beginLogicalLine(int start) {
+            logicalStart = false;
+            statementStart = true;
+            header = false;
+            lastBoolean = -1;
+            int indent = 0;
+            for (int i = src.lineStart(line); i < start; i++) {
+                indent = src.charAt(i) == '\t' ? (indent / 8 + 1) * 8 : indent + 1;
+            }
+            closedKind = 0;
+            while (depth > 0 && indents[depth - 1] >= indent) {
+                if (indents[depth - 1] == indent) closedKind = kinds[depth - 1];
+                close();
+            }
+            if (depth == indents.length) {
+                indents = Arrays.copyOf(indents, depth * 2);
+                kinds = Arrays.copyOf(kinds, depth * 2);
+                nestings = Arrays.copyOf(nestings, depth * 2);
+                functionOf = Arrays.copyOf(functionOf, depth * 2);
+                firstLines = Arrays.copyOf(firstLines, depth * 2);
+            }
+            indents[depth] = indent;
+        }
+
+        /** Pushes a block at the current logical line; its header runs to ':'. */
+        private void open(byte kind) {
+            int outer = depth > 0 ? nestings[depth - 1] : 0;
+            int function = depth > 0 ? functionOf[depth - 1] : -1;
+            int nesting;
+            if (kind == DEF) {
+                nesting = function >= 0 ? outer + 1 : 0;
+                function = addFunction();
+            } else if (kind == IF || kind == LOOP || kind == EXCEPT || kind == MATCH) {
+                nesting = outer + 1;
+            } else {
+                nesting = outer;
+            }
+            // indents[depth] was set by beginLogicalLine, which made room
+            kinds[depth] = kind;
+            nestings[depth] = nesting;
+            functionOf[depth] = function;
+            firstLines[depth] = line;
+            depth++;
+            header = true;
+        }
+
+        private void close() {
+            depth--;
+            int function = functionOf[depth];
+            if (kinds[depth] == DEF) {
+                functionLines[2 * function + 1] = Math.max(lastTokenLine, firstLines[depth]);
+            } else if (kinds[depth] == CLASS) {
+                largestClass = Math.max(largestClass, Math.max(lastTokenLine, firstLines[depth]) - firstLines[depth] + 1);
+            }
+        }
+
+        private int addFunction() {
+            if (functions == functionComplexity.length) {
+                functionLines = Arrays.copyOf(functionLines, functions * 4);
+                functionNames = Arrays.copyOf(functionNames, functions * 4);
+                functionComplexity = Arrays.copyOf(functionComplexity, functions * 2);
+                functionCognitive = Arrays.copyOf(functionCognitive, functions * 2);
+            }
+            functionLines[2 * functions] = line;
+            functionLines[2 * functions + 1] = line;
+            functionNames[2 * functions] = -1;
+            functionComplexity[functions] = 1;
+            functionCognitive[functions] = 0;
+            return functions++;
+        }
+
+        /** Nesting of the current token: a block's header is still outside it. */
+        private int nesting() {
+            int top = header ? depth - 2 : depth - 1;
+            return top >= 0 ? nestings[top] : 0;
+        }
+
+        private int function() {
+            return depth > 0 ? functionOf[depth - 1] : -1;
+        }
+
+        private void decision() {
+            complexity++;
+            int function = function();
+            if (function >= 0) functionComplexity[function]++;
+        }
+
+        private void cognitive(int increment) {
+            cognitive += increment;
+            int function = function();
+            if (function >= 0) functionCognitive[function] += increment;
+        }
+
+        private boolean isWord(int start, int end, String word) {
+            return end - start == word.length() && src.startsWith(start, end, word);
+        }
+
+        /** r, b, u, f and their two-letter combinations, in either case. */
+        private boolean isStringPrefix(int start, int end) {
+            if (end - start > 2) return false;
+            for (int i = start; i < end; i++) {
+                if ("rRbBuUfF".indexOf(src.charAt(i)) < 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void finish() {
+            while (depth > 0) close();
+            super.finish();
+            AdvancedMetrics advanced = metrics.getAdvancedMetrics();
+            if (advanced == null) return;
+            advanced.setCognitiveComplexity(cognitive);
+            advanced.setLargestClassLines(largestClass);
+            if (functions == 0) return;
+            MethodTable methods = new MethodTable(functions);
+            for (int f = 0; f < functions; f++) {
+                int start = functionNames[2 * f];
+                String name = start >= 0 ? src.substring(start, functionNames[2 * f + 1]) : "(anonymous)";
+                int row = methods.add(name, functionLines[2 * f] + 1, functionLines[2 * f + 1] + 1, functionComplexity[f]);
+                methods.setCognitiveComplexity(row, functionCognitive[f]);
+            }
+            countCodeLines(methods);
+            advanced.setMethods(methods);
+            advanced.setMaxMethodComplexity(methods.maxComplexity());
+            advanced.setAvgMethodComplexity(methods.averageComplexity());
+            advanced.setLongestMethodLines(methods.longestLines());
+        }
+    }
+}
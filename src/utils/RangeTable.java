@@ -0,0 +1,96 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of char ranges of one SourceBuffer, compared by content, with linear
+ * probing in power-of-two arrays. Entries are numbered in insertion order and
+ * belong to a group (e.g. field names per class), so the same name can be an
+ * entry of several groups. Nothing is allocated per entry.
+ */
+final class RangeTable {
+
+    private int[] slots = new int[64];      // entry + 1, 0 = free
+    private int[] starts = new int[32];
+    private int[] lengths = new int[32];
+    private int[] hashes = new int[32];
+    private int[] groups = new int[32];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int group(int entry) {
+        return groups[entry];
+    }
+
+    void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /** Entry of [start, start + length) in group, added if new. */
+    int add(SourceBuffer src, int group, int start, int length, int hash) {
+        int mask = slots.length - 1;
+        int slot = mix(hash, group) & mask;
+        for (int e; (e = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (same(src, e, group, start, length, hash)) return e;
+        }
+        if (size == starts.length) growEntries();
+        starts[size] = start;
+        lengths[size] = length;
+        hashes[size] = hash;
+        groups[size] = group;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) growSlots();
+        return size - 1;
+    }
+
+    /** Entry of [start, start + length) in group, or -1. */
+    int find(SourceBuffer src, int group, int start, int length, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash, group) & mask, e; (e = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (same(src, e, group, start, length, hash)) return e;
+        }
+        return -1;
+    }
+
+    static int hash(SourceBuffer src, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + src.charAt(i);
+        return h;
+    }
+
+    private boolean same(SourceBuffer src, int e, int group, int start, int length, int hash) {
+        if (hashes[e] != hash || lengths[e] != length || groups[e] != group) return false;
+        int other = starts[e];
+        for (int k = 0; k < length; k++) {
+            if (src.charAt(other + k) != src.charAt(start + k)) return false;
+        }
+        return true;
+    }
+
+    private void growEntries() {
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        groups = Arrays.copyOf(groups, capacity);
+    }
+
+    private void growSlots() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int e = 0; e < size; e++) {
+            int slot = mix(hashes[e], groups[e]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = e + 1;
+        }
+    }
+
+    private static int mix(int h, int group) {
+        h = (h + group * 0x85ebca6b) * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,100 @@
+package utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import model.JavaCodeMetrics;
+
+/**
+ * Everything the reports need from a finished run, in one compressed file:
+ * the per-file results (MetricsCodec), the skip counts and, when the run looked
+ * for them, the duplicate blocks. Any report format can be rendered from it later
+ * without analyzing the tree again.
+ */
+public final class ResultSnapshot {
+
+    private static final int MAGIC = 0x4341534e; // "CASN"
+    private static final int FORMAT = 1;
+
+    private final String analyzerVersion;
+    private final long created;
+    private final List<JavaCodeMetrics> metrics;
+    private final Map<String, Integer> skipCounts;
+    private final List<DuplicateFinder.Block> duplicateBlocks; // null if not searched
+
+    public ResultSnapshot(String analyzerVersion, long created, List<JavaCodeMetrics> metrics,
+                          Map<String, Integer> skipCounts, List<DuplicateFinder.Block> duplicateBlocks) {
+        this.analyzerVersion = analyzerVersion;
+        this.created = created;
+        this.metrics = metrics;
+        this.skipCounts = skipCounts;
+        this.duplicateBlocks = duplicateBlocks;
+    }
+
+    public String getAnalyzerVersion() { return analyzerVersion; }
+    public long getCreated() { return created; }
+    public List<JavaCodeMetrics> getMetrics() { return metrics; }
+    public Map<String, Integer> getSkipCounts() { return skipCounts; }
+    public List<DuplicateFinder.Block> getDuplicateBlocks() { return duplicateBlocks; }
+
+    /**
+     * Written to a temporary file first, so an interrupted run keeps the previous
+     * snapshot intact.
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp), 1 << 16), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(MetricsCodec.VERSION);
+            MetricsCodec.writeString(out, analyzerVersion);
+            out.writeLong(created);
+            out.writeInt(skipCounts.size());
+            for (Map.Entry<String, Integer> e : skipCounts.entrySet()) {
+                MetricsCodec.writeString(out, e.getKey());
+                out.writeInt(e.getValue());
+            }
+            out.writeInt(duplicateBlocks != null ? duplicateBlocks.size() : -1);
+            if (duplicateBlocks != null) {
+                for (DuplicateFinder.Block b : duplicateBlocks) {
+                    out.writeInt(b.getCount());
+                    MetricsCodec.writeString(out, b.getText());
+                }
+            }
+            out.writeInt(metrics.size());
+            for (JavaCodeMetrics m : metrics) MetricsCodec.write(out, m);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static ResultSnapshot read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) throw new IOException("not a result snapshot: " + file);
+            if (in.readInt() != MetricsCodec.VERSION) throw new IOException("snapshot written by an incompatible version: " + file);
+            String version = MetricsCodec.readString(in);
+            long created = in.readLong();
+            Map<String, Integer> skips = new TreeMap<>();
+            for (int i = 0, n = in.readInt(); i < n; i++) skips.put(MetricsCodec.readString(in), in.readInt());
+            List<DuplicateFinder.Block> blocks = null;
+            int blockCount = in.readInt();
+            if (blockCount >= 0) {
+                blocks = new ArrayList<>(blockCount);
+                for (int i = 0; i < blockCount; i++) {
+                    int count = in.readInt();
+                    blocks.add(new DuplicateFinder.Block(MetricsCodec.readString(in), count));
+                }
+            }
+            int n = in.readInt();
+            List<JavaCodeMetrics> metrics = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) metrics.add(MetricsCodec.read(in));
+            return new ResultSnapshot(version, created, metrics, skips, blocks);
+        }
+    }
+}
@@ -18,29 +18,110 @@ public class SecretsDetector {
     private static final Pattern POSSIBLE_TOKEN = Pattern.compile("(?i)(api|secret|token|passwd|password|key)[\"'\s:=]{0,5}[A-Za-z0-9_\\-]{8,}");
 
     public static void detectSecrets(List<String> lines, JavaCodeMetrics metrics) {
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
+        detectSecrets(SourceBuffer.fromLines(lines), metrics);
+    }
+
+    /**
+     * Scans each line through Matcher regions over the buffer, so no String is
+     * created per line (only for actual matches).
+     */
+    public static void detectSecrets(SourceBuffer src, JavaCodeMetrics metrics) {
+        MetricsPass.run(src, accumulator(metrics));
+    }
+
+    /**
+     * Secrets detection as part of a MetricsPass. Only lines that mayMatch reach
+     * the regexes. A failing regex (e.g. a stack overflow on a pathological line)
+     * ends detection for the file without failing its analysis.
+     */
+    public static MetricsPass.Accumulator accumulator(JavaCodeMetrics metrics) {
+        return new MetricsPass.Accumulator() {
+            Matcher aws;
+            Matcher pk;
+            Matcher m;
+            boolean failed;
+
+            @Override
+            public void line(SourceBuffer src, int i, int s, int e, LineMemo.LineInfo line) {
+                if (failed || !line.mayHoldSecret) return;
+                if (aws == null) {
+                    aws = AWS_ACCESS_KEY.matcher(src);
+                    pk = PRIVATE_KEY_BEGIN.matcher(src);
+                    m = POSSIBLE_TOKEN.matcher(src);
+                }
+                try {
+                    if (aws.region(s, e).find()) {
+                        metrics.addFinding("Possible AWS access key at line " + (i+1));
+                    }
+
+                    if (pk.region(s, e).find()) {
+                        metrics.addFinding("Possible embedded private key at line " + (i+1));
+                    }
 
-            if (AWS_ACCESS_KEY.matcher(line).find()) {
-                metrics.addFinding("Possible AWS access key at line " + (i+1));
+                    if (m.region(s, e).find()) {
+                        String match = m.group();
+                        // crude entropy check for base64-like token
+                        Matcher b64 = GENERIC_BASE64.matcher(match);
+                        if (b64.find() && shannonEntropy(match) > 4.2) {
+                            metrics.addFinding("High-entropy token-like string at line " + (i+1));
+                        } else {
+                            metrics.addFinding("Possible token-like string at line " + (i+1));
+                        }
+                    }
+                } catch (RuntimeException | StackOverflowError ex) {
+                    failed = true; // non-fatal
+                }
             }
 
-            if (PRIVATE_KEY_BEGIN.matcher(line).find()) {
-                metrics.addFinding("Possible embedded private key at line " + (i+1));
+            @Override
+            public void finish() {
             }
+        };
+    }
 
-            Matcher m = POSSIBLE_TOKEN.matcher(line);
-            if (m.find()) {
-                String match = m.group();
-                // crude entropy check for base64-like token
-                Matcher b64 = GENERIC_BASE64.matcher(match);
-                if (b64.find() && shannonEntropy(match) > 4.2) {
-                    metrics.addFinding("High-entropy token-like string at line " + (i+1));
-                } else {
-                    metrics.addFinding("Possible token-like string at line " + (i+1));
-                }
+    /**
+     * False if no pattern can match inside the trimmed line [s, e): each needs a
+     * fixed piece of text (AKIA/A3IA, "-----BEGIN ", or a key word in any case),
+     * so one scan for their first letters rules most lines out.
+     */
+    static boolean mayMatch(SourceBuffer src, int s, int e) {
+        for (int i = s; i < e; i++) {
+            switch (src.charAt(i)) {
+                case 'a': case 'A':
+                    if (startsWithIgnoreCase(src, i, e, "api")
+                        || src.startsWith(i, e, "AKIA") || src.startsWith(i, e, "A3IA")) return true;
+                    break;
+                case 's': case 'S':
+                    if (startsWithIgnoreCase(src, i, e, "secret")) return true;
+                    break;
+                case 't': case 'T':
+                    if (startsWithIgnoreCase(src, i, e, "token")) return true;
+                    break;
+                case 'p': case 'P':
+                    if (startsWithIgnoreCase(src, i, e, "passwd") || startsWithIgnoreCase(src, i, e, "password")) return true;
+                    break;
+                case 'k': case 'K':
+                    if (startsWithIgnoreCase(src, i, e, "key")) return true;
+                    break;
+                case '-':
+                    if (src.startsWith(i, e, "-----BEGIN ")) return true;
+                    break;
+                default:
+                    break;
             }
         }
+        return false;
+    }
+
+    /** word is lower case; only ASCII letters are folded, as with (?i). */
+    private static boolean startsWithIgnoreCase(SourceBuffer src, int i, int e, String word) {
+        if (e - i < word.length()) return false;
+        for (int k = 0; k < word.length(); k++) {
+            char c = src.charAt(i + k);
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if (c != word.charAt(k)) return false;
+        }
+        return true;
     }
 
     // Shannon entropy over characters
@@ -0,0 +1,182 @@
+package utils;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import model.JavaCodeMetrics;
+
+/**
+ * Content-addressed result cache in a directory shared by several checkouts and
+ * analyzer processes. Each entry is one small file named after its content key,
+ * under a directory for the analyzer and codec version:
+ *
+ *   dir/v<analyzer>-<codec>/<first 2 hex digits>/<content key>.res
+ *
+ * Entries are immutable: writers create a private temporary file and rename it
+ * into place atomically, so readers never see a partial entry and concurrent
+ * writers of the same content simply race to an identical file. Reads touch the
+ * entry's mtime (at most once per TOUCH_INTERVAL_MS), which makes mtime the LRU
+ * order. When this process has written more than an eighth of the budget, it
+ * trims the directory back under the budget, oldest entries first, while holding
+ * an exclusive lock on dir/.lock; if another process holds it, that one trims.
+ */
+public class SharedResultCache {
+
+    private static final int MAGIC = 0x43415352; // "CASR"
+    private static final long TOUCH_INTERVAL_MS = 60 * 60 * 1000L;
+    private static final String SUFFIX = ".res";
+
+    private final Path root;
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong writtenSinceTrim = new AtomicLong();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger stores = new AtomicInteger();
+
+    public SharedResultCache(File root, String analyzerVersion, long maxBytes) {
+        this.root = root.toPath();
+        this.dir = this.root.resolve("v" + analyzerVersion.replaceAll("[^A-Za-z0-9.]", "_") + "-" + MetricsCodec.VERSION);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The result stored for this content key, or null.
+     */
+    public JavaCodeMetrics get(long contentKey) {
+        Path file = entry(contentKey);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (IOException e) {
+            return null; // missing, or evicted meanwhile
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readLong() != contentKey) return null;
+            JavaCodeMetrics m = MetricsCodec.read(in);
+            hits.incrementAndGet();
+            touch(file);
+            return m;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a result unless an entry for the key exists already. Failures are
+     * ignored: the cache is only an optimization.
+     */
+    public void put(long contentKey, JavaCodeMetrics metrics) {
+        Path file = entry(contentKey);
+        if (Files.exists(file)) return;
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(512);
+            try (DataOutputStream out = new DataOutputStream(buf)) {
+                out.writeInt(MAGIC);
+                out.writeLong(contentKey);
+                MetricsCodec.write(out, metrics);
+            }
+            tmp = Files.createTempFile(file.getParent(), "put", ".tmp");
+            Files.write(tmp, buf.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            stores.incrementAndGet();
+            if (writtenSinceTrim.addAndGet(buf.size()) > maxBytes / 8) {
+                writtenSinceTrim.set(0);
+                trim();
+            }
+        } catch (IOException e) {
+            // read-only or full cache directory: analyze without it
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** Results read from the cache by this process. */
+    public int getHits() { return hits.get(); }
+    /** Entries written by this process. */
+    public int getStores() { return stores.get(); }
+
+    /**
+     * Delete the least recently used entries (all versions) until the cache fits
+     * its budget. Returns the number deleted, or 0 if another process is trimming.
+     */
+    public synchronized int trim() {
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            return 0;
+        }
+        try (FileChannel lockFile = FileChannel.open(root.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockFile.tryLock()) {
+            if (lock == null) return 0;
+
+            List<Path> files = new ArrayList<>();
+            Map<Path, BasicFileAttributes> attrs = new HashMap<>();
+            long[] total = {0};
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path f, BasicFileAttributes a) {
+                    String name = f.getFileName().toString();
+                    if (name.endsWith(SUFFIX)) {
+                        files.add(f);
+                        attrs.put(f, a);
+                        total[0] += a.size();
+                    } else if (name.endsWith(".tmp") && a.lastModifiedTime().toMillis() < System.currentTimeMillis() - TOUCH_INTERVAL_MS) {
+                        files.add(f); // left behind by a killed writer
+                        attrs.put(f, a);
+                        total[0] += a.size();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path f, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            if (total[0] <= maxBytes) return 0;
+
+            files.sort(Comparator.comparingLong(f -> attrs.get(f).lastModifiedTime().toMillis()));
+            long target = maxBytes - maxBytes / 10; // some headroom, so trims stay rare
+            int deleted = 0;
+            for (Path f : files) {
+                if (total[0] <= target) break;
+                try {
+                    if (Files.deleteIfExists(f)) {
+                        total[0] -= attrs.get(f).size();
+                        deleted++;
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+            return deleted;
+        } catch (IOException | OverlappingFileLockException e) {
+            return 0;
+        }
+    }
+
+    private Path entry(long contentKey) {
+        String hex = String.format("%016x", contentKey);
+        return dir.resolve(hex.substring(0, 2)).resolve(hex + SUFFIX);
+    }
+
+    private static void touch(Path file) {
+        File f = file.toFile();
+        long now = System.currentTimeMillis();
+        if (f.lastModified() < now - TOUCH_INTERVAL_MS) f.setLastModified(now);
+    }
+}
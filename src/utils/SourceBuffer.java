@@ -0,0 +1,364 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only view of a source file with a line-offset index, used by the analyzers
+ * instead of a List<String> of lines.
+ *
+ * Pure-ASCII content (the common case for source code) is kept as bytes and read
+ * through charAt without decoding; anything else is decoded once into a char[].
+ * Byte order marks select UTF-8 / UTF-16LE / UTF-16BE, otherwise UTF-8 is assumed.
+ * Large files are memory-mapped, small ones are read through a per-thread pooled
+ * buffer. Lines are split exactly like BufferedReader.readLine (\n, \r or \r\n)
+ * and the trim helpers follow String.trim, so results match the String-based code.
+ */
+public final class SourceBuffer implements CharSequence {
+
+    /** Files at least this large are memory-mapped instead of read into the pool. */
+    public static final int MAP_THRESHOLD = 1 << 20;
+
+    private static final ThreadLocal<ByteBuffer> POOL = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
+    private final ByteBuffer bytes; // ASCII storage, absolute indexing from 0 (null when chars is used)
+    private final char[] chars;     // decoded storage
+    private final int length;
+    private final int[] lineStarts; // start offset of each line
+    private final int[] lineEnds;   // end of each line, excluding its terminator
+    private final int lineCount;
+    private final String encoding;
+    private final long contentHash;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SourceBuffer(ByteBuffer bytes, char[] chars, int length, String encoding) {
+        this.bytes = bytes;
+        this.chars = chars;
+        this.length = length;
+        this.encoding = encoding;
+
+        // Build the line index
+        int[] starts = new int[Math.max(16, length / 32)];
+        int[] ends = new int[starts.length];
+        int n = 0;
+        int pos = 0;
+        long h = FNV_OFFSET ^ encoding.hashCode(); // content hash, computed in the same pass
+        while (pos < length) {
+            if (n >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                ends = Arrays.copyOf(ends, starts.length);
+            }
+            starts[n] = pos;
+            while (pos < length) {
+                char c = rawChar(pos);
+                if (c == '\n' || c == '\r') break;
+                h = (h ^ c) * FNV_PRIME;
+                pos++;
+            }
+            ends[n++] = pos;
+            if (pos < length) {
+                char t = rawChar(pos);
+                h = (h ^ t) * FNV_PRIME;
+                if (t == '\r' && pos + 1 < length && rawChar(pos + 1) == '\n') {
+                    h = (h ^ '\n') * FNV_PRIME;
+                    pos++;
+                }
+                pos++;
+            }
+        }
+        this.lineStarts = starts;
+        this.lineEnds = ends;
+        this.lineCount = n;
+        this.contentHash = mix(h ^ length);
+    }
+
+    // ---------------------------------------------------------------- factories
+
+    public static SourceBuffer read(File file) throws IOException {
+        return read(file.toPath());
+    }
+
+    public static SourceBuffer read(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + path);
+            if (size >= MAP_THRESHOLD) {
+                ByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return decode(mapped, false);
+            }
+            ByteBuffer buf = POOL.get();
+            if (buf.capacity() < size + 1) {
+                buf = ByteBuffer.allocate((int) Math.max(size + 1, buf.capacity() * 2L));
+                POOL.set(buf);
+            }
+            buf.clear();
+            // Read until EOF (the size can change while we read)
+            while (ch.read(buf) > 0) {
+                if (!buf.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                    buf.flip();
+                    bigger.put(buf);
+                    buf = bigger;
+                    POOL.set(buf);
+                }
+            }
+            buf.flip();
+            return decode(buf, true);
+        }
+    }
+
+    /**
+     * Wrap bytes that were read elsewhere (archive entries, streams).
+     */
+    public static SourceBuffer wrap(byte[] data) {
+        return decode(ByteBuffer.wrap(data), false);
+    }
+
+    /**
+     * Adapter for callers that still hold a List<String>.
+     */
+    public static SourceBuffer fromLines(List<String> lines) {
+        int total = 0;
+        for (String l : lines) total += l.length() + 1;
+        char[] c = new char[total];
+        int pos = 0;
+        for (String l : lines) {
+            l.getChars(0, l.length(), c, pos);
+            pos += l.length();
+            c[pos++] = '\n';
+        }
+        return new SourceBuffer(null, c, total, "UTF-16");
+    }
+
+    /**
+     * Decode raw content. If pooled is true the input buffer will be reused by the
+     * caller, so ASCII content is copied out instead of referenced.
+     */
+    private static SourceBuffer decode(ByteBuffer in, boolean pooled) {
+        int start = in.position();
+        int limit = in.limit();
+        int size = limit - start;
+
+        // Byte order marks
+        if (size >= 3 && (in.get(start) & 0xff) == 0xEF && (in.get(start + 1) & 0xff) == 0xBB && (in.get(start + 2) & 0xff) == 0xBF) {
+            return decodeWith(in, start + 3, StandardCharsets.UTF_8, "UTF-8");
+        }
+        if (size >= 2 && (in.get(start) & 0xff) == 0xFE && (in.get(start + 1) & 0xff) == 0xFF) {
+            return decodeWith(in, start + 2, StandardCharsets.UTF_16BE, "UTF-16BE");
+        }
+        if (size >= 2 && (in.get(start) & 0xff) == 0xFF && (in.get(start + 1) & 0xff) == 0xFE) {
+            return decodeWith(in, start + 2, StandardCharsets.UTF_16LE, "UTF-16LE");
+        }
+
+        // ASCII fast path: no decoding at all
+        boolean ascii = true;
+        if (in.hasArray()) {
+            byte[] a = in.array();
+            int off = in.arrayOffset();
+            for (int i = start + off, end = limit + off; i < end; i++) {
+                if (a[i] < 0) { ascii = false; break; }
+            }
+        } else {
+            for (int i = start; i < limit; i++) {
+                if (in.get(i) < 0) { ascii = false; break; }
+            }
+        }
+        if (ascii) {
+            ByteBuffer view;
+            if (pooled) {
+                byte[] copy = new byte[size];
+                ByteBuffer dup = in.duplicate();
+                dup.position(start);
+                dup.get(copy);
+                view = ByteBuffer.wrap(copy);
+            } else {
+                ByteBuffer dup = in.duplicate();
+                dup.position(start);
+                view = dup.slice();
+            }
+            return new SourceBuffer(view, null, size, "US-ASCII");
+        }
+        return decodeWith(in, start, StandardCharsets.UTF_8, "UTF-8");
+    }
+
+    private static SourceBuffer decodeWith(ByteBuffer in, int from, Charset cs, String name) {
+        ByteBuffer src = in.duplicate();
+        src.position(from);
+        CharsetDecoder dec = cs.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out;
+        try {
+            out = dec.decode(src);
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException(e); // cannot happen with REPLACE
+        }
+        char[] c = new char[out.remaining()];
+        out.get(c);
+        return new SourceBuffer(null, c, c.length, name);
+    }
+
+    // ---------------------------------------------------------------- CharSequence
+
+    private char rawChar(int index) {
+        return chars != null ? chars[index] : (char) bytes.get(index);
+    }
+
+    @Override
+    public int length() { return length; }
+
+    @Override
+    public char charAt(int index) { return rawChar(index); }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String toString() { return substring(0, length); }
+
+    public String substring(int start, int end) {
+        if (chars != null) return new String(chars, start, end - start);
+        char[] c = new char[end - start];
+        for (int i = start; i < end; i++) c[i - start] = (char) bytes.get(i);
+        return new String(c);
+    }
+
+    public String getEncoding() { return encoding; }
+
+    /** Estimated heap footprint: the content plus the line index. */
+    public long memoryBytes() {
+        return (chars != null ? 2L * length : length) + 8L * lineStarts.length;
+    }
+
+    /**
+     * 64-bit hash of the decoded content and its encoding: equal for identical
+     * files, so their analysis results can be shared.
+     */
+    public long contentHash() { return contentHash; }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    // ---------------------------------------------------------------- lines
+
+    public int lineCount() { return lineCount; }
+
+    /** First char of line i. */
+    public int lineStart(int line) { return lineStarts[line]; }
+
+    /** End of line i, excluding its terminator. */
+    public int lineEnd(int line) { return lineEnds[line]; }
+
+    /** First char of line i after leading whitespace (String.trim semantics). */
+    public int trimStart(int line) {
+        int s = lineStarts[line];
+        int e = lineEnds[line];
+        while (s < e && rawChar(s) <= ' ') s++;
+        return s;
+    }
+
+    /** End of line i before trailing whitespace (String.trim semantics). */
+    public int trimEnd(int line) {
+        int s = lineStarts[line];
+        int e = lineEnds[line];
+        while (e > s && rawChar(e - 1) <= ' ') e--;
+        return e;
+    }
+
+    public boolean isBlank(int line) { return trimStart(line) == lineEnds[line]; }
+
+    /** Allocates: the raw text of line i. */
+    public String line(int line) { return substring(lineStarts[line], lineEnds[line]); }
+
+    /** Allocates: the trimmed text of line i. */
+    public String trimmedLine(int line) {
+        int s = trimStart(line);
+        return substring(s, Math.max(s, trimEnd(line)));
+    }
+
+    // ---------------------------------------------------------------- region helpers (no allocation)
+
+    /** True if [start, end) begins with s. */
+    public boolean startsWith(int start, int end, String s) {
+        int n = s.length();
+        if (end - start < n) return false;
+        for (int i = 0; i < n; i++) {
+            if (rawChar(start + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** True if [start, end) ends with s. */
+    public boolean endsWith(int start, int end, String s) {
+        int n = s.length();
+        return end - start >= n && startsWith(end - n, end, s);
+    }
+
+    /** Index of s inside [from, end), or -1. */
+    public int indexOf(String s, int from, int end) {
+        int n = s.length();
+        if (n == 0) return from <= end ? from : -1;
+        char first = s.charAt(0);
+        for (int i = from, max = end - n; i <= max; i++) {
+            if (rawChar(i) != first) continue;
+            int k = 1;
+            while (k < n && rawChar(i + k) == s.charAt(k)) k++;
+            if (k == n) return i;
+        }
+        return -1;
+    }
+
+    /** Index of c inside [from, end), or -1. */
+    public int indexOf(char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (rawChar(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /** Last index of c inside [start, end), or -1. */
+    public int lastIndexOf(char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (rawChar(i) == c) return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(int start, int end, String s) {
+        return indexOf(s, start, end) >= 0;
+    }
+
+    /** Non-overlapping occurrences of s inside [start, end). */
+    public int count(int start, int end, String s) {
+        int count = 0;
+        int i = start;
+        while ((i = indexOf(s, i, end)) != -1) {
+            count++;
+            i += s.length();
+        }
+        return count;
+    }
+
+    /** Occurrences of c inside [start, end). */
+    public int count(int start, int end, char c) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (rawChar(i) == c) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Session cache of file contents for the interactive menu, so that analyzing a
+ * directory and then searching it for duplicates reads each file once.
+ *
+ * Entries are validated against the file's size and mtime on every lookup and
+ * evicted least recently used first once their estimated footprint exceeds the
+ * byte budget. A single file larger than a quarter of the budget is never cached.
+ */
+public class SourceCache {
+
+    private static class Entry {
+        final SourceBuffer source;
+        final long size;
+        final long lastModified;
+        final long bytes;
+
+        Entry(SourceBuffer source, long size, long lastModified) {
+            this.source = source;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.bytes = source.memoryBytes();
+        }
+    }
+
+    private final long budget;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long used;
+    private int hits;
+    private int misses;
+
+    public SourceCache(long budgetBytes) {
+        this.budget = budgetBytes;
+    }
+
+    /**
+     * Cached contents of the file if it has not changed since it was read, else null.
+     */
+    public SourceBuffer get(File file) {
+        Entry e;
+        synchronized (this) {
+            e = entries.get(file.getAbsolutePath());
+        }
+        if (e == null || e.size != file.length() || e.lastModified != file.lastModified()) return null;
+        synchronized (this) {
+            hits++;
+        }
+        return e.source;
+    }
+
+    /**
+     * Contents of the file, from the cache if it has not changed since it was read.
+     * Callers only pass files the content sniffer accepted as source, so that a
+     * cached entry can stand for that classification.
+     */
+    public SourceBuffer read(File file) throws IOException {
+        SourceBuffer cached = get(file);
+        if (cached != null) return cached;
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            misses++;
+        }
+
+        SourceBuffer source = SourceBuffer.read(file);
+        Entry e = new Entry(source, size, lastModified);
+        synchronized (this) {
+            Entry old = entries.remove(key);
+            if (old != null) used -= old.bytes;
+            if (e.bytes <= budget / 4) {
+                entries.put(key, e);
+                used += e.bytes;
+                for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); used > budget && it.hasNext(); ) {
+                    used -= it.next().getValue().bytes;
+                    it.remove();
+                }
+            }
+        }
+        return source;
+    }
+
+    public synchronized int getHits() { return hits; }
+    public synchronized int getMisses() { return misses; }
+    public synchronized int getFileCount() { return entries.size(); }
+    /** Estimated bytes held by the cached contents. */
+    public synchronized long getUsedBytes() { return used; }
+}
@@ -0,0 +1,280 @@
+package utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal forward-only tar reader (ustar, GNU long names and pax headers),
+ * enough for `git archive` and `tar c` output read from a pipe.
+ *
+ * Entries are returned one at a time; the content of the current entry can be
+ * read through content() or readContent() until next() is called, which skips
+ * whatever was not consumed. Nothing but the current header is buffered.
+ */
+public class TarStreamReader {
+
+    private static final int BLOCK = 512;
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final char type;
+
+        Entry(String name, long size, char type) {
+            this.name = name;
+            this.size = size;
+            this.type = type;
+        }
+
+        public String getName() { return name; }
+        public long getSize() { return size; }
+
+        /** Regular file ('0', NUL or contiguous '7'). */
+        public boolean isFile() { return type == '0' || type == '\0' || type == '7'; }
+    }
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK];
+    private long remaining; // unread content bytes of the current entry
+    private long padding;   // bytes after the content up to the next block
+    private boolean finished;
+
+    public TarStreamReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * The next entry, or null at the end of the archive.
+     */
+    public Entry next() throws IOException {
+        if (finished) return null;
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+
+        String longName = null;
+        String paxPath = null;
+        long paxSize = -1;
+        while (true) {
+            if (!readBlock(header)) {
+                finished = true;
+                return null;
+            }
+            if (isZeroBlock(header)) {
+                finished = true; // end-of-archive marker
+                return null;
+            }
+            verifyChecksum(header);
+
+            char type = (char) header[156];
+            long size = parseSize(header, 124, 12);
+            String name;
+            if (isUstar(header)) {
+                String prefix = cString(header, 345, 155);
+                name = cString(header, 0, 100);
+                if (!prefix.isEmpty()) name = prefix + "/" + name;
+            } else {
+                name = cString(header, 0, 100);
+            }
+
+            if (type == 'L' || type == 'x' || type == 'g' || type == 'K') {
+                byte[] data = readBytes(size);
+                skipFully(pad(size));
+                if (type == 'L') {
+                    longName = cString(data, 0, data.length);
+                } else if (type == 'x') {
+                    String[] pax = parsePax(data);
+                    if (pax[0] != null) paxPath = pax[0];
+                    if (pax[1] != null) paxSize = parsePaxSize(pax[1]);
+                }
+                continue; // metadata applies to the following header
+            }
+
+            if (longName != null) name = longName;
+            if (paxPath != null) name = paxPath;
+            if (paxSize >= 0) size = paxSize;
+            // Directories, links and devices carry no content regardless of the size field
+            if (type == '1' || type == '2' || type == '3' || type == '4' || type == '5' || type == '6') size = 0;
+
+            remaining = size;
+            padding = pad(size);
+            return new Entry(name, size, type);
+        }
+    }
+
+    /**
+     * Stream over the rest of the current entry's content. Closing it does not
+     * close the tar stream.
+     */
+    public InputStream content() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+                int b = in.read();
+                if (b < 0) throw new EOFException("Truncated tar entry");
+                remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) return -1;
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) throw new EOFException("Truncated tar entry");
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    /**
+     * The whole content of the current entry.
+     */
+    public byte[] readContent() throws IOException {
+        byte[] data = readBytes(remaining);
+        remaining = 0;
+        return data;
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private static long pad(long size) {
+        long r = size % BLOCK;
+        return r == 0 ? 0 : BLOCK - r;
+    }
+
+    private boolean readBlock(byte[] b) throws IOException {
+        int off = 0;
+        while (off < b.length) {
+            int n = in.read(b, off, b.length - off);
+            if (n < 0) {
+                if (off == 0) return false; // clean end without the zero blocks
+                throw new EOFException("Truncated tar header");
+            }
+            off += n;
+        }
+        return true;
+    }
+
+    private byte[] readBytes(long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) throw new IOException("Tar entry too large: " + size);
+        byte[] data = new byte[(int) size];
+        int off = 0;
+        while (off < data.length) {
+            int n = in.read(data, off, data.length - off);
+            if (n < 0) throw new EOFException("Truncated tar entry");
+            off += n;
+        }
+        return data;
+    }
+
+    private void skipFully(long n) throws IOException {
+        byte[] scratch = null;
+        while (n > 0) {
+            long s = in.skip(n);
+            if (s > 0) {
+                n -= s;
+                continue;
+            }
+            // skip() may return 0 on pipes; fall back to reading
+            if (scratch == null) scratch = new byte[(int) Math.min(8192, n)];
+            int r = in.read(scratch, 0, (int) Math.min(scratch.length, n));
+            if (r < 0) throw new EOFException("Truncated tar entry");
+            n -= r;
+        }
+    }
+
+    private static boolean isZeroBlock(byte[] b) {
+        for (byte x : b) if (x != 0) return false;
+        return true;
+    }
+
+    private static boolean isUstar(byte[] b) {
+        return b[257] == 'u' && b[258] == 's' && b[259] == 't' && b[260] == 'a' && b[261] == 'r';
+    }
+
+    private static void verifyChecksum(byte[] b) throws IOException {
+        long stored = parseOctal(b, 148, 8);
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : (b[i] & 0xff);
+        }
+        if (sum != stored) throw new IOException("Not a tar stream (bad header checksum)");
+    }
+
+    /**
+     * Octal, or GNU base-256 when the high bit of the first byte is set.
+     */
+    private static long parseSize(byte[] b, int off, int len) {
+        if ((b[off] & 0x80) != 0) {
+            long v = b[off] & 0x7f;
+            for (int i = 1; i < len; i++) v = (v << 8) | (b[off + i] & 0xff);
+            return v;
+        }
+        return parseOctal(b, off, len);
+    }
+
+    private static long parseOctal(byte[] b, int off, int len) {
+        long v = 0;
+        int i = off;
+        int end = off + len;
+        while (i < end && (b[i] == ' ' || b[i] == 0)) i++;
+        while (i < end && b[i] >= '0' && b[i] <= '7') {
+            v = (v << 3) + (b[i] - '0');
+            i++;
+        }
+        return v;
+    }
+
+    private static String cString(byte[] b, int off, int len) {
+        int end = off;
+        while (end < off + len && b[end] != 0) end++;
+        return new String(b, off, end - off, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records are "<length> <key>=<value>\n". Returns {path, size}, either may be null.
+     * The length counts the whole record, itself and the newline included.
+     */
+    private static String[] parsePax(byte[] data) throws IOException {
+        String[] out = new String[2];
+        int pos = 0;
+        while (pos < data.length) {
+            int sp = pos;
+            while (sp < data.length && data[sp] != ' ') sp++;
+            if (sp >= data.length) break;
+            int len;
+            try {
+                len = Integer.parseInt(new String(data, pos, sp - pos, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Not a tar stream (bad pax record length)");
+            }
+            if (len < sp - pos + 2 || len > data.length - pos || data[pos + len - 1] != '\n') {
+                throw new IOException("Not a tar stream (bad pax record)");
+            }
+            String record = new String(data, sp + 1, pos + len - sp - 2, StandardCharsets.UTF_8); // drop '\n'
+            int eq = record.indexOf('=');
+            if (eq > 0) {
+                String key = record.substring(0, eq);
+                if ("path".equals(key)) out[0] = record.substring(eq + 1);
+                else if ("size".equals(key)) out[1] = record.substring(eq + 1);
+            }
+            pos += len;
+        }
+        return out;
+    }
+
+    private static long parsePaxSize(String value) throws IOException {
+        long size;
+        try {
+            size = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a tar stream (bad pax size: " + value + ")");
+        }
+        if (size < 0) throw new IOException("Not a tar stream (bad pax size: " + value + ")");
+        return size;
+    }
+}